@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.google.cam2.exif.ExifInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The Bitmap based part of the {@link ExifInterface} API. The exif library
+ * itself is plain Java so it can run off-device; these helpers connect it to
+ * android.graphics through its public API.
+ */
+public final class ExifBitmaps {
+  private static final int JPEG_QUALITY=90;
+  private static final String NULL_ARGUMENT_STRING="Argument is null";
+
+  private ExifBitmaps() {
+  }
+
+  /**
+   * Writes the tags from the given ExifInterface object into a jpeg
+   * compressed bitmap, removing prior exif tags.
+   *
+   * @param exif the tags to write.
+   * @param bmap a bitmap to compress and write exif into.
+   * @param exifOutStream the OutputStream to which the jpeg image with added
+   *            exif tags will be written.
+   * @throws IOException
+   */
+  public static void writeExif(ExifInterface exif, Bitmap bmap,
+                               OutputStream exifOutStream) throws IOException {
+    if (exif == null || bmap == null || exifOutStream == null) {
+      throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+    }
+
+    OutputStream s=exif.getExifWriterStream(exifOutStream);
+
+    bmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, s);
+    s.flush();
+  }
+
+  /**
+   * Writes the tags from the given ExifInterface object into a jpeg
+   * compressed bitmap, removing prior exif tags.
+   *
+   * @param exif the tags to write.
+   * @param bmap a bitmap to compress and write exif into.
+   * @param exifOutFileName a String containing the filepath to which the jpeg
+   *            image with added exif tags will be written.
+   * @throws FileNotFoundException
+   * @throws IOException
+   */
+  public static void writeExif(ExifInterface exif, Bitmap bmap,
+                               String exifOutFileName)
+      throws FileNotFoundException, IOException {
+    if (exif == null || bmap == null || exifOutFileName == null) {
+      throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+    }
+
+    OutputStream s=exif.getExifWriterStream(exifOutFileName);
+
+    try {
+      bmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, s);
+      s.flush();
+    }
+    catch (IOException e) {
+      try {
+        s.close();
+      }
+      catch (IOException closeException) {
+        // the first exception is the one to report
+      }
+
+      throw e;
+    }
+
+    s.close();
+  }
+
+  /**
+   * Returns the jpeg compressed thumbnail from IFD1 as a bitmap.
+   * Thumbnails stored as uncompressed strips are not decoded,
+   * as ExifInterface does not hand out their data; for those,
+   * as for images without a thumbnail, this returns null.
+   *
+   * @param exif the tags to take the thumbnail from.
+   * @return the thumbnail as a bitmap, or null if there is no
+   *         jpeg thumbnail or it could not be decoded.
+   */
+  public static Bitmap getThumbnailBitmap(ExifInterface exif) {
+    if (exif.isThumbnailCompressed()) {
+      byte[] thumb=exif.getThumbnail();
+
+      return(BitmapFactory.decodeByteArray(thumb, 0, thumb.length));
+    }
+
+    return(null);
+  }
+
+  /**
+   * Sets the thumbnail to be a jpeg compressed bitmap. Clears any prior
+   * thumbnail.
+   *
+   * @param exif the tags to set the thumbnail on.
+   * @param thumb a bitmap to compress to a jpeg thumbnail.
+   * @return true if the thumbnail was set.
+   */
+  public static boolean setCompressedThumbnail(ExifInterface exif,
+                                               Bitmap thumb) {
+    ByteArrayOutputStream thumbnail=new ByteArrayOutputStream();
+
+    if (!thumb.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, thumbnail)) {
+      return(false);
+    }
+
+    return(exif.setCompressedThumbnail(thumbnail.toByteArray()));
+  }
+}
@@ -0,0 +1,40 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.google.cam2.camera;
+
+import com.google.cam2.exif.ExifInterface;
+
+/**
+ * A CameraHost that wants the EXIF data of the pictures it
+ * saves as byte arrays. Implement this, alongside CameraHost
+ * or on a SimpleCameraHost subclass, to opt in; the EXIF of a
+ * picture is only parsed in full for hosts that do, or when
+ * a rotated or mirrored picture needs it written back.
+ */
+public interface ExifCameraHost extends CameraHost {
+  /**
+   * Called when a picture has been taken. This will be
+   * called on a background thread, instead of
+   * saveImage(PictureTransaction, byte[]).
+   *
+   * @param image
+   *          byte array of the picture data (e.g., JPEG)
+   * @param exif
+   *          EXIF data of the image, already parsed, or null
+   *          if it had none that could be read
+   */
+  void saveImage(PictureTransaction xact, byte[] image,
+                 ExifInterface exif);
+}
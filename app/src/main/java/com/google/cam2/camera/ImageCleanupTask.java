@@ -27,10 +27,16 @@ import android.util.Log;
 
 import com.google.cam2.exif.ExifInterface;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class ImageCleanupTask extends Thread {
+  private static final int[] ORIENTATION_TAGS=
+      { ExifInterface.TAG_ORIENTATION };
+
   private byte[] data;
   private int cameraId;
   private PictureTransaction xact=null;
@@ -55,8 +61,17 @@ public class ImageCleanupTask extends Thread {
 
     Matrix matrix=null;
     Bitmap cleaned=null;
+    boolean exifHost=
+        xact.needByteArray && xact.host instanceof ExifCameraHost;
     ExifInterface exif=null;
 
+    // parsed in full only for a host that asked for it, then
+    // handed to the host with the image
+
+    if (exifHost) {
+      exif=readAllExif(data);
+    }
+
     if (applyMatrix) {
       if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
         if (xact.host.getDeviceProfile().portraitFFCFlipped()
@@ -68,52 +83,49 @@ public class ImageCleanupTask extends Thread {
         }
       }
 
-      try {
-        int imageOrientation=0;
+      int imageOrientation=0;
 
-        if (xact.host.getDeviceProfile().useDeviceOrientation()) {
-          imageOrientation=xact.displayOrientation;
-        }
-        else {
-          exif=new ExifInterface();
-          exif.readExif(data);
-
-          Integer exifOrientation=
-              exif.getTagIntValue(ExifInterface.TAG_ORIENTATION);
-
-          if (exifOrientation != null) {
-            if (exifOrientation == 6) {
-              imageOrientation=90;
-            }
-            else if (exifOrientation == 8) {
-              imageOrientation=270;
-            }
-            else if (exifOrientation == 3) {
-              imageOrientation=180;
-            }
-            else if (exifOrientation == 1) {
-              imageOrientation=0;
-            }
-            else {
-              // imageOrientation=
-              // xact.host.getDeviceProfile().getDefaultOrientation();
-              //
-              // if (imageOrientation == -1) {
-              // imageOrientation=xact.displayOrientation;
-              // }
-            }
-          }
+      if (xact.host.getDeviceProfile().useDeviceOrientation()) {
+        imageOrientation=xact.displayOrientation;
+      }
+      else {
+        ExifInterface orientationExif=
+            (exif == null ? readOrientation(data) : exif);
+        Integer exifOrientation=null;
+
+        if (orientationExif != null) {
+          exifOrientation=
+              orientationExif.getTagIntValue(ExifInterface.TAG_ORIENTATION);
         }
 
-        if (imageOrientation != 0) {
-          matrix=
-              rotate((matrix == null ? new Matrix() : matrix),
-                     imageOrientation);
+        if (exifOrientation != null) {
+          if (exifOrientation == 6) {
+            imageOrientation=90;
+          }
+          else if (exifOrientation == 8) {
+            imageOrientation=270;
+          }
+          else if (exifOrientation == 3) {
+            imageOrientation=180;
+          }
+          else if (exifOrientation == 1) {
+            imageOrientation=0;
+          }
+          else {
+            // imageOrientation=
+            // xact.host.getDeviceProfile().getDefaultOrientation();
+            //
+            // if (imageOrientation == -1) {
+            // imageOrientation=xact.displayOrientation;
+            // }
+          }
         }
       }
-      catch (IOException e) {
-        Log.e("CWAC-Camera", "Exception parsing JPEG", e);
-        // TODO: ripple to client
+
+      if (imageOrientation != 0) {
+        matrix=
+            rotate((matrix == null ? new Matrix() : matrix),
+                   imageOrientation);
       }
 
       if (matrix != null) {
@@ -139,21 +151,35 @@ public class ImageCleanupTask extends Thread {
       if (matrix != null) {
         ByteArrayOutputStream out=new ByteArrayOutputStream();
 
-        // if (exif == null) {
-        cleaned.compress(Bitmap.CompressFormat.JPEG, 100, out);
-        // }
-        // else {
-        // exif.deleteTag(ExifInterface.TAG_ORIENTATION);
-        //
-        // try {
-        // exif.writeExif(cleaned, out);
-        // }
-        // catch (IOException e) {
-        // Log.e("CWAC-Camera", "Exception writing to JPEG",
-        // e);
-        // // TODO: ripple to client
-        // }
-        // }
+        if (exif == null) {
+          exif=readAllExif(data);
+        }
+
+        if (exif == null) {
+          cleaned.compress(Bitmap.CompressFormat.JPEG, 100, out);
+        }
+        else {
+          // the pixels are upright now, unlike the thumbnail
+
+          exif.deleteTag(ExifInterface.TAG_ORIENTATION);
+          exif.removeCompressedThumbnail();
+          exif.setTagValue(ExifInterface.TAG_PIXEL_X_DIMENSION,
+                           cleaned.getWidth());
+          exif.setTagValue(ExifInterface.TAG_PIXEL_Y_DIMENSION,
+                           cleaned.getHeight());
+
+          try {
+            OutputStream exifOut=exif.getExifWriterStream(out);
+
+            cleaned.compress(Bitmap.CompressFormat.JPEG, 100, exifOut);
+            exifOut.close();
+          }
+          catch (IOException e) {
+            Log.e("CWAC-Camera", "Exception writing to JPEG", e);
+            out.reset();
+            cleaned.compress(Bitmap.CompressFormat.JPEG, 100, out);
+          }
+        }
 
         data=out.toByteArray();
 
@@ -165,12 +191,53 @@ public class ImageCleanupTask extends Thread {
         }
       }
 
-      xact.host.saveImage(xact, data);
+      xact.exif=exif;
+
+      if (exifHost) {
+        ((ExifCameraHost)xact.host).saveImage(xact, data, exif);
+      }
+      else {
+        xact.host.saveImage(xact, data);
+      }
     }
 
     System.gc();
   }
 
+  private static ExifInterface readOrientation(byte[] data) {
+    ExifInterface exif=new ExifInterface();
+
+    try {
+      exif.readExif(new ByteArrayInputStream(data), ORIENTATION_TAGS);
+    }
+    catch (IOException e) {
+      Log.e("CWAC-Camera", "Exception parsing JPEG", e);
+
+      return(null);
+    }
+
+    return(exif);
+  }
+
+  private static ExifInterface readAllExif(byte[] data) {
+    ExifInterface exif=new ExifInterface();
+
+    // values are decoded from data when first asked for
+
+    exif.setLazyDecoding(true);
+
+    try {
+      exif.readExif(ByteBuffer.wrap(data));
+    }
+    catch (IOException e) {
+      Log.e("CWAC-Camera", "Exception parsing JPEG", e);
+
+      return(null);
+    }
+
+    return(exif);
+  }
+
   // from http://stackoverflow.com/a/8347956/115145
 
   private Matrix mirror(Matrix input) {
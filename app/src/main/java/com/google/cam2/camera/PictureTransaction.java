@@ -16,6 +16,8 @@ package com.google.cam2.camera;
 
 import android.hardware.Camera;
 
+import com.google.cam2.exif.ExifInterface;
+
 public class PictureTransaction implements Camera.ShutterCallback {
   com.google.cam2.camera.CameraHost host=null;
   boolean needBitmap=false;
@@ -26,6 +28,7 @@ public class PictureTransaction implements Camera.ShutterCallback {
   int displayOrientation=0;
   String flashMode=null;
   com.google.cam2.camera.CameraView cameraView=null;
+  ExifInterface exif=null;
 
   public PictureTransaction(CameraHost host) {
     this.host=host;
@@ -53,6 +56,21 @@ public class PictureTransaction implements Camera.ShutterCallback {
     return(this);
   }
 
+  /**
+   * @return the EXIF data of a picture saved as a byte
+   *         array, parsed once after it was taken. It is only
+   *         parsed in full for an ExifCameraHost, or when the
+   *         picture was rotated or mirrored; otherwise, or if
+   *         the picture has not been taken yet or had no
+   *         readable EXIF, this is null. If the picture was
+   *         rotated or mirrored, this is the EXIF written into
+   *         the saved JPEG, without the orientation tag or
+   *         thumbnail.
+   */
+  public ExifInterface getExif() {
+    return(exif);
+  }
+
   boolean useSingleShotMode() {
     return(useSingleShotMode || host.useSingleShotMode());
   }
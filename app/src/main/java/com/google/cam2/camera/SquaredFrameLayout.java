@@ -1,4 +1,4 @@
-package com.google.cam2.exif;
+package com.google.cam2.camera;
 
 import android.annotation.TargetApi;
 import android.content.Context;
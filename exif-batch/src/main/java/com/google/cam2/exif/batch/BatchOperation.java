@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import com.google.cam2.exif.ExifInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Work applied by {@link ExifBatch} to every JPEG file it finds. Files are
+ * processed concurrently, so implementations must be thread safe; the
+ * ExifInterface passed in belongs to the calling worker thread and may be
+ * reused for the next file once {@link #process} returns.
+ */
+public abstract class BatchOperation {
+
+    /**
+     * Returns whether a file found while walking a directory should be
+     * processed. Files named explicitly are always processed.
+     */
+    protected boolean accept(File file) {
+        String name = file.getName().toLowerCase(Locale.US);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    /**
+     * Creates the ExifInterface used by one worker thread.
+     */
+    protected ExifInterface createInterface() {
+        return new ExifInterface();
+    }
+
+    /**
+     * Processes one file.
+     *
+     * @param file the JPEG file.
+     * @param exif the worker thread's ExifInterface. Its tags are left over
+     *            from the previous file and should be replaced by reading.
+     * @throws IOException if the file could not be processed; it is then
+     *             counted as a failure and passed to {@link #onFailure}.
+     */
+    protected abstract void process(File file, ExifInterface exif) throws IOException;
+
+    /**
+     * Called on the worker thread when {@link #process} fails.
+     */
+    protected void onFailure(File file, Exception e) {
+        System.err.println(file.getPath() + ": " + e.getMessage());
+    }
+
+    /**
+     * Called once after every file has been processed.
+     *
+     * @param out the stream to print a summary to.
+     */
+    protected void finish(PrintStream out) {
+    }
+}
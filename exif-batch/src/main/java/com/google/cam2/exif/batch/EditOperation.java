@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import com.google.cam2.exif.ExifInterface;
+import com.google.cam2.exif.ExifTag;
+import com.google.cam2.exif.Rational;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sets and deletes tags in every file. Files are rewritten in place when the
+ * new values fit, either over the old ones or into the padding reserved by
+ * {@link ExifInterface#TAG_PADDING}. Otherwise the file is copied into a
+ * temporary file next to it, which then replaces it.
+ */
+public class EditOperation extends BatchOperation {
+    private final int[] mSetTags;
+    private final Object[] mSetValues;
+    private final int[] mDeleteTags;
+    private final AtomicLong mInPlace = new AtomicLong();
+    private final AtomicLong mCopied = new AtomicLong();
+
+    /**
+     * @param setTags tag constants to set.
+     * @param setValues the values for setTags, as written on the command line:
+     *            comma separated numbers, "n/d" for rationals, or text.
+     * @param deleteTags tag constants to delete.
+     * @throws IllegalArgumentException if a value does not parse or does not
+     *             fit its tag.
+     */
+    public EditOperation(int[] setTags, String[] setValues, int[] deleteTags) {
+        if (setTags.length != setValues.length) {
+            throw new IllegalArgumentException("Tags and values do not match");
+        }
+        ExifInterface exif = new ExifInterface();
+        mSetTags = setTags.clone();
+        mSetValues = new Object[setValues.length];
+        for (int i = 0; i < setTags.length; i++) {
+            mSetValues[i] = parseValue(exif.getDefinedTagType(setTags[i]), setValues[i]);
+            if (exif.buildTag(setTags[i], mSetValues[i]) == null) {
+                throw new IllegalArgumentException("Invalid value: " + setValues[i]);
+            }
+        }
+        mDeleteTags = deleteTags.clone();
+    }
+
+    @Override
+    protected void process(File file, ExifInterface exif) throws IOException {
+        // Tags are built per file since writing them updates their offsets.
+        List<ExifTag> tags = new ArrayList<ExifTag>(mSetTags.length);
+        for (int i = 0; i < mSetTags.length; i++) {
+            tags.add(exif.buildTag(mSetTags[i], mSetValues[i]));
+        }
+        String path = file.getPath();
+        if (mDeleteTags.length == 0 && exif.rewriteExif(path, tags)) {
+            mInPlace.incrementAndGet();
+            return;
+        }
+
+        exif.readExif(path);
+        for (int tag : mDeleteTags) {
+            exif.deleteTag(tag);
+        }
+        exif.setTags(tags);
+        File temp = File.createTempFile("exif", ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            exif.writeExif(path, temp.getPath());
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to replace " + path);
+            }
+        } finally {
+            temp.delete();
+        }
+        mCopied.incrementAndGet();
+    }
+
+    @Override
+    protected void finish(PrintStream out) {
+        out.println(mInPlace.get() + " rewritten in place, " + mCopied.get() + " copied");
+    }
+
+    private static Object parseValue(short type, String value) {
+        try {
+            switch (type) {
+                case ExifTag.TYPE_ASCII:
+                    return value;
+                case ExifTag.TYPE_UNSIGNED_BYTE:
+                case ExifTag.TYPE_UNDEFINED:
+                    return value.getBytes(StandardCharsets.US_ASCII);
+                case ExifTag.TYPE_UNSIGNED_SHORT:
+                case ExifTag.TYPE_LONG: {
+                    String[] parts = value.split(",");
+                    int[] ints = new int[parts.length];
+                    for (int i = 0; i < parts.length; i++) {
+                        ints[i] = Integer.parseInt(parts[i].trim());
+                    }
+                    return ints;
+                }
+                case ExifTag.TYPE_UNSIGNED_LONG: {
+                    String[] parts = value.split(",");
+                    long[] longs = new long[parts.length];
+                    for (int i = 0; i < parts.length; i++) {
+                        longs[i] = Long.parseLong(parts[i].trim());
+                    }
+                    return longs;
+                }
+                case ExifTag.TYPE_UNSIGNED_RATIONAL:
+                case ExifTag.TYPE_RATIONAL: {
+                    String[] parts = value.split(",");
+                    Rational[] rationals = new Rational[parts.length];
+                    for (int i = 0; i < parts.length; i++) {
+                        String part = parts[i].trim();
+                        int slash = part.indexOf('/');
+                        if (slash < 0) {
+                            rationals[i] = new Rational(Long.parseLong(part), 1);
+                        } else {
+                            rationals[i] = new Rational(Long.parseLong(part.substring(0, slash)),
+                                    Long.parseLong(part.substring(slash + 1)));
+                        }
+                    }
+                    return rationals;
+                }
+                default:
+                    throw new IllegalArgumentException("Tag cannot be set: " + value);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+    }
+}
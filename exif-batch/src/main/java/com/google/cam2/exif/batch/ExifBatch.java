@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import com.google.cam2.exif.ExifInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link BatchOperation} over files and directory trees on a
+ * {@link ForkJoinPool}. Every directory is listed by its own task and the
+ * files in it are handed out in small groups, so idle workers steal whole
+ * subtrees or groups of files from busy ones.
+ */
+public class ExifBatch {
+    // Files per leaf task. Large enough to amortize task overhead, small
+    // enough that a directory of a few hundred files still spreads out.
+    private static final int FILES_PER_TASK = 16;
+
+    private final ForkJoinPool mPool;
+    private final BatchOperation mOperation;
+    private final ThreadLocal<ExifInterface> mInterfaces = new ThreadLocal<ExifInterface>() {
+        @Override
+        protected ExifInterface initialValue() {
+            return mOperation.createInterface();
+        }
+    };
+    private final AtomicLong mFiles = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+
+    public ExifBatch(ForkJoinPool pool, BatchOperation operation) {
+        if (pool == null || operation == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        mPool = pool;
+        mOperation = operation;
+    }
+
+    /**
+     * Processes the given files and everything below the given directories,
+     * and waits for all of it to finish.
+     */
+    public void run(List<File> paths) {
+        mPool.invoke(new PathsTask(paths.toArray(new File[paths.size()]), false));
+    }
+
+    /**
+     * Returns the number of files processed so far, including failures.
+     */
+    public long getFileCount() {
+        return mFiles.get();
+    }
+
+    /**
+     * Returns the number of files that could not be processed.
+     */
+    public long getFailureCount() {
+        return mFailures.get();
+    }
+
+    private void process(File file) {
+        mFiles.incrementAndGet();
+        try {
+            mOperation.process(file, mInterfaces.get());
+        } catch (IOException e) {
+            mFailures.incrementAndGet();
+            mOperation.onFailure(file, e);
+        } catch (RuntimeException e) {
+            // A malformed file must not take the rest of the batch down.
+            mFailures.incrementAndGet();
+            mOperation.onFailure(file, e);
+        }
+    }
+
+    private class PathsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File[] mPaths;
+        private final boolean mFilter;
+
+        PathsTask(File[] paths, boolean filter) {
+            mPaths = paths;
+            mFilter = filter;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+            List<File> files = new ArrayList<File>(FILES_PER_TASK);
+            for (File path : mPaths) {
+                if (path.isDirectory()) {
+                    // Do not follow links into directories; they can loop.
+                    if (mFilter && Files.isSymbolicLink(path.toPath())) {
+                        continue;
+                    }
+                    tasks.add(new DirectoryTask(path));
+                } else if (!mFilter || (path.isFile() && mOperation.accept(path))) {
+                    files.add(path);
+                    if (files.size() == FILES_PER_TASK) {
+                        tasks.add(new FilesTask(files));
+                        files = new ArrayList<File>(FILES_PER_TASK);
+                    }
+                }
+            }
+            if (!files.isEmpty()) {
+                tasks.add(new FilesTask(files));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File mDirectory;
+
+        DirectoryTask(File directory) {
+            mDirectory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            File[] children = mDirectory.listFiles();
+            if (children == null) {
+                mFailures.incrementAndGet();
+                mOperation.onFailure(mDirectory, new IOException("Cannot list directory"));
+                return;
+            }
+            new PathsTask(children, true).compute();
+        }
+    }
+
+    private class FilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> mFileList;
+
+        FilesTask(List<File> files) {
+            mFileList = files;
+        }
+
+        @Override
+        protected void compute() {
+            for (File file : mFileList) {
+                process(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line driver for {@link ExifBatch}.
+ */
+public final class ExifBatchMain {
+    private static final String USAGE =
+            "usage: exif-batch [-j THREADS] COMMAND [OPTIONS] PATH...\n"
+            + "\n"
+            + "Runs COMMAND on every .jpg/.jpeg file below the given directories,\n"
+            + "and on the given files, using THREADS worker threads (default: one\n"
+            + "per processor).\n"
+            + "\n"
+            + "commands:\n"
+            + "  scan                  parse every file and count the tags\n"
+            + "  report [-t TAG,...]   print the given tags of every file, or all tags\n"
+            + "  edit [-s TAG=VALUE]... [-d TAG]...\n"
+            + "                        set and delete tags, in place where possible\n"
+            + "\n"
+            + "TAG is a tag name such as ORIENTATION or DateTimeOriginal. VALUE is\n"
+            + "text, or comma separated numbers with n/d for rationals.\n";
+
+    private ExifBatchMain() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println("exif-batch: " + e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+    }
+
+    private static int run(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        if (i + 1 < args.length && args[i].equals("-j")) {
+            threads = parseThreads(args[i + 1]);
+            i += 2;
+        }
+        if (i >= args.length) {
+            throw new IllegalArgumentException("missing command");
+        }
+        String command = args[i++];
+
+        // System.out flushes after every line, which serializes the workers.
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        BatchOperation operation;
+        if (command.equals("scan")) {
+            operation = new ScanOperation();
+        } else if (command.equals("report")) {
+            int[] tags = null;
+            if (i + 1 < args.length && args[i].equals("-t")) {
+                String[] names = args[i + 1].split(",");
+                tags = new int[names.length];
+                for (int j = 0; j < names.length; j++) {
+                    tags[j] = TagNames.forName(names[j].trim());
+                }
+                i += 2;
+            }
+            operation = new ReportOperation(out, tags);
+        } else if (command.equals("edit")) {
+            List<Integer> setTags = new ArrayList<Integer>();
+            List<String> setValues = new ArrayList<String>();
+            List<Integer> deleteTags = new ArrayList<Integer>();
+            while (i + 1 < args.length && (args[i].equals("-s") || args[i].equals("-d"))) {
+                String arg = args[i + 1];
+                if (args[i].equals("-d")) {
+                    deleteTags.add(TagNames.forName(arg));
+                } else {
+                    int eq = arg.indexOf('=');
+                    if (eq < 0) {
+                        throw new IllegalArgumentException("expected TAG=VALUE: " + arg);
+                    }
+                    setTags.add(TagNames.forName(arg.substring(0, eq)));
+                    setValues.add(arg.substring(eq + 1));
+                }
+                i += 2;
+            }
+            if (setTags.isEmpty() && deleteTags.isEmpty()) {
+                throw new IllegalArgumentException("nothing to edit");
+            }
+            operation = new EditOperation(toArray(setTags),
+                    setValues.toArray(new String[setValues.size()]), toArray(deleteTags));
+        } else {
+            throw new IllegalArgumentException("unknown command: " + command);
+        }
+
+        List<File> paths = new ArrayList<File>();
+        for (; i < args.length; i++) {
+            paths.add(new File(args[i]));
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("missing path");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ExifBatch batch = new ExifBatch(pool, operation);
+        long start = System.nanoTime();
+        try {
+            batch.run(paths);
+        } finally {
+            pool.shutdown();
+            out.flush();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        operation.finish(System.err);
+        System.err.println(String.format(Locale.US, "%d files, %d failed, %.1f s, %.0f files/s",
+                batch.getFileCount(), batch.getFailureCount(), seconds,
+                batch.getFileCount() / Math.max(seconds, 1e-3)));
+        return batch.getFailureCount() == 0 ? 0 : 1;
+    }
+
+    private static int parseThreads(String value) {
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("invalid thread count: " + value);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import com.google.cam2.exif.ExifInterface;
+import com.google.cam2.exif.ExifTag;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Prints one line per file: its path followed by tab separated NAME=value
+ * pairs. Lines from different files are printed in no particular order.
+ */
+public class ReportOperation extends BatchOperation {
+    private final PrintStream mOut;
+    private final int[] mTags;
+
+    /**
+     * @param out the stream to print to.
+     * @param tags the tag constants to print, or null to print every tag.
+     *            Only these tags are parsed, and parsing stops once they have
+     *            all been found.
+     */
+    public ReportOperation(PrintStream out, int[] tags) {
+        mOut = out;
+        mTags = tags;
+    }
+
+    @Override
+    protected void process(File file, ExifInterface exif) throws IOException {
+        StringBuilder line = new StringBuilder(file.getPath());
+        if (mTags == null) {
+            ScanOperation.readExif(file, exif);
+            List<ExifTag> tags = exif.getAllTags();
+            if (tags != null) {
+                for (ExifTag tag : tags) {
+                    append(line, TagNames.nameOf(tag), tag);
+                }
+            }
+        } else {
+            ScanOperation.readExif(file, exif, mTags);
+            for (int tagId : mTags) {
+                ExifTag tag = exif.getTag(tagId);
+                if (tag != null) {
+                    append(line, TagNames.nameOf(tag), tag);
+                }
+            }
+        }
+        // One call per line so lines from other threads do not interleave.
+        mOut.println(line);
+    }
+
+    private static void append(StringBuilder line, String name, ExifTag tag) {
+        String value = tag.forceGetValueAsString();
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == '\0') {
+            end--;
+        }
+        line.append('\t').append(name).append('=');
+        for (int i = 0; i < end; i++) {
+            // Keep each file on one line.
+            char c = value.charAt(i);
+            line.append(c < ' ' ? ' ' : c);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import com.google.cam2.exif.ExifInterface;
+import com.google.cam2.exif.ExifTag;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses the whole Exif header of every file and counts the tags, to check
+ * that a tree can be read and how fast.
+ */
+public class ScanOperation extends BatchOperation {
+    private final AtomicLong mTags = new AtomicLong();
+    private final AtomicLong mWithoutExif = new AtomicLong();
+
+    @Override
+    protected void process(File file, ExifInterface exif) throws IOException {
+        readExif(file, exif);
+        List<ExifTag> tags = exif.getAllTags();
+        if (tags == null) {
+            mWithoutExif.incrementAndGet();
+        } else {
+            mTags.addAndGet(tags.size());
+        }
+    }
+
+    @Override
+    protected void finish(PrintStream out) {
+        out.println(mTags.get() + " tags, " + mWithoutExif.get() + " files without exif");
+    }
+
+    /**
+     * Reads the Exif header of a file. Only the header segments are mapped,
+     * so the mappings a batch leaves for the collector to release stay small.
+     */
+    static void readExif(File file, ExifInterface exif) throws IOException {
+        FileInputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            exif.readExif(is.getChannel());
+        } finally {
+            closeSilently(is);
+        }
+    }
+
+    static void readExif(File file, ExifInterface exif, int[] tags) throws IOException {
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(new FileInputStream(file));
+            exif.readExif(is, tags);
+        } finally {
+            closeSilently(is);
+        }
+    }
+
+    private static void closeSilently(InputStream is) {
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+}
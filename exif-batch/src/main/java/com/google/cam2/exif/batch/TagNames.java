@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif.batch;
+
+import com.google.cam2.exif.ExifInterface;
+import com.google.cam2.exif.ExifTag;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps between the TAG_ constants of {@link ExifInterface} and their names,
+ * e.g. "ORIENTATION" or "DateTimeOriginal" for TAG_DATE_TIME_ORIGINAL.
+ */
+final class TagNames {
+    private static final String PREFIX = "TAG_";
+
+    // Names with underscores removed, upper case, to tag constants.
+    private static final Map<String, Integer> sTags = new HashMap<String, Integer>();
+    // Tag constants to their names without the prefix.
+    private static final Map<Integer, String> sNames = new HashMap<Integer, String>();
+
+    static {
+        for (Field field : ExifInterface.class.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) || field.getType() != int.class
+                    || !field.getName().startsWith(PREFIX)) {
+                continue;
+            }
+            int tag;
+            try {
+                tag = field.getInt(null);
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+            if (tag == ExifInterface.TAG_NULL) {
+                continue;
+            }
+            String name = field.getName().substring(PREFIX.length());
+            sTags.put(normalize(name), tag);
+            sNames.put(tag, name);
+        }
+    }
+
+    private TagNames() {
+    }
+
+    /**
+     * Returns the tag constant for a name, ignoring case, underscores and an
+     * optional "TAG_" prefix.
+     *
+     * @throws IllegalArgumentException if no tag has that name.
+     */
+    static int forName(String name) {
+        String key = normalize(name);
+        if (key.startsWith("TAG")) {
+            Integer tag = sTags.get(key.substring(3));
+            if (tag != null) {
+                return tag;
+            }
+        }
+        Integer tag = sTags.get(key);
+        if (tag == null) {
+            throw new IllegalArgumentException("Unknown tag: " + name);
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the name of a tag read from a file. Tags that are defined for
+     * another IFD are prefixed with their IFD, and unknown tags are given as
+     * their hexadecimal id.
+     */
+    static String nameOf(ExifTag tag) {
+        String name = sNames.get(ExifInterface.defineTag(tag.getIfd(), tag.getTagId()));
+        if (name != null) {
+            return name;
+        }
+        for (Map.Entry<Integer, String> e : sNames.entrySet()) {
+            if (ExifInterface.getTrueTagKey(e.getKey()) == tag.getTagId()) {
+                return "IFD" + tag.getIfd() + "." + e.getValue();
+            }
+        }
+        return String.format(Locale.US, "IFD%d.0x%04X", tag.getIfd(), tag.getTagId() & 0xffff);
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toUpperCase(Locale.US);
+    }
+}
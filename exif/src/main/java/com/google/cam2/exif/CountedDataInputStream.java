@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.nio.charset.Charset;
 
 class CountedDataInputStream extends FilterInputStream {
@@ -32,6 +34,12 @@ class CountedDataInputStream extends FilterInputStream {
     private final byte mByteArray[] = new byte[8];
     private final ByteBuffer mByteBuffer = ByteBuffer.wrap(mByteArray);
 
+    // Value arrays are read through this buffer a block at a time, so that
+    // reading them needs no byte array as large as the value. ExifParser
+    // bounds the counts it allocates value arrays for.
+    private static final int MAX_BLOCK_SIZE = 4096;
+    private ByteBuffer mBlock;
+
     protected CountedDataInputStream(InputStream in) {
         super(in);
     }
@@ -80,8 +88,12 @@ class CountedDataInputStream extends FilterInputStream {
     }
 
     public void readOrThrow(byte[] b, int off, int len) throws IOException {
-        int r = read(b, off, len);
-        if (r != len) throw new EOFException();
+        while (len > 0) {
+            int r = read(b, off, len);
+            if (r <= 0) throw new EOFException();
+            off += r;
+            len -= r;
+        }
     }
 
     public void readOrThrow(byte[] b) throws IOException {
@@ -122,6 +134,58 @@ class CountedDataInputStream extends FilterInputStream {
         return mByteBuffer.getLong();
     }
 
+    /**
+     * Reads dst.length unsigned shorts in the current byte order.
+     */
+    public void readUnsignedShorts(int[] dst) throws IOException {
+        for (int i = 0; i < dst.length;) {
+            int n = Math.min(dst.length - i, MAX_BLOCK_SIZE / 2);
+            ShortBuffer shorts = readBlock(n * 2).asShortBuffer();
+            for (int j = 0; j < n; j++) {
+                dst[i + j] = shorts.get(j) & 0xffff;
+            }
+            i += n;
+        }
+    }
+
+    /**
+     * Reads dst.length ints in the current byte order.
+     */
+    public void readInts(int[] dst) throws IOException {
+        for (int i = 0; i < dst.length;) {
+            int n = Math.min(dst.length - i, MAX_BLOCK_SIZE / 4);
+            readBlock(n * 4).asIntBuffer().get(dst, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Reads dst.length ints in the current byte order, sign extended if
+     * signed and zero extended otherwise.
+     */
+    public void readInts(long[] dst, boolean signed) throws IOException {
+        long mask = signed ? -1L : 0xffffffffL;
+        for (int i = 0; i < dst.length;) {
+            int n = Math.min(dst.length - i, MAX_BLOCK_SIZE / 4);
+            IntBuffer ints = readBlock(n * 4).asIntBuffer();
+            for (int j = 0; j < n; j++) {
+                dst[i + j] = ints.get(j) & mask;
+            }
+            i += n;
+        }
+    }
+
+    private ByteBuffer readBlock(int length) throws IOException {
+        if (mBlock == null || mBlock.capacity() < length) {
+            mBlock = ByteBuffer.allocate(Math.max(length, 64));
+        }
+        readOrThrow(mBlock.array(), 0, length);
+        mBlock.clear();
+        mBlock.limit(length);
+        mBlock.order(mByteBuffer.order());
+        return mBlock;
+    }
+
     public String readString(int n) throws IOException {
         byte buf[] = new byte[n];
         readOrThrow(buf);
@@ -0,0 +1,681 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A random-access counterpart of {@link ExifParser}. Given a JPEG image held in
+ * a {@link ByteBuffer} (typically a memory-mapped file), it locates the TIFF
+ * header once and then reads IFDs, tag values and the thumbnail by absolute
+ * offset. Nothing is read sequentially, so there is no need to skip forward or
+ * to queue values that appear out of order.
+ * <p>
+ * The parser does not walk the IFD chain on its own; {@link ExifReader} or
+ * {@link ExifCursor} drives it.
+ *
+ * @see ExifReader#read(ByteBuffer)
+ */
+class ExifBufferParser {
+    private static final boolean LOGV = false;
+    private static final String TAG = "ExifBufferParser";
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    // Every IFD and the thumbnail.
+    protected static final int DEFAULT_OPTIONS = ExifParser.OPTION_IFD_0
+            | ExifParser.OPTION_IFD_1 | ExifParser.OPTION_IFD_EXIF | ExifParser.OPTION_IFD_GPS
+            | ExifParser.OPTION_IFD_INTEROPERABILITY | ExifParser.OPTION_THUMBNAIL;
+
+    // Size of the IFD entry count and of the link to the next IFD.
+    private static final int IFD_COUNT_SIZE = 2;
+    private static final int IFD_LINK_SIZE = 4;
+
+    private final ExifInterface mInterface;
+    private int mOptions;
+    private boolean mLazyValues;
+    private ByteBuffer mTiff;
+    private boolean mContainExifData = false;
+    private int mTiffStartPosition;
+    private int mOffsetToApp1EndFromSOF = 0;
+    private int mIfd0Position;
+    // The buffer and range mTiff was last cut from, so that parsing the same
+    // buffer again does not create another view of it.
+    private ByteBuffer mSource;
+    private int mSourceTiffStart;
+    private int mSourceTiffLength;
+    private final JpegSegmentIndex mIndex = new JpegSegmentIndex();
+    private int mXmpOffset;
+    private int mXmpLength;
+    // Offsets and lengths of the ICC profile chunks, by chunk number.
+    private int[] mIccOffsets = new int[0];
+    private int[] mIccLengths = new int[0];
+    private int mIccChunkCount;
+
+    private ExifBufferParser(ByteBuffer jpeg, int options, ExifInterface iRef)
+            throws ExifInvalidFormatException {
+        mInterface = iRef;
+        reset(jpeg, options);
+    }
+
+    /**
+     * Parses another JPEG with this parser, as if it had been created by
+     * {@link #parse(ByteBuffer, int, ExifInterface)}.
+     *
+     * @exception ExifInvalidFormatException
+     */
+    protected void reset(ByteBuffer jpeg, int options) throws ExifInvalidFormatException {
+        if (jpeg == null) {
+            throw new IllegalArgumentException("Null argument jpeg to ExifBufferParser");
+        }
+        if (LOGV) {
+            Log.v(TAG, "Reading exif...");
+        }
+        mOptions = options;
+        mLazyValues = mInterface != null && mInterface.isLazyDecoding();
+        mTiffStartPosition = 0;
+        mOffsetToApp1EndFromSOF = 0;
+        mContainExifData = seekTiffData(jpeg);
+        if (!mContainExifData) {
+            return;
+        }
+        parseTiffHeader();
+    }
+
+    /**
+     * Parses the JPEG in the given buffer, from its position to its limit. The
+     * position of the buffer is not changed.
+     *
+     * @exception ExifInvalidFormatException
+     */
+    protected static ExifBufferParser parse(ByteBuffer jpeg, int options, ExifInterface iRef)
+            throws ExifInvalidFormatException {
+        return new ExifBufferParser(jpeg, options, iRef);
+    }
+
+    /**
+     * Parses the JPEG in the given buffer with default options; that is, every
+     * IFD and thumbnail will be parsed.
+     *
+     * @exception ExifInvalidFormatException
+     */
+    protected static ExifBufferParser parse(ByteBuffer jpeg, ExifInterface iRef)
+            throws ExifInvalidFormatException {
+        return new ExifBufferParser(jpeg, DEFAULT_OPTIONS, iRef);
+    }
+
+    /**
+     * Locates the TIFF header of the JPEG in the given buffer without reading
+     * any IFD. Only the raw accessors such as {@link #getTagCountOfIfd(int)},
+     * {@link #getEntryValueOffset(int, int)},
+     * {@link #findIntTagValue(int, int, short)} and {@link #slice(long, long)}
+     * may be used on the result.
+     *
+     * @exception ExifInvalidFormatException
+     */
+    protected static ExifBufferParser locate(ByteBuffer jpeg)
+            throws ExifInvalidFormatException {
+        return new ExifBufferParser(jpeg, 0, null);
+    }
+
+    protected boolean containsExifData() {
+        return mContainExifData;
+    }
+
+    protected boolean isIfdRequested(int ifdType) {
+        switch (ifdType) {
+            case IfdId.TYPE_IFD_0:
+                return (mOptions & ExifParser.OPTION_IFD_0) != 0;
+            case IfdId.TYPE_IFD_1:
+                return (mOptions & ExifParser.OPTION_IFD_1) != 0;
+            case IfdId.TYPE_IFD_EXIF:
+                return (mOptions & ExifParser.OPTION_IFD_EXIF) != 0;
+            case IfdId.TYPE_IFD_GPS:
+                return (mOptions & ExifParser.OPTION_IFD_GPS) != 0;
+            case IfdId.TYPE_IFD_INTEROPERABILITY:
+                return (mOptions & ExifParser.OPTION_IFD_INTEROPERABILITY) != 0;
+        }
+        return false;
+    }
+
+    protected boolean isThumbnailRequested() {
+        return (mOptions & ExifParser.OPTION_THUMBNAIL) != 0;
+    }
+
+    /**
+     * Gets the byte order of the TIFF data.
+     */
+    protected ByteOrder getByteOrder() {
+        return mTiff.order();
+    }
+
+    /**
+     * Gets the offset of IFD0 from the start of the TIFF header.
+     */
+    protected int getIfd0Offset() {
+        return mIfd0Position;
+    }
+
+    /**
+     * Gets the position of the TIFF header relative to the position of the
+     * source buffer.
+     */
+    protected int getTiffStartPosition() {
+        return mTiffStartPosition;
+    }
+
+    protected int getOffsetToExifEndFromSOF() {
+        return mOffsetToApp1EndFromSOF;
+    }
+
+    /**
+     * Gets the offset of the XMP packet from the position of the source
+     * buffer. Only valid if {@link #getXmpLength()} is not -1.
+     */
+    protected int getXmpOffset() {
+        return mXmpOffset;
+    }
+
+    /**
+     * Gets the length of the XMP packet, or -1 if the image has none. The
+     * packet is looked for even if the image has no Exif data.
+     */
+    protected int getXmpLength() {
+        return mXmpLength;
+    }
+
+    /**
+     * Gets the number of chunks of the ICC profile, or 0 if the image has
+     * none or a chunk is missing. Like the XMP packet, the profile is looked
+     * for even if the image has no Exif data.
+     */
+    protected int getIccChunkCount() {
+        return mIccChunkCount;
+    }
+
+    /**
+     * Gets the offsets of the ICC profile chunks from the position of the
+     * source buffer, in order. Only the first {@link #getIccChunkCount()} are
+     * valid.
+     */
+    protected int[] getIccChunkOffsets() {
+        return mIccOffsets;
+    }
+
+    /**
+     * Gets the lengths of the ICC profile chunks, in order. Only the first
+     * {@link #getIccChunkCount()} are valid.
+     */
+    protected int[] getIccChunkLengths() {
+        return mIccLengths;
+    }
+
+    /**
+     * Gets the number of entries of the IFD at the given offset, or -1 if the
+     * IFD does not fit into the APP1 segment.
+     */
+    protected int getTagCountOfIfd(int ifdOffset) {
+        if (!isInBounds(ifdOffset, IFD_COUNT_SIZE)) {
+            return -1;
+        }
+        int count = mTiff.getShort(ifdOffset) & 0xffff;
+        if (!isInBounds(ifdOffset, IFD_COUNT_SIZE + ExifParser.TAG_SIZE * count)) {
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the link to the next IFD stored after the entries of the IFD at the
+     * given offset, or 0 if there is none.
+     */
+    protected long getOffsetToNextIfd(int ifdOffset, int tagCount) {
+        int linkOffset = ifdOffset + IFD_COUNT_SIZE + ExifParser.TAG_SIZE * tagCount;
+        if (!isInBounds(linkOffset, IFD_LINK_SIZE)) {
+            Log.w(TAG, "Invalid size of link to next IFD at: " + linkOffset);
+            return 0;
+        }
+        return mTiff.getInt(linkOffset) & 0xffffffffL;
+    }
+
+    /**
+     * Looks up the single SHORT or LONG value of the given tag in the IFD at
+     * the given offset without creating an {@link ExifTag}. Returns -1 if the
+     * IFD has no such entry or the entry is not a single integer.
+     */
+    protected long findIntTagValue(int ifdOffset, int tagCount, short tagId) {
+        int entry = ifdOffset + IFD_COUNT_SIZE;
+        for (int i = 0; i < tagCount; i++, entry += ExifParser.TAG_SIZE) {
+            if (mTiff.getShort(entry) != tagId) {
+                continue;
+            }
+            if (mTiff.getInt(entry + 4) != 1) {
+                return -1;
+            }
+            switch (mTiff.getShort(entry + 2)) {
+                case ExifTag.TYPE_UNSIGNED_SHORT:
+                    return mTiff.getShort(entry + 8) & 0xffff;
+                case ExifTag.TYPE_UNSIGNED_LONG:
+                    return mTiff.getInt(entry + 8) & 0xffffffffL;
+                default:
+                    return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the tag ID of the i-th entry of the IFD at the given offset.
+     */
+    protected short getEntryTagId(int ifdOffset, int index) {
+        return mTiff.getShort(ifdOffset + IFD_COUNT_SIZE + ExifParser.TAG_SIZE * index);
+    }
+
+    /**
+     * Gets the data type of the i-th entry of the IFD at the given offset.
+     */
+    protected short getEntryDataType(int ifdOffset, int index) {
+        return mTiff.getShort(ifdOffset + IFD_COUNT_SIZE + ExifParser.TAG_SIZE * index + 2);
+    }
+
+    /**
+     * Gets the component count of the i-th entry of the IFD at the given
+     * offset.
+     */
+    protected long getEntryComponentCount(int ifdOffset, int index) {
+        return mTiff.getInt(ifdOffset + IFD_COUNT_SIZE + ExifParser.TAG_SIZE * index + 4)
+                & 0xffffffffL;
+    }
+
+    /**
+     * Gets the offset of the value of the i-th entry of the IFD at the given
+     * offset, without reading the value. That is the entry itself if the value
+     * fits into 4 bytes. Returns -1 if the entry has an invalid type or its
+     * value does not fit into the APP1 segment.
+     */
+    protected long getEntryValueOffset(int ifdOffset, int index) {
+        int entry = ifdOffset + IFD_COUNT_SIZE + ExifParser.TAG_SIZE * index;
+        short type = mTiff.getShort(entry + 2);
+        if (!ExifTag.isValidType(type)) {
+            return -1;
+        }
+        long size = ExifTag.getElementSize(type) * (mTiff.getInt(entry + 4) & 0xffffffffL);
+        long offset = size > 4 ? mTiff.getInt(entry + 8) & 0xffffffffL : entry + 8;
+        return isInBounds(offset, size) ? offset : -1;
+    }
+
+    /**
+     * Reads the i-th entry of the IFD at the given offset together with its
+     * value. Returns null if the entry is broken and should be ignored.
+     *
+     * @param spare a tag from an earlier read that is returned again, together
+     *            with its value array, if it has the same ID and type as the
+     *            entry; may be null.
+     * @exception ExifInvalidFormatException
+     */
+    protected ExifTag readTag(int ifdOffset, int index, int ifdType, ExifTag spare)
+            throws ExifInvalidFormatException {
+        int entry = ifdOffset + IFD_COUNT_SIZE + ExifParser.TAG_SIZE * index;
+        short tagId = mTiff.getShort(entry);
+        short dataFormat = mTiff.getShort(entry + 2);
+        long numOfComp = mTiff.getInt(entry + 4) & 0xffffffffL;
+        if (numOfComp > Integer.MAX_VALUE) {
+            throw new ExifInvalidFormatException(
+                    "Number of component is larger then Integer.MAX_VALUE");
+        }
+        // Some invalid image file contains invalid data type. Ignore those tags
+        if (!ExifTag.isValidType(dataFormat)) {
+            Log.w(TAG, String.format("Tag %04x: Invalid data type %d", tagId, dataFormat));
+            return null;
+        }
+        ExifTag tag;
+        if (spare != null && spare.getTagId() == tagId && spare.getDataType() == dataFormat) {
+            tag = spare;
+            tag.recycle((int) numOfComp, ifdType, ((int) numOfComp) != ExifTag.SIZE_UNDEFINED);
+        } else {
+            tag = new ExifTag(tagId, dataFormat, (int) numOfComp, ifdType,
+                    ((int) numOfComp) != ExifTag.SIZE_UNDEFINED);
+        }
+        // A bogus count can overflow an int size.
+        long dataSize = numOfComp * ExifTag.getElementSize(dataFormat);
+        if (dataSize > 4) {
+            long offset = mTiff.getInt(entry + 8) & 0xffffffffL;
+            if (offset > Integer.MAX_VALUE) {
+                throw new ExifInvalidFormatException(
+                        "offset is larger then Integer.MAX_VALUE");
+            }
+            tag.setOffset((int) offset);
+            if (checkTagValueBounds(tag, (int) offset)) {
+                if (mLazyValues) {
+                    tag.setLazyValue(mTiff, (int) offset, false);
+                } else {
+                    decodeTagValue(mTiff, tag, (int) offset);
+                }
+            }
+        } else {
+            tag.setOffset(entry + 8);
+            if (mLazyValues) {
+                tag.setLazyValue(mTiff, entry + 8, true);
+            } else {
+                boolean defCount = tag.hasDefinedCount();
+                // Set defined count to 0 so we can add \0 to non-terminated strings
+                tag.setHasDefinedCount(false);
+                decodeTagValue(mTiff, tag, entry + 8);
+                tag.setHasDefinedCount(defCount);
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Checks that the value of the tag at the given offset lies within the
+     * APP1 segment. Byte and string values that run past its end are
+     * shortened. Returns false if the value cannot be read at all.
+     */
+    private boolean checkTagValueBounds(ExifTag tag, int offset) {
+        if (!isInBounds(offset,
+                (long) tag.getComponentCount() * ExifTag.getElementSize(tag.getDataType()))) {
+            short type = tag.getDataType();
+            if ((type == ExifTag.TYPE_ASCII || type == ExifTag.TYPE_UNDEFINED
+                    || type == ExifTag.TYPE_UNSIGNED_BYTE) && isInBounds(offset, 0)) {
+                // Tag value runs past the end of APP1, shorten count
+                int count = mTiff.limit() - offset;
+                Log.w(TAG, "Invalid size of tag: \n" + tag.toString()
+                        + " setting count to: " + count);
+                tag.forceSetComponentCount(count);
+            } else {
+                Log.w(TAG, "Failed to read data at: " + offset
+                        + " for tag: \n" + tag.toString() + ", the file may be broken.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the value of the tag stored at the given offset from the start
+     * of the TIFF data. The caller must have checked the bounds of the value.
+     */
+    static void decodeTagValue(ByteBuffer tiff, ExifTag tag, int offset) {
+        int count = tag.getComponentCount();
+        switch (tag.getDataType()) {
+            case ExifTag.TYPE_UNSIGNED_BYTE:
+            case ExifTag.TYPE_UNDEFINED: {
+                byte buf[] = tag.obtainBytes(count);
+                getBytes(tiff, offset, buf, count);
+                tag.setByteValues(buf);
+            }
+                break;
+            case ExifTag.TYPE_ASCII: {
+                // Non-ASCII bytes become '?' and a missing terminator is
+                // added, as with a round trip through a US-ASCII String.
+                boolean terminated = count == 0 || tiff.get(offset + count - 1) == 0;
+                byte buf[] = tag.obtainBytes(terminated ? count : count + 1);
+                for (int i = 0; i < count; i++) {
+                    byte b = tiff.get(offset + i);
+                    buf[i] = b < 0 ? (byte) '?' : b;
+                }
+                if (!terminated) {
+                    buf[count] = 0;
+                }
+                tag.setStringValue(buf);
+            }
+                break;
+            case ExifTag.TYPE_UNSIGNED_LONG: {
+                long value[] = tag.obtainLongs(count);
+                for (int i = 0; i < count; i++) {
+                    value[i] = tiff.getInt(offset + 4 * i) & 0xffffffffL;
+                }
+                tag.setLongValues(value);
+            }
+                break;
+            case ExifTag.TYPE_UNSIGNED_RATIONAL: {
+                long value[] = tag.obtainLongs(2 * count);
+                for (int i = 0; i < value.length; i++) {
+                    value[i] = tiff.getInt(offset + 4 * i) & 0xffffffffL;
+                }
+                tag.setRationalValues(value);
+            }
+                break;
+            case ExifTag.TYPE_UNSIGNED_SHORT: {
+                long value[] = tag.obtainLongs(count);
+                for (int i = 0; i < count; i++) {
+                    value[i] = tiff.getShort(offset + 2 * i) & 0xffff;
+                }
+                tag.setLongValues(value);
+            }
+                break;
+            case ExifTag.TYPE_LONG: {
+                long value[] = tag.obtainLongs(count);
+                for (int i = 0; i < count; i++) {
+                    value[i] = tiff.getInt(offset + 4 * i);
+                }
+                tag.setLongValues(value);
+            }
+                break;
+            case ExifTag.TYPE_RATIONAL: {
+                long value[] = tag.obtainLongs(2 * count);
+                for (int i = 0; i < value.length; i++) {
+                    value[i] = tiff.getInt(offset + 4 * i);
+                }
+                tag.setRationalValues(value);
+            }
+                break;
+        }
+        if (LOGV) {
+            Log.v(TAG, "\n" + tag.toString());
+        }
+    }
+
+    /**
+     * Copies the bytes of the given region of the TIFF data, or returns null
+     * if the region does not fit into the APP1 segment.
+     */
+    protected byte[] getBytes(int offset, int length) {
+        return getBytes(offset, length, null);
+    }
+
+    /**
+     * Like {@link #getBytes(int, int)}, but copies into the given array
+     * instead of a new one if it has the right length.
+     */
+    protected byte[] getBytes(int offset, int length, byte[] spare) {
+        if (length < 0 || !isInBounds(offset, length)) {
+            return null;
+        }
+        byte[] buf = spare != null && spare.length == length ? spare : new byte[length];
+        getBytes(mTiff, offset, buf, length);
+        return buf;
+    }
+
+    /**
+     * Returns a view of the given range of the TIFF data that shares its
+     * content, or null if the range is outside of the APP1 segment.
+     */
+    protected ByteBuffer slice(long offset, long length) {
+        if (length < 0 || !isInBounds(offset, length)) {
+            return null;
+        }
+        ByteBuffer dup = mTiff.duplicate();
+        dup.position((int) offset);
+        dup.limit((int) (offset + length));
+        return dup.slice();
+    }
+
+    /**
+     * Returns the TIFF data, set to its byte order, for reads by absolute
+     * index. Its position and limit must not be changed.
+     */
+    protected ByteBuffer getTiffData() {
+        return mTiff;
+    }
+
+    /**
+     * Copies length bytes at the given index of the source buffer into buf,
+     * without changing the position of the source.
+     */
+    protected static void getBytes(ByteBuffer src, int offset, byte[] buf, int length) {
+        getBytes(src, offset, buf, 0, length);
+    }
+
+    /**
+     * Copies length bytes at the given index of the source buffer into buf
+     * from bufOffset, without changing the position of the source.
+     */
+    protected static void getBytes(ByteBuffer src, int offset, byte[] buf, int bufOffset,
+            int length) {
+        if (src.hasArray()) {
+            System.arraycopy(src.array(), src.arrayOffset() + offset, buf, bufOffset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buf[bufOffset + i] = src.get(offset + i);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given tag is known to be allowed in the given IFD.
+     */
+    protected boolean checkAllowed(int ifd, int tagId) {
+        int info = mInterface.getTagInfo().get(tagId);
+        if (info == ExifInterface.DEFINITION_NULL) {
+            return false;
+        }
+        return ExifInterface.isIfdAllowed(info, ifd);
+    }
+
+    private boolean isInBounds(long offset, long length) {
+        return offset >= 0 && offset + length <= mTiff.limit();
+    }
+
+    private void parseTiffHeader() throws ExifInvalidFormatException {
+        if (mTiff.limit() < ExifParser.DEFAULT_IFD0_OFFSET) {
+            throw new ExifInvalidFormatException("Invalid TIFF header");
+        }
+        short byteOrder = mTiff.getShort(0);
+        if (ExifParser.LITTLE_ENDIAN_TAG == byteOrder) {
+            mTiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (ExifParser.BIG_ENDIAN_TAG == byteOrder) {
+            mTiff.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            throw new ExifInvalidFormatException("Invalid TIFF header");
+        }
+
+        if (mTiff.getShort(2) != ExifParser.TIFF_HEADER_TAIL) {
+            throw new ExifInvalidFormatException("Invalid TIFF header");
+        }
+        long offset = mTiff.getInt(4) & 0xffffffffL;
+        if (offset > Integer.MAX_VALUE) {
+            throw new ExifInvalidFormatException("Invalid offset " + offset);
+        }
+        mIfd0Position = (int) offset;
+    }
+
+    /**
+     * Puts the ICC profile chunks of the index in order, checking that there
+     * is exactly one of each.
+     */
+    private void findIccProfile(JpegSegmentIndex index) {
+        mIccChunkCount = 0;
+        if (index.getIccSegmentCount() == 0) {
+            return;
+        }
+        int count = -1;
+        for (int i = 0, n = index.getSegmentCount(); i < n; i++) {
+            if (!index.isIcc(i)) {
+                continue;
+            }
+            if (!index.isComplete(i)) {
+                Log.w(TAG, "Truncated ICC profile chunk at: " + index.getOffset(i));
+                return;
+            }
+            int number = index.getIccChunkNumber(i);
+            if (count < 0) {
+                count = index.getIccChunkCount(i);
+                if (mIccOffsets.length < count) {
+                    mIccOffsets = new int[count];
+                    mIccLengths = new int[count];
+                }
+                Arrays.fill(mIccLengths, 0, count, -1);
+            }
+            if (index.getIccChunkCount(i) != count || number < 1 || number > count
+                    || mIccLengths[number - 1] >= 0) {
+                Log.w(TAG, "Invalid ICC profile chunk " + number + " of "
+                        + index.getIccChunkCount(i));
+                continue;
+            }
+            mIccOffsets[number - 1] = index.getIccDataOffset(i);
+            mIccLengths[number - 1] = index.getIccDataLength(i);
+        }
+        for (int i = 0; i < count; i++) {
+            if (mIccLengths[i] < 0) {
+                Log.w(TAG, "Incomplete ICC profile");
+                return;
+            }
+        }
+        mIccChunkCount = Math.max(count, 0);
+    }
+
+    private boolean seekTiffData(ByteBuffer jpeg) throws ExifInvalidFormatException {
+        int start = jpeg.position();
+        int end = jpeg.limit();
+        JpegSegmentIndex index = mIndex;
+        index.scan(jpeg);
+        if (end - start < 4 || !index.isJpeg()) {
+            throw new ExifInvalidFormatException("Invalid JPEG format");
+        }
+        int xmp = index.getXmpIndex();
+        if (xmp >= 0 && index.isComplete(xmp)) {
+            mXmpOffset = index.getXmpPacketOffset(xmp);
+            mXmpLength = index.getXmpPacketLength(xmp);
+        } else {
+            mXmpOffset = 0;
+            mXmpLength = -1;
+        }
+        findIccProfile(index);
+        // Some invalid formatted image contains multiple APP1, the index
+        // points at the one with Exif data.
+        int exif = index.getExifIndex();
+        if (exif < 0) {
+            int count = index.getSegmentCount();
+            if (index.getFrameIndex() < 0
+                    && (count == 0 || index.getMarker(count - 1) != JpegHeader.EOI)) {
+                Log.w(TAG, "Invalid JPEG format.");
+            }
+            return false;
+        }
+        int length = index.getLength(exif);
+        int tiffStart = start + index.getTiffOffset();
+        int tiffLength = Math.min(length - 8, end - tiffStart);
+        mTiffStartPosition = tiffStart - start;
+        mOffsetToApp1EndFromSOF = mTiffStartPosition + length - 6;
+        if (jpeg != mSource || tiffStart != mSourceTiffStart
+                || tiffLength != mSourceTiffLength) {
+            ByteBuffer tiff = jpeg.duplicate();
+            tiff.position(tiffStart);
+            tiff.limit(tiffStart + tiffLength);
+            mTiff = tiff.slice();
+            mSource = jpeg;
+            mSourceTiffStart = tiffStart;
+            mSourceTiffLength = tiffLength;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A cursor over the IFD entries of a JPEG image held in a {@link ByteBuffer}.
+ * Values are read straight from the buffer by absolute offset when asked for;
+ * no {@link ExifTag} or other object is created for an entry, and a cursor
+ * can be reset to another image and used again.
+ * <p>
+ * Entries come IFD by IFD, starting with IFD0. The IFD pointer tags are
+ * returned like any other entry, and the IFDs they point to follow later.
+ * Entries with an invalid type or with a value outside of the APP1 segment
+ * are skipped.
+ *
+ * <pre>
+ * ExifCursor cursor = new ExifCursor();
+ * cursor.reset(jpeg);
+ * int orientation = 0;
+ * short orientationId = ExifInterface.getTrueTagKey(ExifInterface.TAG_ORIENTATION);
+ * while (cursor.next()) {
+ *     if (cursor.ifd() == IfdId.TYPE_IFD_0 &amp;&amp; cursor.tagId() == orientationId
+ *             &amp;&amp; cursor.count() == 1) {
+ *         orientation = (int) cursor.intValue(0);
+ *     }
+ * }
+ * </pre>
+ *
+ * A cursor is not thread safe, and the buffer must not be changed while it
+ * is in use.
+ */
+public final class ExifCursor {
+    private static final short TAG_EXIF_IFD = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
+    private static final short TAG_GPS_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_IFD);
+    private static final short TAG_INTEROPERABILITY_IFD = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_INTEROPERABILITY_IFD);
+
+    private ExifBufferParser mParser;
+    private ByteBuffer mTiff;
+    // IFDs still to be read, in the order their offsets were found. Each IFD
+    // is queued at most once, which also guards against loops.
+    private final int[] mPendingIfds = new int[IfdId.TYPE_IFD_COUNT];
+    private final int[] mPendingOffsets = new int[IfdId.TYPE_IFD_COUNT];
+    private int mPendingHead;
+    private int mPendingCount;
+    private int mQueuedIfds;
+
+    private int mIfd = -1;
+    private int mIfdOffset;
+    private int mTagCount;
+    private int mIndex;
+    private short mTagId;
+    private short mType;
+    private int mCount;
+    private int mValueOffset = -1;
+
+    /**
+     * Creates a cursor with no image; {@link #next()} returns false until it
+     * is reset.
+     */
+    public ExifCursor() {
+    }
+
+    /**
+     * Moves the cursor before the first entry of the JPEG image in the given
+     * buffer, from its position to its limit. The position of the buffer is
+     * not changed. An image without Exif data has no entries.
+     *
+     * @exception ExifInvalidFormatException if the buffer does not hold a
+     *                JPEG image or its TIFF header is invalid.
+     */
+    public void reset(ByteBuffer jpeg) throws ExifInvalidFormatException {
+        if (jpeg == null) {
+            throw new IllegalArgumentException("Null argument jpeg to ExifCursor");
+        }
+        clear();
+        if (mParser == null) {
+            mParser = ExifBufferParser.locate(jpeg);
+        } else {
+            mParser.reset(jpeg, 0);
+        }
+        if (mParser.containsExifData()) {
+            mTiff = mParser.getTiffData();
+            queueIfd(IfdId.TYPE_IFD_0, mParser.getIfd0Offset());
+        }
+    }
+
+    private void clear() {
+        mTiff = null;
+        mPendingHead = mPendingCount = 0;
+        mQueuedIfds = 0;
+        mIfd = -1;
+        mTagCount = mIndex = 0;
+        mValueOffset = -1;
+    }
+
+    /**
+     * Moves the cursor to the next entry.
+     *
+     * @return false if there are no more entries.
+     */
+    public boolean next() {
+        while (true) {
+            if (++mIndex < mTagCount) {
+                if (readEntry()) {
+                    return true;
+                }
+                continue;
+            }
+            // There is a link to ifd1 at the end of ifd0
+            if (mIfd == IfdId.TYPE_IFD_0 && mTagCount >= 0) {
+                queueIfd(IfdId.TYPE_IFD_1, mParser.getOffsetToNextIfd(mIfdOffset, mTagCount));
+            }
+            if (mPendingHead == mPendingCount) {
+                mIfd = -1;
+                mTagCount = mIndex = 0;
+                mValueOffset = -1;
+                return false;
+            }
+            mIfd = mPendingIfds[mPendingHead];
+            mIfdOffset = mPendingOffsets[mPendingHead++];
+            mTagCount = mParser.getTagCountOfIfd(mIfdOffset);
+            if (mTagCount < 0) {
+                Log.w("ExifCursor", "Invalid size of IFD " + mIfd);
+            }
+            mIndex = -1;
+        }
+    }
+
+    private boolean readEntry() {
+        mTagId = mParser.getEntryTagId(mIfdOffset, mIndex);
+        mType = mParser.getEntryDataType(mIfdOffset, mIndex);
+        long count = mParser.getEntryComponentCount(mIfdOffset, mIndex);
+        long offset = mParser.getEntryValueOffset(mIfdOffset, mIndex);
+        if (offset < 0 || count > Integer.MAX_VALUE) {
+            mValueOffset = -1;
+            return false;
+        }
+        mCount = (int) count;
+        mValueOffset = (int) offset;
+        // Like ExifReader, follow the pointers where the default tag
+        // definitions allow them.
+        if (mCount > 0 && (mType == ExifTag.TYPE_UNSIGNED_LONG || mType == ExifTag.TYPE_LONG
+                || mType == ExifTag.TYPE_UNSIGNED_SHORT)) {
+            boolean ifd0or1 = mIfd == IfdId.TYPE_IFD_0 || mIfd == IfdId.TYPE_IFD_1;
+            if (ifd0or1 && mTagId == TAG_EXIF_IFD) {
+                queueIfd(IfdId.TYPE_IFD_EXIF, intValue(0));
+            } else if (ifd0or1 && mTagId == TAG_GPS_IFD) {
+                queueIfd(IfdId.TYPE_IFD_GPS, intValue(0));
+            } else if (mIfd == IfdId.TYPE_IFD_EXIF && mTagId == TAG_INTEROPERABILITY_IFD) {
+                queueIfd(IfdId.TYPE_IFD_INTEROPERABILITY, intValue(0));
+            }
+        }
+        return true;
+    }
+
+    private void queueIfd(int ifd, long offset) {
+        if ((mQueuedIfds & (1 << ifd)) != 0 || offset <= 0 || offset > Integer.MAX_VALUE) {
+            return;
+        }
+        mQueuedIfds |= 1 << ifd;
+        mPendingIfds[mPendingCount] = ifd;
+        mPendingOffsets[mPendingCount++] = (int) offset;
+    }
+
+    /**
+     * Returns the IFD of the current entry, e.g. {@link IfdId#TYPE_IFD_GPS}.
+     */
+    public int ifd() {
+        checkEntry();
+        return mIfd;
+    }
+
+    /**
+     * Returns the TID of the current entry, as given by
+     * {@link ExifInterface#getTrueTagKey(int)} for the tag constants.
+     */
+    public short tagId() {
+        checkEntry();
+        return mTagId;
+    }
+
+    /**
+     * Returns the data type of the current entry, e.g.
+     * {@link ExifTag#TYPE_UNSIGNED_SHORT}.
+     */
+    public short type() {
+        checkEntry();
+        return mType;
+    }
+
+    /**
+     * Returns the number of components of the current entry. For
+     * {@link ExifTag#TYPE_ASCII} this includes the terminating NUL, if any.
+     */
+    public int count() {
+        checkEntry();
+        return mCount;
+    }
+
+    /**
+     * Reads a component of the current entry if its type is
+     * {@link ExifTag#TYPE_UNSIGNED_SHORT}, {@link ExifTag#TYPE_UNSIGNED_LONG},
+     * {@link ExifTag#TYPE_LONG}, {@link ExifTag#TYPE_UNSIGNED_BYTE},
+     * {@link ExifTag#TYPE_UNDEFINED} or {@link ExifTag#TYPE_ASCII}. Only
+     * {@link ExifTag#TYPE_LONG} values are signed.
+     *
+     * @exception IllegalArgumentException if the data type is
+     *                {@link ExifTag#TYPE_RATIONAL} or
+     *                {@link ExifTag#TYPE_UNSIGNED_RATIONAL}.
+     */
+    public long intValue(int index) {
+        checkIndex(index);
+        switch (mType) {
+            case ExifTag.TYPE_UNSIGNED_SHORT:
+                return mTiff.getShort(mValueOffset + 2 * index) & 0xffff;
+            case ExifTag.TYPE_UNSIGNED_LONG:
+                return mTiff.getInt(mValueOffset + 4 * index) & 0xffffffffL;
+            case ExifTag.TYPE_LONG:
+                return mTiff.getInt(mValueOffset + 4 * index);
+            case ExifTag.TYPE_UNSIGNED_BYTE:
+            case ExifTag.TYPE_UNDEFINED:
+            case ExifTag.TYPE_ASCII:
+                return mTiff.get(mValueOffset + index) & 0xff;
+            default:
+                throw new IllegalArgumentException("Cannot get integer value from "
+                        + ExifTag.convertTypeToString(mType));
+        }
+    }
+
+    /**
+     * Reads the numerator of a component of the current entry, which must be
+     * of type {@link ExifTag#TYPE_UNSIGNED_RATIONAL} or
+     * {@link ExifTag#TYPE_RATIONAL}.
+     */
+    public long rationalNum(int index) {
+        return rationalPart(index, 0);
+    }
+
+    /**
+     * Reads the denominator of a component of the current entry, which must
+     * be of type {@link ExifTag#TYPE_UNSIGNED_RATIONAL} or
+     * {@link ExifTag#TYPE_RATIONAL}.
+     */
+    public long rationalDen(int index) {
+        return rationalPart(index, 4);
+    }
+
+    private long rationalPart(int index, int part) {
+        checkIndex(index);
+        int offset = mValueOffset + 8 * index + part;
+        if (mType == ExifTag.TYPE_UNSIGNED_RATIONAL) {
+            return mTiff.getInt(offset) & 0xffffffffL;
+        } else if (mType == ExifTag.TYPE_RATIONAL) {
+            return mTiff.getInt(offset);
+        }
+        throw new IllegalArgumentException("Cannot get RATIONAL value from "
+                + ExifTag.convertTypeToString(mType));
+    }
+
+    /**
+     * Copies the raw value of the current entry into buf, as many bytes as
+     * fit. Values of types wider than a byte are in the byte order of the
+     * image.
+     *
+     * @return the number of bytes copied.
+     */
+    public int bytesInto(byte[] buf) {
+        checkEntry();
+        int length = Math.min(buf.length, ExifTag.getElementSize(mType) * mCount);
+        ExifBufferParser.getBytes(mTiff, mValueOffset, buf, length);
+        return length;
+    }
+
+    private void checkEntry() {
+        if (mValueOffset < 0) {
+            throw new IllegalStateException("No current entry");
+        }
+    }
+
+    private void checkIndex(int index) {
+        checkEntry();
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + mCount);
+        }
+    }
+}
@@ -0,0 +1,674 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import com.google.cam2.exif.*;
+import com.google.cam2.exif.IfdData;
+import com.google.cam2.exif.IfdId;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class stores the EXIF header in IFDs according to the JPEG
+ * specification. It is the result produced by {@link ExifReader}.
+ *
+ * @see ExifReader
+ * @see com.google.cam2.exif.IfdData
+ */
+class ExifData {
+    private static final String TAG = "ExifData";
+    private static final short TAG_PADDING = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_PADDING);
+    private static final byte[] USER_COMMENT_ASCII = {
+            0x41, 0x53, 0x43, 0x49, 0x49, 0x00, 0x00, 0x00
+    };
+    private static final byte[] USER_COMMENT_JIS = {
+            0x4A, 0x49, 0x53, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+    private static final byte[] USER_COMMENT_UNICODE = {
+            0x55, 0x4E, 0x49, 0x43, 0x4F, 0x44, 0x45, 0x00
+    };
+
+    private final com.google.cam2.exif.IfdData[] mIfdDatas = new com.google.cam2.exif.IfdData[com.google.cam2.exif.IfdId.TYPE_IFD_COUNT];
+    private byte[] mThumbnail;
+    private final ArrayList<byte[]> mStripBytes = new ArrayList<byte[]>();
+    private ByteOrder mByteOrder;
+    private byte[] mXmpPacket;
+    // Where the XMP packet of a lazy read is, until it is first asked for.
+    private ByteBuffer mXmpSource;
+    private int mXmpOffset;
+    private int mXmpLength;
+    // XMP packet array kept by clear() for copyXmpPacket() to reuse.
+    private byte[] mSpareXmpPacket;
+    private byte[] mIccProfile;
+    // Where the chunks of the ICC profile of a lazy read are, in order, until
+    // it is first asked for.
+    private ByteBuffer mIccSource;
+    private int[] mIccOffsets;
+    private int[] mIccLengths;
+    private int mIccChunkCount;
+    // ICC profile array kept by clear() for copyIccProfile() to reuse.
+    private byte[] mSpareIccProfile;
+    // Emptied IFDs kept by clear() for getOrCreateIfdData() to hand out again.
+    private final com.google.cam2.exif.IfdData[] mSpareIfdDatas = new com.google.cam2.exif.IfdData[com.google.cam2.exif.IfdId.TYPE_IFD_COUNT];
+    // If the arrays of the current data are shared with a copy, so must not
+    // be reused.
+    private boolean mShared;
+
+    ExifData(ByteOrder order) {
+        mByteOrder = order;
+    }
+
+    /**
+     * Returns a copy of this ExifData with copies of its tags. The thumbnail,
+     * strip, XMP packet, ICC profile and tag value arrays are shared, not
+     * copied. This ExifData no longer hands out its arrays for reuse, but the
+     * tags must not be recycled by the {@link ExifReader} that read them.
+     * Values that are read lazily are decoded first.
+     *
+     * @param frozen true to freeze the copied tags.
+     * @see ExifTag#isFrozen()
+     */
+    protected ExifData copy(boolean frozen) {
+        ExifData data = new ExifData(mByteOrder);
+        for (int i = 0; i < mIfdDatas.length; i++) {
+            com.google.cam2.exif.IfdData ifd = mIfdDatas[i];
+            if (ifd == null) {
+                continue;
+            }
+            com.google.cam2.exif.IfdData copy = new com.google.cam2.exif.IfdData(i);
+            for (int j = 0, n = ifd.getTagCount(); j < n; j++) {
+                copy.setTag(new com.google.cam2.exif.ExifTag(ifd.getTagAt(j), frozen));
+            }
+            copy.setOffsetToNextIfd(ifd.getOffsetToNextIfd());
+            data.mIfdDatas[i] = copy;
+        }
+        data.mThumbnail = mThumbnail;
+        data.mStripBytes.addAll(mStripBytes);
+        data.mXmpPacket = getXmpPacket();
+        data.mIccProfile = getIccProfile();
+        data.mShared = true;
+        mShared = true;
+        return data;
+    }
+
+    /**
+     * Returns true if the arrays of the current data are shared with a copy
+     * made by {@link #copy(boolean)}, or this is such a copy.
+     */
+    protected boolean isShared() {
+        return mShared;
+    }
+
+    /**
+     * Removes all IFDs, the thumbnail, the strips, the XMP packet and the ICC
+     * profile, and sets the byte order, leaving this ExifData as if it had
+     * just been created. The emptied {@link com.google.cam2.exif.IfdData}
+     * objects are kept and reused by {@link #getOrCreateIfdData(int)}, and the
+     * XMP packet and ICC profile arrays by the copy methods unless they are
+     * shared.
+     */
+    protected void clear(ByteOrder order) {
+        for (int i = 0; i < mIfdDatas.length; i++) {
+            if (mIfdDatas[i] != null) {
+                mIfdDatas[i].clear();
+                mSpareIfdDatas[i] = mIfdDatas[i];
+                mIfdDatas[i] = null;
+            }
+        }
+        mThumbnail = null;
+        mStripBytes.clear();
+        mByteOrder = order;
+        if (mXmpPacket != null && !mShared) {
+            mSpareXmpPacket = mXmpPacket;
+        }
+        mXmpPacket = null;
+        mXmpSource = null;
+        if (mIccProfile != null && !mShared) {
+            mSpareIccProfile = mIccProfile;
+        }
+        mIccProfile = null;
+        mIccSource = null;
+        mShared = false;
+    }
+
+    /**
+     * Gets the compressed thumbnail. Returns null if there is no compressed
+     * thumbnail.
+     *
+     * @see #hasCompressedThumbnail()
+     */
+    protected byte[] getCompressedThumbnail() {
+        return mThumbnail;
+    }
+
+    /**
+     * Sets the compressed thumbnail.
+     */
+    protected void setCompressedThumbnail(byte[] thumbnail) {
+        mThumbnail = thumbnail;
+    }
+
+    /**
+     * Returns true it this header contains a compressed thumbnail.
+     */
+    protected boolean hasCompressedThumbnail() {
+        return mThumbnail != null;
+    }
+
+    /**
+     * Gets the XMP packet, copying it out of the source buffer if it was set
+     * with {@link #setXmpPacket(ByteBuffer, int, int)}. Returns null if there
+     * is no XMP packet.
+     */
+    protected byte[] getXmpPacket() {
+        if (mXmpSource != null) {
+            byte[] packet = new byte[mXmpLength];
+            ExifBufferParser.getBytes(mXmpSource, mXmpOffset, packet, mXmpLength);
+            mXmpPacket = packet;
+            mXmpSource = null;
+        }
+        return mXmpPacket;
+    }
+
+    /**
+     * Sets the XMP packet.
+     */
+    protected void setXmpPacket(byte[] packet) {
+        mXmpPacket = packet;
+        mXmpSource = null;
+    }
+
+    /**
+     * Sets the XMP packet to the given range of the source buffer without
+     * reading it. It is copied out the first time {@link #getXmpPacket()} is
+     * called, so the buffer must not be modified until then.
+     */
+    protected void setXmpPacket(ByteBuffer source, int offset, int length) {
+        mXmpPacket = null;
+        mXmpSource = source;
+        mXmpOffset = offset;
+        mXmpLength = length;
+    }
+
+    /**
+     * Sets the XMP packet to a copy of the given range of the source buffer,
+     * reusing the array of the packet removed by the last {@link #clear}
+     * if it has the same length.
+     */
+    protected void copyXmpPacket(ByteBuffer source, int offset, int length) {
+        byte[] packet = mSpareXmpPacket;
+        if (packet == null || packet.length != length) {
+            packet = new byte[length];
+        }
+        mSpareXmpPacket = null;
+        ExifBufferParser.getBytes(source, offset, packet, length);
+        setXmpPacket(packet);
+    }
+
+    /**
+     * Returns true if this header has an XMP packet.
+     */
+    protected boolean hasXmpPacket() {
+        return mXmpPacket != null || mXmpSource != null;
+    }
+
+    /**
+     * Gets the ICC profile, reassembling it from the chunks of the source
+     * buffer if it was set with
+     * {@link #setIccProfile(ByteBuffer, int, int[], int[], int)}. Returns null
+     * if there is no ICC profile.
+     */
+    protected byte[] getIccProfile() {
+        if (mIccSource != null) {
+            mIccProfile = assemble(mIccSource, 0, mIccOffsets, mIccLengths, mIccChunkCount,
+                    null);
+            mIccSource = null;
+        }
+        return mIccProfile;
+    }
+
+    /**
+     * Sets the ICC profile.
+     */
+    protected void setIccProfile(byte[] profile) {
+        mIccProfile = profile;
+        mIccSource = null;
+    }
+
+    /**
+     * Sets the ICC profile to the given chunks of the source buffer, in
+     * order, without reading them. The chunk offsets are relative to base.
+     * The profile is reassembled the first time {@link #getIccProfile()} is
+     * called, so the buffer must not be modified until then.
+     */
+    protected void setIccProfile(ByteBuffer source, int base, int[] offsets, int[] lengths,
+            int count) {
+        if (mIccOffsets == null || mIccOffsets.length < count) {
+            mIccOffsets = new int[count];
+            mIccLengths = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mIccOffsets[i] = base + offsets[i];
+            mIccLengths[i] = lengths[i];
+        }
+        mIccProfile = null;
+        mIccSource = source;
+        mIccChunkCount = count;
+    }
+
+    /**
+     * Sets the ICC profile to a copy of the given chunks of the source buffer,
+     * reusing the array of the profile removed by the last {@link #clear} if
+     * it has the same length.
+     */
+    protected void copyIccProfile(ByteBuffer source, int base, int[] offsets, int[] lengths,
+            int count) {
+        byte[] spare = mSpareIccProfile;
+        mSpareIccProfile = null;
+        setIccProfile(assemble(source, base, offsets, lengths, count, spare));
+    }
+
+    /**
+     * Returns true if this header has an ICC profile.
+     */
+    protected boolean hasIccProfile() {
+        return mIccProfile != null || mIccSource != null;
+    }
+
+    private static byte[] assemble(ByteBuffer source, int base, int[] offsets, int[] lengths,
+            int count, byte[] spare) {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            size += lengths[i];
+        }
+        byte[] profile = spare != null && spare.length == size ? spare : new byte[size];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            ExifBufferParser.getBytes(source, base + offsets[i], profile, position, lengths[i]);
+            position += lengths[i];
+        }
+        return profile;
+    }
+
+    /**
+     * Adds an uncompressed strip.
+     */
+    protected void setStripBytes(int index, byte[] strip) {
+        if (index < mStripBytes.size()) {
+            mStripBytes.set(index, strip);
+        } else {
+            for (int i = mStripBytes.size(); i < index; i++) {
+                mStripBytes.add(null);
+            }
+            mStripBytes.add(strip);
+        }
+    }
+
+    /**
+     * Gets the strip count.
+     */
+    protected int getStripCount() {
+        return mStripBytes.size();
+    }
+
+    /**
+     * Gets the strip at the specified index.
+     *
+     * @exceptions #IndexOutOfBoundException
+     */
+    protected byte[] getStrip(int index) {
+        return mStripBytes.get(index);
+    }
+
+    /**
+     * Returns true if this header contains uncompressed strip.
+     */
+    protected boolean hasUncompressedStrip() {
+        return mStripBytes.size() != 0;
+    }
+
+    /**
+     * Gets the byte order.
+     */
+    protected ByteOrder getByteOrder() {
+        return mByteOrder;
+    }
+
+    /**
+     * Returns the {@link com.google.cam2.exif.IfdData} object corresponding to a given IFD if it
+     * exists or null.
+     */
+    protected com.google.cam2.exif.IfdData getIfdData(int ifdId) {
+        if (com.google.cam2.exif.ExifTag.isValidIfd(ifdId)) {
+            return mIfdDatas[ifdId];
+        }
+        return null;
+    }
+
+    /**
+     * Adds IFD data. If IFD data of the same type already exists, it will be
+     * replaced by the new data.
+     */
+    protected void addIfdData(com.google.cam2.exif.IfdData data) {
+        mIfdDatas[data.getId()] = data;
+    }
+
+    /**
+     * Returns the {@link com.google.cam2.exif.IfdData} object corresponding to a given IFD or
+     * generates one if none exist.
+     */
+    protected com.google.cam2.exif.IfdData getOrCreateIfdData(int ifdId) {
+        com.google.cam2.exif.IfdData ifdData = mIfdDatas[ifdId];
+        if (ifdData == null) {
+            ifdData = mSpareIfdDatas[ifdId];
+            if (ifdData != null) {
+                mSpareIfdDatas[ifdId] = null;
+            } else {
+                ifdData = new com.google.cam2.exif.IfdData(ifdId);
+            }
+            mIfdDatas[ifdId] = ifdData;
+        }
+        return ifdData;
+    }
+
+    /**
+     * Returns the tag with a given TID in the given IFD if the tag exists.
+     * Otherwise returns null.
+     */
+    protected com.google.cam2.exif.ExifTag getTag(short tag, int ifd) {
+        com.google.cam2.exif.IfdData ifdData = mIfdDatas[ifd];
+        return (ifdData == null) ? null : ifdData.getTag(tag);
+    }
+
+    /**
+     * Adds the given ExifTag to its default IFD and returns an existing ExifTag
+     * with the same TID or null if none exist.
+     */
+    protected com.google.cam2.exif.ExifTag addTag(com.google.cam2.exif.ExifTag tag) {
+        if (tag != null) {
+            int ifd = tag.getIfd();
+            return addTag(tag, ifd);
+        }
+        return null;
+    }
+
+    /**
+     * Adds the given ExifTag to the given IFD and returns an existing ExifTag
+     * with the same TID or null if none exist. A frozen tag is added as an
+     * unfrozen copy, since its IFD and offset are set when it is added and
+     * written.
+     */
+    protected com.google.cam2.exif.ExifTag addTag(com.google.cam2.exif.ExifTag tag, int ifdId) {
+        if (tag != null && com.google.cam2.exif.ExifTag.isValidIfd(ifdId)) {
+            if (tag.isFrozen()) {
+                tag = new com.google.cam2.exif.ExifTag(tag, false);
+            }
+            com.google.cam2.exif.IfdData ifdData = getOrCreateIfdData(ifdId);
+            return ifdData.setTag(tag);
+        }
+        return null;
+    }
+
+    protected void clearThumbnailAndStrips() {
+        mThumbnail = null;
+        mStripBytes.clear();
+    }
+
+    /**
+     * Removes the thumbnail and its related tags. IFD1 will be removed.
+     */
+    protected void removeThumbnailData() {
+        clearThumbnailAndStrips();
+        mIfdDatas[com.google.cam2.exif.IfdId.TYPE_IFD_1] = null;
+    }
+
+    /**
+     * Removes the tag with a given TID and IFD.
+     */
+    protected void removeTag(short tagId, int ifdId) {
+        com.google.cam2.exif.IfdData ifdData = mIfdDatas[ifdId];
+        if (ifdData == null) {
+            return;
+        }
+        ifdData.removeTag(tagId);
+    }
+
+    /**
+     * Adds the selected tags of the source to this ExifData, replacing tags
+     * with the same TID in the same IFD, and returns what changed. Copies of
+     * the source tags are added, so that neither ExifData sees changes to the
+     * other. Tags that {@link ExifSerializer} generates, such as the IFD
+     * pointers, and the padding of the source are never taken. If IFD1 is
+     * selected and no tags are given, the thumbnail of the source replaces
+     * this one as well.
+     *
+     * @param ifds the IFDs to take tags from, or null for all.
+     * @param tags the defined tag constants to take, or null for all.
+     */
+    protected ExifDiff merge(ExifData source, int[] ifds, int[] tags) {
+        ExifDiff diff = new ExifDiff();
+        for (int ifdId = 0; ifdId < com.google.cam2.exif.IfdId.TYPE_IFD_COUNT; ifdId++) {
+            com.google.cam2.exif.IfdData ifd = source.mIfdDatas[ifdId];
+            if (ifd == null || !contains(ifds, ifdId)) {
+                continue;
+            }
+            for (int i = 0, n = ifd.getTagCount(); i < n; i++) {
+                com.google.cam2.exif.ExifTag tag = ifd.getTagAt(i);
+                short tagId = tag.getTagId();
+                if (ExifInterface.sBannedDefines.contains(tagId)
+                        || ifdId == com.google.cam2.exif.IfdId.TYPE_IFD_0 && tagId == TAG_PADDING
+                        || !containsTag(tags, tagId, ifdId)) {
+                    continue;
+                }
+                com.google.cam2.exif.ExifTag old = getTag(tagId, ifdId);
+                if (old == null) {
+                    diff.added(tag);
+                } else if (old.equals(tag)) {
+                    diff.unchanged();
+                    continue;
+                } else {
+                    diff.changed(old, tag);
+                }
+                addTag(new com.google.cam2.exif.ExifTag(tag, false), ifdId);
+            }
+        }
+        if (tags == null && contains(ifds, com.google.cam2.exif.IfdId.TYPE_IFD_1)
+                && source.mThumbnail != null && !Arrays.equals(source.mThumbnail, mThumbnail)) {
+            clearThumbnailAndStrips();
+            mThumbnail = source.mThumbnail;
+            diff.thumbnailChanged();
+        }
+        return diff;
+    }
+
+    private static boolean contains(int[] ifds, int ifdId) {
+        if (ifds == null) {
+            return true;
+        }
+        for (int ifd : ifds) {
+            if (ifd == ifdId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsTag(int[] tags, short tagId, int ifdId) {
+        if (tags == null) {
+            return true;
+        }
+        for (int tag : tags) {
+            if (ExifInterface.getTrueTagKey(tag) == tagId
+                    && ExifInterface.getTrueIfd(tag) == ifdId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the user comment tag into string as specified in the EXIF
+     * standard. Returns null if decoding failed.
+     */
+    protected String getUserComment() {
+        com.google.cam2.exif.IfdData ifdData = mIfdDatas[com.google.cam2.exif.IfdId.TYPE_IFD_0];
+        if (ifdData == null) {
+            return null;
+        }
+        com.google.cam2.exif.ExifTag tag = ifdData.getTag(ExifInterface.getTrueTagKey(ExifInterface.TAG_USER_COMMENT));
+        if (tag == null) {
+            return null;
+        }
+        if (tag.getComponentCount() < 8) {
+            return null;
+        }
+
+        byte[] buf = new byte[tag.getComponentCount()];
+        tag.getBytes(buf);
+
+        byte[] code = new byte[8];
+        System.arraycopy(buf, 0, code, 0, 8);
+
+        try {
+            if (Arrays.equals(code, USER_COMMENT_ASCII)) {
+                return new String(buf, 8, buf.length - 8, "US-ASCII");
+            } else if (Arrays.equals(code, USER_COMMENT_JIS)) {
+                return new String(buf, 8, buf.length - 8, "EUC-JP");
+            } else if (Arrays.equals(code, USER_COMMENT_UNICODE)) {
+                return new String(buf, 8, buf.length - 8, "UTF-16");
+            } else {
+                return null;
+            }
+        } catch (UnsupportedEncodingException e) {
+            Log.w(TAG, "Failed to decode the user comment");
+            return null;
+        }
+    }
+
+    /**
+     * Hands the value of every tag to the visitor, IFD by IFD.
+     */
+    protected void forEachTag(ExifInterface.TagVisitor visitor) {
+        for (com.google.cam2.exif.IfdData d : mIfdDatas) {
+            if (d != null) {
+                for (int i = 0, n = d.getTagCount(); i < n; i++) {
+                    d.getTagAt(i).accept(visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a list of all {@link com.google.cam2.exif.ExifTag}s in the ExifData or null if there
+     * are none.
+     */
+    protected List<com.google.cam2.exif.ExifTag> getAllTags() {
+        ArrayList<com.google.cam2.exif.ExifTag> ret = new ArrayList<com.google.cam2.exif.ExifTag>();
+        for (com.google.cam2.exif.IfdData d : mIfdDatas) {
+            if (d != null) {
+                for (int i = 0, n = d.getTagCount(); i < n; i++) {
+                    ret.add(d.getTagAt(i));
+                }
+            }
+        }
+        if (ret.size() == 0) {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a list of all {@link com.google.cam2.exif.ExifTag}s in a given IFD or null if there
+     * are none.
+     */
+    protected List<com.google.cam2.exif.ExifTag> getAllTagsForIfd(int ifd) {
+        com.google.cam2.exif.IfdData d = mIfdDatas[ifd];
+        if (d == null) {
+            return null;
+        }
+        int count = d.getTagCount();
+        ArrayList<com.google.cam2.exif.ExifTag> ret = new ArrayList<com.google.cam2.exif.ExifTag>(count);
+        for (int i = 0; i < count; i++) {
+            ret.add(d.getTagAt(i));
+        }
+        if (ret.size() == 0) {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a list of all {@link com.google.cam2.exif.ExifTag}s with a given TID or null if there
+     * are none.
+     */
+    protected List<com.google.cam2.exif.ExifTag> getAllTagsForTagId(short tag) {
+        ArrayList<com.google.cam2.exif.ExifTag> ret = new ArrayList<com.google.cam2.exif.ExifTag>();
+        for (com.google.cam2.exif.IfdData d : mIfdDatas) {
+            if (d != null) {
+                com.google.cam2.exif.ExifTag t = d.getTag(tag);
+                if (t != null) {
+                    ret.add(t);
+                }
+            }
+        }
+        if (ret.size() == 0) {
+            return null;
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (obj instanceof ExifData) {
+            ExifData data = (ExifData) obj;
+            if (data.mByteOrder != mByteOrder ||
+                    data.mStripBytes.size() != mStripBytes.size() ||
+                    !Arrays.equals(data.mThumbnail, mThumbnail) ||
+                    !Arrays.equals(data.getXmpPacket(), getXmpPacket()) ||
+                    !Arrays.equals(data.getIccProfile(), getIccProfile())) {
+                return false;
+            }
+            for (int i = 0; i < mStripBytes.size(); i++) {
+                if (!Arrays.equals(data.mStripBytes.get(i), mStripBytes.get(i))) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < IfdId.TYPE_IFD_COUNT; i++) {
+                com.google.cam2.exif.IfdData ifd1 = data.getIfdData(i);
+                com.google.cam2.exif.IfdData ifd2 = getIfdData(i);
+                if (ifd1 != ifd2 && ifd1 != null && !ifd1.equals(ifd2)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.util.TimeZone;
+
+/**
+ * Formats and parses the fixed-layout Exif date and time strings,
+ * "yyyy:MM:dd HH:mm:ss" and the GPS date stamp "yyyy:MM:dd", straight
+ * to and from byte arrays. Unlike SimpleDateFormat and Calendar this keeps
+ * no state, so it is safe to use from any number of threads at once.
+ */
+final class ExifDateTime {
+    /** Length of "yyyy:MM:dd". */
+    static final int DATE_LENGTH = 10;
+    /** Length of "yyyy:MM:dd HH:mm:ss". */
+    static final int DATE_TIME_LENGTH = 19;
+    /** Returned by the parse methods for strings that are not a valid date. */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    // Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar.
+    private static final long EPOCH_OFFSET_DAYS = 719468;
+    private static final int DAYS_PER_ERA = 146097;
+
+    private ExifDateTime() {
+    }
+
+    /**
+     * Writes the time as "yyyy:MM:dd HH:mm:ss" in the given time zone.
+     *
+     * @return false if the year does not have four digits; nothing is written
+     *         then.
+     */
+    static boolean formatDateTime(long time, TimeZone timezone, byte[] buf, int offset) {
+        long local = time + timezone.getOffset(time);
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        if (!formatDate(days, buf, offset)) {
+            return false;
+        }
+        int seconds = (int) ((local - days * MILLIS_PER_DAY) / MILLIS_PER_SECOND);
+        buf[offset + 10] = ' ';
+        writeTwoDigits(seconds / 3600, buf, offset + 11);
+        buf[offset + 13] = ':';
+        writeTwoDigits(seconds / 60 % 60, buf, offset + 14);
+        buf[offset + 16] = ':';
+        writeTwoDigits(seconds % 60, buf, offset + 17);
+        return true;
+    }
+
+    /**
+     * Writes the UTC date of the time as "yyyy:MM:dd".
+     *
+     * @return false if the year does not have four digits; nothing is written
+     *         then.
+     */
+    static boolean formatGpsDate(long time, byte[] buf, int offset) {
+        return formatDate(floorDiv(time, MILLIS_PER_DAY), buf, offset);
+    }
+
+    /**
+     * Stores the UTC time of day as the hours/1, minutes/1, seconds/1
+     * rationals of a GPS time stamp, packed as numerator, denominator pairs.
+     */
+    static void getGpsTime(long time, long[] packed) {
+        long seconds = (time - floorDiv(time, MILLIS_PER_DAY) * MILLIS_PER_DAY)
+                / MILLIS_PER_SECOND;
+        packed[0] = seconds / 3600;
+        packed[1] = 1;
+        packed[2] = seconds / 60 % 60;
+        packed[3] = 1;
+        packed[4] = seconds % 60;
+        packed[5] = 1;
+    }
+
+    /**
+     * Parses "yyyy:MM:dd HH:mm:ss" as a time in the given time zone.
+     *
+     * @return the time in milliseconds since the epoch, or {@link #INVALID}.
+     */
+    static long parseDateTime(byte[] buf, int offset, int length, TimeZone timezone) {
+        if (length < DATE_TIME_LENGTH || buf[offset + 10] != ' ' || buf[offset + 13] != ':'
+                || buf[offset + 16] != ':') {
+            return INVALID;
+        }
+        long days = parseDays(buf, offset, length);
+        int hour = parseTwoDigits(buf, offset + 11);
+        int minute = parseTwoDigits(buf, offset + 14);
+        int second = parseTwoDigits(buf, offset + 17);
+        if (days == INVALID || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59) {
+            return INVALID;
+        }
+        long local = days * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE
+                + second * MILLIS_PER_SECOND;
+        // The offset depends on the instant, which is what is being computed;
+        // take it at the local time first, then at the resulting instant.
+        long guess = local - timezone.getOffset(local);
+        return local - timezone.getOffset(guess);
+    }
+
+    /**
+     * Parses "yyyy:MM:dd" as a UTC date.
+     *
+     * @return midnight of that date in milliseconds since the epoch, or
+     *         {@link #INVALID}.
+     */
+    static long parseGpsDate(byte[] buf, int offset, int length) {
+        long days = parseDays(buf, offset, length);
+        return days == INVALID ? INVALID : days * MILLIS_PER_DAY;
+    }
+
+    private static boolean formatDate(long days, byte[] buf, int offset) {
+        // Civil date from a day count, in 400 year eras starting in March so
+        // leap days fall at the end of each year.
+        days += EPOCH_OFFSET_DAYS;
+        long era = floorDiv(days, DAYS_PER_ERA);
+        int dayOfEra = (int) (days - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return false;
+        }
+        writeTwoDigits((int) (year / 100), buf, offset);
+        writeTwoDigits((int) (year % 100), buf, offset + 2);
+        buf[offset + 4] = ':';
+        writeTwoDigits(month, buf, offset + 5);
+        buf[offset + 7] = ':';
+        writeTwoDigits(day, buf, offset + 8);
+        return true;
+    }
+
+    private static long parseDays(byte[] buf, int offset, int length) {
+        if (length < DATE_LENGTH || buf[offset + 4] != ':' || buf[offset + 7] != ':') {
+            return INVALID;
+        }
+        int century = parseTwoDigits(buf, offset);
+        int yearOfCentury = parseTwoDigits(buf, offset + 2);
+        int month = parseTwoDigits(buf, offset + 5);
+        int day = parseTwoDigits(buf, offset + 8);
+        if (century < 0 || yearOfCentury < 0 || month < 1 || month > 12 || day < 1
+                || day > daysInMonth(century * 100 + yearOfCentury, month)) {
+            return INVALID;
+        }
+        int year = century * 100 + yearOfCentury - (month <= 2 ? 1 : 0);
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * DAYS_PER_ERA + dayOfEra - EPOCH_OFFSET_DAYS;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static void writeTwoDigits(int value, byte[] buf, int offset) {
+        buf[offset] = (byte) ('0' + value / 10);
+        buf[offset + 1] = (byte) ('0' + value % 10);
+    }
+
+    // Returns -1 unless both bytes are digits.
+    private static int parseTwoDigits(byte[] buf, int offset) {
+        int high = buf[offset] - '0';
+        int low = buf[offset + 1] - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences found when the tags of one jpeg image are merged into
+ * another by {@link ExifInterface#mergeExif} or compared by
+ * {@link ExifInterface#diffExif}. Tags of the source that the target did not
+ * have are added; tags that the target had with another value are changed.
+ *
+ * @see ExifInterface#mergeExif(java.io.InputStream, java.io.InputStream,
+ *      java.io.OutputStream, int[], int[])
+ */
+public final class ExifDiff {
+    private final List<ExifTag> mAdded = new ArrayList<ExifTag>();
+    private final List<ExifTag> mChanged = new ArrayList<ExifTag>();
+    private final List<ExifTag> mReplaced = new ArrayList<ExifTag>();
+    private int mUnchangedCount;
+    private boolean mThumbnailChanged;
+
+    ExifDiff() {
+    }
+
+    void added(ExifTag tag) {
+        mAdded.add(tag);
+    }
+
+    void changed(ExifTag old, ExifTag tag) {
+        mReplaced.add(old);
+        mChanged.add(tag);
+    }
+
+    void unchanged() {
+        mUnchangedCount++;
+    }
+
+    void thumbnailChanged() {
+        mThumbnailChanged = true;
+    }
+
+    /**
+     * Returns the tags of the source that the target did not have.
+     */
+    public List<ExifTag> getAddedTags() {
+        return Collections.unmodifiableList(mAdded);
+    }
+
+    /**
+     * Returns the tags of the source that the target had with another value.
+     */
+    public List<ExifTag> getChangedTags() {
+        return Collections.unmodifiableList(mChanged);
+    }
+
+    /**
+     * Returns the tags of the target that were changed, in the same order as
+     * {@link #getChangedTags()}.
+     */
+    public List<ExifTag> getReplacedTags() {
+        return Collections.unmodifiableList(mReplaced);
+    }
+
+    /**
+     * Returns the number of selected tags that the target already had with
+     * the same value.
+     */
+    public int getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+    /**
+     * Returns true if the thumbnail of the source replaced a different one.
+     */
+    public boolean isThumbnailChanged() {
+        return mThumbnailChanged;
+    }
+
+    /**
+     * Returns true if the merge added or changed nothing.
+     */
+    public boolean isEmpty() {
+        return mAdded.isEmpty() && mChanged.isEmpty() && !mThumbnailChanged;
+    }
+
+    /**
+     * Returns a report with a line for each added ("+") and changed ("~")
+     * tag, giving its IFD, its TID and its values.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (ExifTag tag : mAdded) {
+            appendTag(sb.append("+ "), tag).append(tag.forceGetValueAsString()).append('\n');
+        }
+        for (int i = 0; i < mChanged.size(); i++) {
+            ExifTag tag = mChanged.get(i);
+            appendTag(sb.append("~ "), tag).append(mReplaced.get(i).forceGetValueAsString())
+                    .append(" -> ").append(tag.forceGetValueAsString()).append('\n');
+        }
+        if (mThumbnailChanged) {
+            sb.append("~ thumbnail\n");
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder appendTag(StringBuilder sb, ExifTag tag) {
+        return sb.append("ifd ").append(tag.getIfd()).append(" tag ")
+                .append(String.format("0x%04x", tag.getTagId() & 0xffff)).append(": ");
+    }
+}
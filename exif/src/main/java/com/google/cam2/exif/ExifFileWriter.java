@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class replaces the Exif header of a JPEG file, and its XMP packet and
+ * ICC profile if the ExifData has them, while copying it into another file. It
+ * produces the same output as passing the file through
+ * {@link ExifOutputStream}, but the segment layout is read up front into a
+ * {@link JpegSegmentIndex}, the new APP1 and APP2 segments are encoded by
+ * {@link ExifSerializer} into direct buffers and written together with the SOI
+ * marker, and the rest of the image is copied with
+ * {@link FileChannel#transferTo} so it never passes through the heap.
+ */
+class ExifFileWriter {
+    private static final String TAG = "ExifFileWriter";
+
+    private ExifFileWriter() {
+    }
+
+    /**
+     * Copies the JPEG image in the input channel to the output channel,
+     * replacing its Exif header with the given one. Both channels are used
+     * from position 0 of the input and the current position of the output.
+     *
+     * @return false if the segment layout is not one that can be spliced; in
+     *         that case nothing has been written and the caller should fall
+     *         back to {@link ExifOutputStream}.
+     * @throws IOException if the input is not a JPEG image, the Exif header is
+     *             too large, or the channels fail.
+     */
+    protected static boolean write(ExifData exifData, ExifInterface iRef, FileChannel in,
+            FileChannel out) throws IOException {
+        JpegSegmentIndex index = new JpegSegmentIndex();
+        index.scan(in);
+        if (!index.isJpeg()) {
+            throw new IOException("Not a valid jpeg image, cannot write exif");
+        }
+
+        // Like ExifOutputStream, drop the first APP1 segment ahead of the
+        // frame that is not XMP, the XMP ones if there is a packet to replace
+        // them and the ICC profile chunks if there is a profile to replace
+        // them. Everything else is kept.
+        boolean replaceXmp = exifData.hasXmpPacket();
+        boolean replaceIcc = exifData.hasIccProfile();
+        int count = index.getSegmentCount();
+        int[] dropped = new int[count];
+        int droppedCount = 0;
+        boolean app1Dropped = false;
+        int i = 0;
+        for (; i < count; i++) {
+            short marker = index.getMarker(i);
+            if (JpegHeader.isSofMarker(marker)) {
+                break;
+            }
+            if ((marker & 0xff00) != 0xff00 || marker == JpegHeader.EOI
+                    || index.getLength(i) < 2 || !index.isComplete(i)) {
+                Log.w(TAG, "Invalid segment at: " + index.getOffset(i));
+                return false;
+            }
+            if (index.isIcc(i)) {
+                if (replaceIcc) {
+                    dropped[droppedCount++] = i;
+                }
+                continue;
+            }
+            if (marker != JpegHeader.APP1) {
+                continue;
+            }
+            if (index.isXmp(i)) {
+                if (replaceXmp) {
+                    dropped[droppedCount++] = i;
+                }
+            } else if (!app1Dropped) {
+                dropped[droppedCount++] = i;
+                app1Dropped = true;
+                if (!replaceXmp && !replaceIcc) {
+                    break;
+                }
+            }
+        }
+        if (i == count) {
+            Log.w(TAG, "No frame found in jpeg image");
+            return false;
+        }
+
+        // SOI and the new APP1 segments, in one gathering write.
+        ByteBuffer app1 = new ExifSerializer(iRef).serialize(exifData, true);
+        ByteBuffer header = ByteBuffer.allocate(2);
+        header.putShort(JpegHeader.SOI);
+        header.flip();
+        ByteBuffer[] head = new ByteBuffer[4];
+        int headCount = 0;
+        head[headCount++] = header;
+        head[headCount++] = app1;
+        if (replaceXmp) {
+            head[headCount++] = ExifSerializer.serializeXmp(exifData.getXmpPacket(), true);
+        }
+        if (replaceIcc) {
+            head[headCount++] = ExifSerializer.serializeIcc(exifData.getIccProfile(), true);
+        }
+        ByteBuffer last = head[headCount - 1];
+        while (last.hasRemaining()) {
+            out.write(head, 0, headCount);
+        }
+
+        long position = 2;
+        for (int j = 0; j < droppedCount; j++) {
+            long start = index.getOffset(dropped[j]);
+            transferFully(in, position, start - position, out);
+            position = index.getSegmentEnd(dropped[j]);
+        }
+        transferFully(in, position, in.size() - position, out);
+        return true;
+    }
+
+    private static void transferFully(FileChannel in, long position, long count, FileChannel out)
+            throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(position, count, out);
+            if (n <= 0) {
+                throw new IOException("Failed to copy image data at: " + position);
+            }
+            position += n;
+            count -= n;
+        }
+    }
+}
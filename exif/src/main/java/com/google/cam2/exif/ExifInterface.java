@@ -16,10 +16,6 @@
 
 package com.google.cam2.exif;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.SparseIntArray;
-
 import com.google.cam2.exif.*;
 import com.google.cam2.exif.ExifData;
 import com.google.cam2.exif.ExifModifier;
@@ -31,7 +27,6 @@ import com.google.cam2.exif.Rational;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -43,16 +38,18 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * This class provides methods and constants for reading and writing jpeg file
@@ -140,6 +137,12 @@ public class ExifInterface {
         defineTag(com.google.cam2.exif.IfdId.TYPE_IFD_0, (short) 0x8769);
     public static final int TAG_GPS_IFD =
         defineTag(com.google.cam2.exif.IfdId.TYPE_IFD_0, (short) 0x8825);
+    /**
+     * Reserved space with no content, as written by other toolkits. See
+     * {@link #setExifPadding(int)}.
+     */
+    public static final int TAG_PADDING =
+        defineTag(IfdId.TYPE_IFD_0, (short) 0xEA1C);
     // IFD 1
     public static final int TAG_JPEG_INTERCHANGE_FORMAT =
         defineTag(com.google.cam2.exif.IfdId.TYPE_IFD_1, (short) 0x0201);
@@ -372,6 +375,37 @@ public class ExifInterface {
         return tag >>> 16;
     }
 
+    /**
+     * Receives tag values from {@link ExifInterface#forEachTag(TagVisitor)}.
+     * The values come straight from the storage of the tags: arrays passed to
+     * the visitor must not be modified or kept after the call returns.
+     */
+    public static interface TagVisitor {
+        /**
+         * Called for each component of a {@link ExifTag#TYPE_UNSIGNED_SHORT},
+         * {@link ExifTag#TYPE_UNSIGNED_LONG} or {@link ExifTag#TYPE_LONG} tag.
+         */
+        public void onInt(ExifTag tag, int index, long value);
+
+        /**
+         * Called for each component of a {@link ExifTag#TYPE_RATIONAL} or
+         * {@link ExifTag#TYPE_UNSIGNED_RATIONAL} tag.
+         */
+        public void onRational(ExifTag tag, int index, long numerator, long denominator);
+
+        /**
+         * Called once for a {@link ExifTag#TYPE_ASCII} tag with the characters
+         * of its value, up to the first NUL.
+         */
+        public void onAscii(ExifTag tag, byte[] value, int offset, int length);
+
+        /**
+         * Called once for a {@link ExifTag#TYPE_UNDEFINED} or
+         * {@link ExifTag#TYPE_UNSIGNED_BYTE} tag with all of its bytes.
+         */
+        public void onBytes(ExifTag tag, byte[] value, int offset, int length);
+    }
+
     /**
      * Constants for {@link TAG_ORIENTATION}. They can be interpreted as
      * follows:
@@ -715,12 +749,24 @@ public class ExifInterface {
         public static final short DIFFERENTIAL_CORRECTION_APPLIED = 1;
     }
 
-    private static final String NULL_ARGUMENT_STRING = "Argument is null";
+    static final String NULL_ARGUMENT_STRING = "Argument is null";
     private com.google.cam2.exif.ExifData mData = new com.google.cam2.exif.ExifData(DEFAULT_BYTE_ORDER);
+    private boolean mLazyDecoding = false;
+    private boolean mRecycling = false;
+    // Kept between reads while recycling, together with the objects it reuses.
+    private com.google.cam2.exif.ExifReader mRecyclingReader;
+    private int mExifPadding = 0;
+    // Initial size of the buffer for the segments ahead of the image data.
+    private static final int HEADER_READ_SIZE = 8192;
     public static final ByteOrder DEFAULT_BYTE_ORDER = ByteOrder.BIG_ENDIAN;
 
     public ExifInterface() {
-        mGPSDateStampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    // Used by ExifSnapshot#toExifInterface().
+    ExifInterface(com.google.cam2.exif.ExifData data, TagInfoTable tagInfo) {
+        mData = data;
+        mTagInfo = tagInfo;
     }
 
     /**
@@ -754,6 +800,31 @@ public class ExifInterface {
         mData = d;
     }
 
+    /**
+     * Reads only the given exif tags from an InputStream, clearing this
+     * ExifInterface object's existing exif tags. Only the IFDs that hold the
+     * wanted tags are parsed, the thumbnail is skipped, and reading stops as
+     * soon as every wanted tag has been found, so the stream may be left
+     * positioned anywhere inside the exif header. Use this when a few known
+     * tags are all that is needed, e.g. {@link #TAG_ORIENTATION}.
+     *
+     * @param inStream an InputStream containing a jpeg compressed image.
+     * @param wantedTags the tag constants of the tags to read.
+     * @throws IOException
+     */
+    public void readExif(InputStream inStream, int[] wantedTags) throws IOException {
+        if (inStream == null || wantedTags == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        ExifData d = null;
+        try {
+            d = new ExifReader(this).read(inStream, wantedTags);
+        } catch (ExifInvalidFormatException e) {
+            throw new IOException("Invalid exif format : " + e);
+        }
+        mData = d;
+    }
+
     /**
      * Reads the exif tags from a file, clearing this ExifInterface object's
      * existing exif tags.
@@ -777,6 +848,150 @@ public class ExifInterface {
         is.close();
     }
 
+    /**
+     * Sets whether tag values read by {@link #readExif(ByteBuffer)} and
+     * {@link #readExif(FileChannel)} are decoded lazily. When enabled, only the
+     * IFD entries are read up front and each value is decoded from the buffer
+     * the first time it is accessed, so callers that look at a few tags do not
+     * pay for the rest. Results are the same either way.
+     * <p>
+     * Tags read lazily keep a reference to the source buffer until their value
+     * is decoded, and so do the XMP packet and the ICC profile until
+     * {@link #getXmpPacket()} and {@link #getIccProfile()} are called; the
+     * buffer must not be modified in the meantime. Reads from an InputStream
+     * or a file name are unaffected.
+     *
+     * @param lazy true to decode tag values on first access.
+     */
+    public void setLazyDecoding(boolean lazy) {
+        mLazyDecoding = lazy;
+    }
+
+    /**
+     * Returns whether tag values read from a ByteBuffer or FileChannel are
+     * decoded lazily.
+     *
+     * @see #setLazyDecoding(boolean)
+     */
+    public boolean isLazyDecoding() {
+        return mLazyDecoding;
+    }
+
+    /**
+     * Sets whether {@link #readExif(ByteBuffer)}, {@link #readExif(FileChannel)}
+     * and {@link #clearExif()} recycle the objects holding the current tags
+     * instead of dropping them. When enabled, the IFDs, tags, tag value arrays
+     * and thumbnail array of one read are reused by the next, so reading file
+     * after file with the same Exif layout, such as captures from one camera,
+     * creates no garbage once the first file has been read.
+     * <p>
+     * A recycled ExifTag is overwritten in place, so tags, values and
+     * thumbnails obtained from this ExifInterface must not be used or kept
+     * after the next read or clear. If a read fails, this ExifInterface is
+     * left without tags. Reads from an InputStream or a file name are
+     * unaffected.
+     *
+     * @param recycling true to reuse objects between reads.
+     */
+    public void setRecycling(boolean recycling) {
+        mRecycling = recycling;
+        if (!recycling) {
+            mRecyclingReader = null;
+        }
+    }
+
+    /**
+     * Returns whether objects are reused between reads from a ByteBuffer or
+     * FileChannel.
+     *
+     * @see #setRecycling(boolean)
+     */
+    public boolean isRecycling() {
+        return mRecycling;
+    }
+
+    /**
+     * Sets the number of bytes of free space to reserve in the exif header of
+     * images written by this ExifInterface object. The space is written as the
+     * value of a {@link #TAG_PADDING} tag in IFD0. Later calls to
+     * {@link #rewriteExif(String, Collection)} that add tags or change their
+     * size consume the reserve and rewrite the exif header in place instead of
+     * failing, as long as the new header fits.
+     *
+     * @param bytes the size of the reserve, or 0 for none.
+     */
+    public void setExifPadding(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Negative exif padding: " + bytes);
+        }
+        mExifPadding = bytes;
+    }
+
+    /**
+     * Returns the number of bytes reserved in the exif header of images
+     * written by this ExifInterface object.
+     *
+     * @see #setExifPadding(int)
+     */
+    public int getExifPadding() {
+        return mExifPadding;
+    }
+
+    /**
+     * Reads the exif tags from a ByteBuffer, clearing this ExifInterface
+     * object's existing exif tags. IFDs, tag values and the thumbnail are read
+     * by absolute offset rather than streamed, which makes this the cheapest
+     * way to read a memory-mapped file. The buffer's position is not changed.
+     *
+     * @param jpeg a ByteBuffer containing a jpeg compressed image between its
+     *            position and its limit.
+     * @throws IOException
+     */
+    public void readExif(ByteBuffer jpeg) throws IOException {
+        if (jpeg == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        if (mRecycling) {
+            if (mRecyclingReader == null) {
+                mRecyclingReader = new com.google.cam2.exif.ExifReader(this);
+            }
+            try {
+                mData = mRecyclingReader.read(jpeg, mData);
+            } catch (ExifInvalidFormatException e) {
+                mData.clear(DEFAULT_BYTE_ORDER);
+                throw new IOException("Invalid exif format : " + e);
+            }
+            return;
+        }
+        com.google.cam2.exif.ExifData d = null;
+        try {
+            d = new com.google.cam2.exif.ExifReader(this).read(jpeg);
+        } catch (ExifInvalidFormatException e) {
+            throw new IOException("Invalid exif format : " + e);
+        }
+        mData = d;
+    }
+
+    /**
+     * Reads the exif tags from a FileChannel, clearing this ExifInterface
+     * object's existing exif tags. The header segments of the file, up to the
+     * end of the frame header, are memory-mapped read-only and parsed with
+     * {@link #readExif(ByteBuffer)}; the image data is never mapped. The
+     * channel is not closed.
+     *
+     * @param channel a FileChannel open for reading on a jpeg file.
+     * @throws IOException
+     */
+    public void readExif(FileChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        JpegSegmentIndex index = new JpegSegmentIndex();
+        index.scan(channel);
+        long size = Math.min(channel.size(), index.getHeaderEnd());
+        readExif(channel.map(MapMode.READ_ONLY, 0, size));
+    }
+
     /**
      * Sets the exif tags, clearing this ExifInterface object's existing exif
      * tags.
@@ -792,7 +1007,11 @@ public class ExifInterface {
      * Clears this ExifInterface object's existing exif tags.
      */
     public void clearExif() {
-        mData = new com.google.cam2.exif.ExifData(DEFAULT_BYTE_ORDER);
+        if (mRecycling) {
+            mData.clear(DEFAULT_BYTE_ORDER);
+        } else {
+            mData = new com.google.cam2.exif.ExifData(DEFAULT_BYTE_ORDER);
+        }
     }
 
     /**
@@ -813,24 +1032,6 @@ public class ExifInterface {
         s.flush();
     }
 
-    /**
-     * Writes the tags from this ExifInterface object into a jpeg compressed
-     * bitmap, removing prior exif tags.
-     *
-     * @param bmap a bitmap to compress and write exif into.
-     * @param exifOutStream the OutputStream to which the jpeg image with added
-     *            exif tags will be written.
-     * @throws IOException
-     */
-    public void writeExif(Bitmap bmap, OutputStream exifOutStream) throws IOException {
-        if (bmap == null || exifOutStream == null) {
-            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
-        }
-        OutputStream s = getExifWriterStream(exifOutStream);
-        bmap.compress(Bitmap.CompressFormat.JPEG, 90, s);
-        s.flush();
-    }
-
     /**
      * Writes the tags from this ExifInterface object into a jpeg stream,
      * removing prior exif tags.
@@ -876,33 +1077,6 @@ public class ExifInterface {
         s.close();
     }
 
-    /**
-     * Writes the tags from this ExifInterface object into a jpeg compressed
-     * bitmap, removing prior exif tags.
-     *
-     * @param bmap a bitmap to compress and write exif into.
-     * @param exifOutFileName a String containing the filepath to which the jpeg
-     *            image with added exif tags will be written.
-     * @throws FileNotFoundException
-     * @throws IOException
-     */
-    public void writeExif(Bitmap bmap, String exifOutFileName) throws FileNotFoundException,
-            IOException {
-        if (bmap == null || exifOutFileName == null) {
-            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
-        }
-        OutputStream s = null;
-        try {
-            s = getExifWriterStream(exifOutFileName);
-            bmap.compress(Bitmap.CompressFormat.JPEG, 90, s);
-            s.flush();
-        } catch (IOException e) {
-            closeSilently(s);
-            throw e;
-        }
-        s.close();
-    }
-
     /**
      * Writes the tags from this ExifInterface object into a jpeg stream,
      * removing prior exif tags.
@@ -932,7 +1106,8 @@ public class ExifInterface {
 
     /**
      * Writes the tags from this ExifInterface object into a jpeg file, removing
-     * prior exif tags.
+     * prior exif tags. Only the new exif header is built in memory; the image
+     * data is copied from file to file by the channels.
      *
      * @param jpegFileName a String containing the filepath for a jpeg file.
      * @param exifOutFileName a String containing the filepath to which the jpeg
@@ -945,15 +1120,24 @@ public class ExifInterface {
         if (jpegFileName == null || exifOutFileName == null) {
             throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
         }
-        InputStream is = null;
+        FileInputStream is = null;
+        FileOutputStream os = null;
         try {
             is = new FileInputStream(jpegFileName);
-            writeExif(is, exifOutFileName);
+            os = new FileOutputStream(exifOutFileName);
+            if (!ExifFileWriter.write(mData, this, is.getChannel(), os.getChannel())) {
+                // Segment layout the splice does not handle, stream it instead.
+                OutputStream s = getExifWriterStream(os);
+                doExifStreamIO(is, s);
+                s.flush();
+            }
         } catch (IOException e) {
             closeSilently(is);
+            closeSilently(os);
             throw e;
         }
         is.close();
+        os.close();
     }
 
     /**
@@ -1005,7 +1189,9 @@ public class ExifInterface {
     /**
      * Attempts to do an in-place rewrite the exif metadata in a file for the
      * given tags. If tags do not exist or do not have the same size as the
-     * existing exif tags, this method will fail.
+     * existing exif tags, the whole exif header is rebuilt in place into the
+     * space reserved by {@link #TAG_PADDING}; if the file has no reserve or the
+     * header does not fit, this method will fail.
      *
      * @param filename a String containing a filepath for a jpeg file with exif
      *            tags to rewrite.
@@ -1019,34 +1205,29 @@ public class ExifInterface {
     public boolean rewriteExif(String filename, Collection<com.google.cam2.exif.ExifTag> tags)
             throws FileNotFoundException, IOException {
         RandomAccessFile file = null;
-        InputStream is = null;
         boolean ret;
         try {
-            File temp = new File(filename);
-            is = new BufferedInputStream(new FileInputStream(temp));
-
-            // Parse beginning of APP1 in exif to find size of exif header.
-            com.google.cam2.exif.ExifParser parser = null;
-            try {
-                parser = ExifParser.parse(is, this);
-            } catch (ExifInvalidFormatException e) {
-                throw new IOException("Invalid exif format : ", e);
+            file = new RandomAccessFile(filename, "rw");
+            FileChannel channel = file.getChannel();
+
+            // Find the end of the exif header from the segment markers alone.
+            JpegSegmentIndex index = new JpegSegmentIndex();
+            index.scan(channel);
+            if (!index.isJpeg()) {
+                throw new IOException("Invalid exif format : Invalid JPEG format");
             }
-            long exifSize = parser.getOffsetToExifEndFromSOF();
-
-            // Free up resources
-            is.close();
-            is = null;
-
-            // Open file for memory mapping.
-            file = new RandomAccessFile(temp, "rw");
-            long fileLength = file.length();
-            if (fileLength < exifSize) {
+            int exif = index.getExifIndex();
+            if (exif < 0) {
+                file.close();
+                return false;
+            }
+            long exifSize = index.getSegmentEnd(exif);
+            if (channel.size() < exifSize) {
                 throw new IOException("Filesize changed during operation");
             }
 
             // Map only exif header into memory.
-            ByteBuffer buf = file.getChannel().map(MapMode.READ_WRITE, 0, exifSize);
+            ByteBuffer buf = channel.map(MapMode.READ_WRITE, 0, exifSize);
 
             // Attempt to overwrite tag values without changing lengths (avoids
             // file copy).
@@ -1054,8 +1235,6 @@ public class ExifInterface {
         } catch (IOException e) {
             closeSilently(file);
             throw e;
-        } finally {
-            closeSilently(is);
         }
         file.close();
         return ret;
@@ -1064,7 +1243,9 @@ public class ExifInterface {
     /**
      * Attempts to do an in-place rewrite the exif metadata in a ByteBuffer for
      * the given tags. If tags do not exist or do not have the same size as the
-     * existing exif tags, this method will fail.
+     * existing exif tags, the whole exif header is rebuilt in place into the
+     * space reserved by {@link #TAG_PADDING}; if there is no reserve or the
+     * header does not fit, this method will fail.
      *
      * @param buf a ByteBuffer containing a jpeg file with existing exif tags to
      *            rewrite.
@@ -1104,24 +1285,21 @@ public class ExifInterface {
             IOException {
         // Attempt in-place write
         if (!rewriteExif(filename, tags)) {
-            // Fall back to doing a copy
+            // Fall back to copying the image into a temporary file next to the
+            // original, then replacing the original with it.
             com.google.cam2.exif.ExifData tempData = mData;
             mData = new com.google.cam2.exif.ExifData(DEFAULT_BYTE_ORDER);
-            FileInputStream is = null;
-            ByteArrayOutputStream bytes = null;
+            File file = new File(filename);
+            File temp = File.createTempFile("exif", ".tmp", file.getAbsoluteFile().getParentFile());
             try {
-                is = new FileInputStream(filename);
-                bytes = new ByteArrayOutputStream();
-                doExifStreamIO(is, bytes);
-                byte[] imageBytes = bytes.toByteArray();
-                readExif(imageBytes);
+                readExif(filename);
                 setTags(tags);
-                writeExif(imageBytes, filename);
-            } catch (IOException e) {
-                closeSilently(is);
-                throw e;
+                writeExif(filename, temp.getPath());
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Failed to replace " + filename);
+                }
             } finally {
-                is.close();
+                temp.delete();
                 // Prevent clobbering of mData
                 mData = tempData;
             }
@@ -1142,6 +1320,409 @@ public class ExifInterface {
         forceRewriteExif(filename, getAllTags());
     }
 
+    /**
+     * Merges exif tags of one jpeg image into another, writing the result to
+     * an OutputStream. Neither image is held in memory: only the segments
+     * ahead of the image data are read from the source, and the target is
+     * streamed once, its header parsed on the way and its image data copied
+     * through to the output. This ExifInterface object's tags are not
+     * changed; its tag definitions and exif padding are used.
+     * <p>
+     * A tag of the source is merged if its IFD is one of the given IFDs and,
+     * when tags are given, it is one of them. It replaces a tag of the target
+     * with the same TID in the same IFD. Tags that the writer generates, such
+     * as the IFD pointers, are not merged. If IFD1 is merged without a list
+     * of tags, the source thumbnail replaces the target's. The other
+     * segments of the target, including its XMP packet and ICC profile, are
+     * kept as they are.
+     *
+     * @param source an InputStream containing the jpeg to take tags from.
+     * @param target an InputStream containing the jpeg to merge them into.
+     * @param out an OutputStream to which the target with the merged tags is
+     *            written.
+     * @param ifds the IFDs to merge, e.g. {@link IfdId#TYPE_IFD_GPS}, or null
+     *            for all.
+     * @param tags the tag constants to merge, e.g. {@link #TAG_MAKE}, or null
+     *            for all in the given IFDs.
+     * @return the differences between the tags of the target and the output.
+     * @throws IOException
+     */
+    public ExifDiff mergeExif(InputStream source, InputStream target, OutputStream out,
+            int[] ifds, int[] tags) throws IOException {
+        if (source == null || target == null || out == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        com.google.cam2.exif.ExifData sourceData = readHeader(readHeaderSegments(source));
+        ByteBuffer head = readHeaderSegments(target);
+        com.google.cam2.exif.ExifData targetData = readHeader(head);
+        ExifDiff diff = merge(sourceData, targetData, ifds, tags);
+        OutputStream s = getMergeStream(out, targetData);
+        s.write(head.array(), 0, head.limit());
+        doExifStreamIO(target, s);
+        s.flush();
+        return diff;
+    }
+
+    /**
+     * Merges exif tags of one jpeg file into another, writing the result to a
+     * third file, like
+     * {@link #mergeExif(InputStream, InputStream, OutputStream, int[], int[])}.
+     * The image data of the target is copied from file to file by the
+     * channels.
+     *
+     * @param sourceFileName a String containing the filepath of the jpeg to
+     *            take tags from.
+     * @param targetFileName a String containing the filepath of the jpeg to
+     *            merge them into.
+     * @param outFileName a String containing the filepath to which the target
+     *            with the merged tags is written.
+     * @param ifds the IFDs to merge, or null for all.
+     * @param tags the tag constants to merge, or null for all in the given
+     *            IFDs.
+     * @return the differences between the tags of the target and the output.
+     * @throws FileNotFoundException
+     * @throws IOException
+     */
+    public ExifDiff mergeExif(String sourceFileName, String targetFileName, String outFileName,
+            int[] ifds, int[] tags) throws FileNotFoundException, IOException {
+        if (sourceFileName == null || targetFileName == null || outFileName == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        com.google.cam2.exif.ExifData sourceData;
+        FileInputStream sourceStream = new FileInputStream(sourceFileName);
+        try {
+            sourceData = readHeader(readHeaderSegments(sourceStream.getChannel()));
+        } finally {
+            closeSilently(sourceStream);
+        }
+        FileInputStream is = null;
+        FileOutputStream os = null;
+        ExifDiff diff;
+        try {
+            is = new FileInputStream(targetFileName);
+            com.google.cam2.exif.ExifData targetData = readHeader(
+                    readHeaderSegments(is.getChannel()));
+            diff = merge(sourceData, targetData, ifds, tags);
+            os = new FileOutputStream(outFileName);
+            if (!ExifFileWriter.write(targetData, this, is.getChannel(), os.getChannel())) {
+                // Segment layout the splice does not handle, stream it instead.
+                OutputStream s = getMergeStream(os, targetData);
+                doExifStreamIO(is, s);
+                s.flush();
+            }
+        } catch (IOException e) {
+            closeSilently(is);
+            closeSilently(os);
+            throw e;
+        }
+        is.close();
+        os.close();
+        return diff;
+    }
+
+    /**
+     * Returns the differences that
+     * {@link #mergeExif(InputStream, InputStream, OutputStream, int[], int[])}
+     * would make to the tags of the target, reading only the segments of the
+     * two images ahead of their image data.
+     *
+     * @param source an InputStream containing the jpeg to take tags from.
+     * @param target an InputStream containing the jpeg to compare them with.
+     * @param ifds the IFDs to compare, or null for all.
+     * @param tags the tag constants to compare, or null for all in the given
+     *            IFDs.
+     * @return the tags of the source that the target does not have or has
+     *         with another value.
+     * @throws IOException
+     */
+    public ExifDiff diffExif(InputStream source, InputStream target, int[] ifds, int[] tags)
+            throws IOException {
+        if (source == null || target == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        com.google.cam2.exif.ExifData sourceData = readHeader(readHeaderSegments(source));
+        return readHeader(readHeaderSegments(target)).merge(sourceData, ifds, tags);
+    }
+
+    private com.google.cam2.exif.ExifData readHeader(ByteBuffer head) throws IOException {
+        try {
+            return new com.google.cam2.exif.ExifReader(this).read(head);
+        } catch (ExifInvalidFormatException e) {
+            throw new IOException("Invalid exif format : " + e);
+        }
+    }
+
+    // Without a packet or profile to replace them, the writers leave the XMP
+    // and ICC segments of the target as they are.
+    private static ExifDiff merge(com.google.cam2.exif.ExifData source,
+            com.google.cam2.exif.ExifData target, int[] ifds, int[] tags) {
+        ExifDiff diff = target.merge(source, ifds, tags);
+        target.setXmpPacket(null);
+        target.setIccProfile(null);
+        return diff;
+    }
+
+    // Writes the given data instead of this object's.
+    private OutputStream getMergeStream(OutputStream out, com.google.cam2.exif.ExifData data) {
+        ExifOutputStream eos = new ExifOutputStream(out, this);
+        eos.setExifData(data);
+        return eos;
+    }
+
+    /**
+     * Reads the exif tags from a file on a thread of the given executor,
+     * clearing this ExifInterface object's existing exif tags. Only the
+     * segments ahead of the image data are read from the file, with
+     * positional reads on its channel, and are then parsed like
+     * {@link #readExif(ByteBuffer)}.
+     * <p>
+     * This only moves the work off the calling thread: the read is blocking
+     * I/O, and it holds the executor's thread until it is done, so the
+     * executor's thread count bounds the reads in flight.
+     * AsynchronousFileChannel, which would not hold a thread, is only
+     * available on Android from API 26, above the minSdkVersion this library
+     * supports.
+     * <p>
+     * This ExifInterface object should not be used until the returned Future
+     * is done. To have several reads in flight, use one ExifInterface object
+     * for each.
+     *
+     * @param inFileName a string representing the filepath to jpeg file.
+     * @param executor the executor to run the read on.
+     * @return a Future that is done once the tags are read. Its get() method
+     *         throws an ExecutionException wrapping the IOException if the
+     *         read failed.
+     */
+    public Future<Void> submitReadExif(final String inFileName, Executor executor) {
+        if (inFileName == null || executor == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        return execute(executor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                RandomAccessFile file = new RandomAccessFile(inFileName, "r");
+                try {
+                    readExif(readHeaderSegments(file.getChannel()));
+                } finally {
+                    closeSilently(file);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #writeExif(byte[], String)} on a thread of the given
+     * executor, which it holds for the whole blocking write, like
+     * {@link #submitReadExif(String, Executor)}. This ExifInterface object
+     * should not be used until the returned Future is done, and the jpeg
+     * array should not be modified.
+     *
+     * @param jpeg a byte array containing a jpeg compressed image.
+     * @param exifOutFileName a String containing the filepath to which the jpeg
+     *            image with added exif tags will be written.
+     * @param executor the executor to run the write on.
+     * @return a Future that is done once the file is written. Its get() method
+     *         throws an ExecutionException wrapping the IOException if the
+     *         write failed.
+     */
+    public Future<Void> submitWriteExif(final byte[] jpeg, final String exifOutFileName,
+            Executor executor) {
+        if (jpeg == null || exifOutFileName == null || executor == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        return execute(executor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeExif(jpeg, exifOutFileName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #writeExif(String, String)} on a thread of the given
+     * executor, which it holds for the whole blocking write, like
+     * {@link #submitReadExif(String, Executor)}. This ExifInterface object
+     * should not be used until the returned Future is done.
+     *
+     * @param jpegFileName a String containing the filepath for a jpeg file.
+     * @param exifOutFileName a String containing the filepath to which the jpeg
+     *            image with added exif tags will be written.
+     * @param executor the executor to run the write on.
+     * @return a Future that is done once the file is written. Its get() method
+     *         throws an ExecutionException wrapping the IOException if the
+     *         write failed.
+     */
+    public Future<Void> submitWriteExif(final String jpegFileName, final String exifOutFileName,
+            Executor executor) {
+        if (jpegFileName == null || exifOutFileName == null || executor == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        return execute(executor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeExif(jpegFileName, exifOutFileName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #rewriteExif(String, Collection)} on a thread of the given
+     * executor, which it holds for the whole blocking rewrite, like
+     * {@link #submitReadExif(String, Executor)}. The tags are copied out of
+     * the collection before this method returns.
+     *
+     * @param filename a String containing a filepath for a jpeg file with exif
+     *            tags to rewrite.
+     * @param tags tags that will be written into the jpeg file over existing
+     *            tags if possible.
+     * @param executor the executor to run the rewrite on.
+     * @return a Future holding true if the tags were rewritten, or false if
+     *         the file is unchanged. Its get() method throws an
+     *         ExecutionException wrapping the IOException if the rewrite
+     *         failed.
+     */
+    public Future<Boolean> submitRewriteExif(final String filename,
+            Collection<com.google.cam2.exif.ExifTag> tags, Executor executor) {
+        if (filename == null || tags == null || executor == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        final List<com.google.cam2.exif.ExifTag> copy =
+                new ArrayList<com.google.cam2.exif.ExifTag>(tags);
+        return execute(executor, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws IOException {
+                return rewriteExif(filename, copy);
+            }
+        });
+    }
+
+    private static <T> Future<T> execute(Executor executor, Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<T>(callable);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Reads the segments of the jpeg file ahead of its image data, up to and
+     * including the frame header, into a buffer. The whole file is read if it
+     * is a jpeg image without a frame header.
+     */
+    private static ByteBuffer readHeaderSegments(FileChannel channel) throws IOException {
+        JpegSegmentIndex index = new JpegSegmentIndex();
+        index.scan(channel);
+        long size = channel.size();
+        int frame = index.getFrameIndex();
+        if (!index.isJpeg()) {
+            // Enough for the parser to reject it.
+            size = Math.min(size, 2);
+        } else if (frame >= 0) {
+            size = Math.min(size, index.getSegmentEnd(frame));
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid exif format : jpeg file is too large");
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0) {
+                break;
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Reads a jpeg stream up to and including its frame header, the part of
+     * the image that {@link #readExif(ByteBuffer)} looks at, into a buffer.
+     * The stream is left at the image data.
+     */
+    private static ByteBuffer readHeaderSegments(InputStream in) throws IOException {
+        byte[] buf = new byte[HEADER_READ_SIZE];
+        int length = readFully(in, buf, 0, 2);
+        if (length < 2 || (short) ((buf[0] & 0xff) << 8 | buf[1] & 0xff) != JpegHeader.SOI) {
+            return ByteBuffer.wrap(buf, 0, length);
+        }
+        while (true) {
+            if (buf.length < length + 4) {
+                buf = Arrays.copyOf(buf, 2 * buf.length);
+            }
+            int read = readFully(in, buf, length, 2);
+            length += read;
+            if (read < 2) {
+                break;
+            }
+            short marker = (short) ((buf[length - 2] & 0xff) << 8 | buf[length - 1] & 0xff);
+            // Fill bytes ahead of the marker are kept, one at a time.
+            while (marker == JpegHeader.FILL) {
+                if (buf.length < length + 3) {
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+                if (readFully(in, buf, length, 1) < 1) {
+                    break;
+                }
+                length++;
+                marker = (short) (0xff00 | buf[length - 1] & 0xff);
+            }
+            if ((marker & 0xff00) != 0xff00 || marker == JpegHeader.EOI
+                    || marker == JpegHeader.FILL) {
+                break;
+            }
+            read = readFully(in, buf, length, 2);
+            int size = ((buf[length] & 0xff) << 8 | buf[length + 1] & 0xff) - 2;
+            length += read;
+            if (read < 2 || size < 0) {
+                break;
+            }
+            if (buf.length < length + size) {
+                buf = Arrays.copyOf(buf, Math.max(2 * buf.length, length + size));
+            }
+            read = readFully(in, buf, length, size);
+            length += read;
+            if (read < size || JpegHeader.isSofMarker(marker)) {
+                break;
+            }
+        }
+        return ByteBuffer.wrap(buf, 0, length);
+    }
+
+    private static int readFully(InputStream in, byte[] buf, int offset, int length)
+            throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buf, offset + read, length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    /**
+     * Returns an immutable copy of the tags, thumbnail, XMP packet and ICC
+     * profile in this ExifInterface object, which can be shared between
+     * threads without locking. Only the tags are copied; their value arrays
+     * and the other data are shared with this ExifInterface, which replaces
+     * rather than modifies them when tags are set or exif is read again, so
+     * arrays got from the tags of this ExifInterface must not be modified
+     * once a snapshot is taken. Values not yet decoded with lazy decoding are
+     * decoded first.
+     *
+     * @return an {@link ExifSnapshot} of the current exif data.
+     * @see ExifSnapshot#toExifInterface()
+     */
+    public ExifSnapshot snapshot() {
+        if (mRecycling) {
+            // The reader recycles the value arrays of the tags it read last.
+            mRecyclingReader = null;
+        }
+        // Tag definitions are copied by the next change instead.
+        return new ExifSnapshot(mData.copy(true), mTagInfo.freeze());
+    }
+
     /**
      * Get the exif tags in this ExifInterface object or null if none exist.
      *
@@ -1177,6 +1758,20 @@ public class ExifInterface {
         return mData.getAllTagsForIfd(ifdId);
     }
 
+    /**
+     * Hands the value of every tag in this ExifInterface object to the
+     * visitor, IFD by IFD, without building a list or boxing the values. Tags
+     * without a value are skipped.
+     *
+     * @param visitor the TagVisitor to receive the values.
+     */
+    public void forEachTag(TagVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException(NULL_ARGUMENT_STRING);
+        }
+        mData.forEachTag(visitor);
+    }
+
     /**
      * Gets an ExifTag for an IFD other than the tag's default.
      *
@@ -1504,21 +2099,27 @@ public class ExifInterface {
      * @see #buildTag
      */
     public com.google.cam2.exif.ExifTag buildTag(int tagId, int ifdId, Object val) {
-        int info = getTagInfo().get(tagId);
-        if (info == 0 || val == null) {
+        if (val == null) {
             return null;
         }
-        short type = getTypeFromInfo(info);
-        int definedCount = getComponentCountFromInfo(info);
-        boolean hasDefinedCount = (definedCount != com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        if (!ExifInterface.isIfdAllowed(info, ifdId)) {
+        com.google.cam2.exif.ExifTag t = buildEmptyTag(tagId, ifdId);
+        if (t == null || !t.setValue(val)) {
             return null;
         }
-        com.google.cam2.exif.ExifTag t = new com.google.cam2.exif.ExifTag(getTrueTagKey(tagId), type, definedCount, ifdId, hasDefinedCount);
-        if (!t.setValue(val)) {
+        return t;
+    }
+
+    // Creates a tag with no value, or returns null if the tag is not defined
+    // for the given IFD.
+    private com.google.cam2.exif.ExifTag buildEmptyTag(int tagId, int ifdId) {
+        int info = getTagInfo().get(tagId);
+        if (info == 0 || !ExifInterface.isIfdAllowed(info, ifdId)) {
             return null;
         }
-        return t;
+        short type = getTypeFromInfo(info);
+        int definedCount = getComponentCountFromInfo(info);
+        boolean hasDefinedCount = (definedCount != com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
+        return new com.google.cam2.exif.ExifTag(getTrueTagKey(tagId), type, definedCount, ifdId, hasDefinedCount);
     }
 
     /**
@@ -1650,7 +2251,7 @@ public class ExifInterface {
                 return TAG_NULL;
             }
             int[] otherDefs = getTagDefinitionsForTagId(tagId);
-            SparseIntArray infos = getTagInfo();
+            TagInfoTable infos = getTagInfo();
             // Make sure defaultIfd is in allowedIfds
             boolean defaultCheck = false;
             for (int i : allowedIfds) {
@@ -1676,7 +2277,7 @@ public class ExifInterface {
                     }
                 }
             }
-            getTagInfo().put(tagDef, ifdFlags << 24 | (tagType << 16) | defaultComponentCount);
+            getWritableTagInfo().put(tagDef, ifdFlags << 24 | (tagType << 16) | defaultComponentCount);
             return tagDef;
         }
         return TAG_NULL;
@@ -1690,7 +2291,7 @@ public class ExifInterface {
         int[] ifds = com.google.cam2.exif.IfdData.getIfds();
         int[] defs = new int[ifds.length];
         int counter = 0;
-        SparseIntArray infos = getTagInfo();
+        TagInfoTable infos = getTagInfo();
         for (int i : ifds) {
             int def = defineTag(i, tagId);
             if (infos.get(def) != DEFINITION_NULL) {
@@ -1712,31 +2313,21 @@ public class ExifInterface {
     }
 
     protected int getTagDefinitionForTag(short tagId, short type, int count, int ifd) {
-        int[] defs = getTagDefinitionsForTagId(tagId);
-        if (defs == null) {
-            return TAG_NULL;
-        }
-        SparseIntArray infos = getTagInfo();
-        int ret = TAG_NULL;
-        for (int i : defs) {
-            int info = infos.get(i);
+        TagInfoTable infos = getTagInfo();
+        for (int i : com.google.cam2.exif.IfdData.getIfds()) {
+            int def = defineTag(i, tagId);
+            int info = infos.get(def);
+            if (info == DEFINITION_NULL) {
+                continue;
+            }
             short def_type = getTypeFromInfo(info);
             int def_count = getComponentCountFromInfo(info);
-            int[] def_ifds = getAllowedIfdsFromInfo(info);
-            boolean valid_ifd = false;
-            for (int j : def_ifds) {
-                if (j == ifd) {
-                    valid_ifd = true;
-                    break;
-                }
-            }
-            if (valid_ifd && type == def_type
+            if (isIfdAllowed(info, ifd) && type == def_type
                     && (count == def_count || def_count == com.google.cam2.exif.ExifTag.SIZE_UNDEFINED)) {
-                ret = i;
-                break;
+                return def;
             }
         }
-        return ret;
+        return TAG_NULL;
     }
 
     /**
@@ -1745,29 +2336,14 @@ public class ExifInterface {
      * @param tagId a defined tag constant, e.g. {@link #TAG_IMAGE_WIDTH}.
      */
     public void removeTagDefinition(int tagId) {
-        getTagInfo().delete(tagId);
+        getWritableTagInfo().delete(tagId);
     }
 
     /**
      * Resets tag definitions to the default ones.
      */
     public void resetTagDefinitions() {
-        mTagInfo = null;
-    }
-
-    /**
-     * Returns the thumbnail from IFD1 as a bitmap, or null if none exists.
-     *
-     * @return the thumbnail as a bitmap.
-     */
-    public Bitmap getThumbnailBitmap() {
-        if (mData.hasCompressedThumbnail()) {
-            byte[] thumb = mData.getCompressedThumbnail();
-            return BitmapFactory.decodeByteArray(thumb, 0, thumb.length);
-        } else if (mData.hasUncompressedStrip()) {
-            // TODO: implement uncompressed
-        }
-        return null;
+        mTagInfo = DEFAULT_TAG_INFO;
     }
 
     /**
@@ -1830,25 +2406,88 @@ public class ExifInterface {
     }
 
     /**
-     * Sets the thumbnail to be a jpeg compressed bitmap. Clears any prior
-     * thumbnail.
+     * Clears the compressed thumbnail if it exists.
+     */
+    public void removeCompressedThumbnail() {
+        mData.setCompressedThumbnail(null);
+    }
+
+    /**
+     * Returns the XMP packet read along with the exif tags, or set by
+     * {@link #setXmpPacket(byte[])}, or null if there is none. The packet is
+     * the raw XML of the standard XMP APP1 segment, without its namespace
+     * header; extended XMP segments are not read.
+     * <p>
+     * When lazy decoding is enabled, the packet of an image read from a
+     * ByteBuffer or FileChannel is only copied out of the buffer by the first
+     * call to this method.
      *
-     * @param thumb a bitmap to compress to a jpeg thumbnail.
-     * @return true if the thumbnail was set.
+     * @return the XMP packet as a byte array.
+     * @see #setLazyDecoding(boolean)
      */
-    public boolean setCompressedThumbnail(Bitmap thumb) {
-        ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
-        if (!thumb.compress(Bitmap.CompressFormat.JPEG, 90, thumbnail)) {
-            return false;
-        }
-        return setCompressedThumbnail(thumbnail.toByteArray());
+    public byte[] getXmpPacket() {
+        return mData.getXmpPacket();
     }
 
     /**
-     * Clears the compressed thumbnail if it exists.
+     * Check if an XMP packet exists.
+     *
+     * @return true if there is an XMP packet.
      */
-    public void removeCompressedThumbnail() {
-        mData.setCompressedThumbnail(null);
+    public boolean hasXmpPacket() {
+        return mData.hasXmpPacket();
+    }
+
+    /**
+     * Sets the XMP packet to write into jpeg images along with the exif tags.
+     * The XMP APP1 segments of the images are replaced by one holding this
+     * packet, in the same pass that replaces the exif header. If there is no
+     * packet, the XMP segments of the images are copied as they are.
+     *
+     * @param packet a byte array containing the XMP packet, or null for none.
+     */
+    public void setXmpPacket(byte[] packet) {
+        mData.setXmpPacket(packet);
+    }
+
+    /**
+     * Returns the ICC profile read along with the exif tags, or set by
+     * {@link #setIccProfile(byte[])}, or null if there is none. The profile is
+     * reassembled from the ICC_PROFILE APP2 segments of the image in the order
+     * of their chunk numbers; it is null if any chunk is missing.
+     * <p>
+     * When lazy decoding is enabled, the profile of an image read from a
+     * ByteBuffer or FileChannel is only copied out of the buffer by the first
+     * call to this method.
+     *
+     * @return the ICC profile as a byte array.
+     * @see #setLazyDecoding(boolean)
+     */
+    public byte[] getIccProfile() {
+        return mData.getIccProfile();
+    }
+
+    /**
+     * Check if an ICC profile exists.
+     *
+     * @return true if there is an ICC profile.
+     */
+    public boolean hasIccProfile() {
+        return mData.hasIccProfile();
+    }
+
+    /**
+     * Sets the ICC profile to write into jpeg images along with the exif tags.
+     * The ICC_PROFILE APP2 segments of the images are replaced by ones holding
+     * this profile, split into chunks as needed, in the same pass that
+     * replaces the exif header. If there is no profile, the APP2 segments of
+     * the images are copied as they are.
+     *
+     * @param profile a byte array containing the ICC profile, or null for
+     *            none.
+     */
+    public void setIccProfile(byte[] profile) {
+        mData.setIccProfile(profile);
     }
 
     // Convenience methods:
@@ -1910,8 +2549,8 @@ public class ExifInterface {
      * @param coordinate an array of 3 Rationals representing the degrees,
      *            minutes, and seconds of the GPS location as defined in the
      *            exif specification.
-     * @param reference a GPS reference reperesented by a String containing "N",
-     *            "S", "E", or "W".
+     * @param reference a GPS reference reperesented by a String starting with
+     *            "N", "S", "E", or "W".
      * @return the GPS coordinate represented as degrees + minutes/60 +
      *         seconds/3600
      */
@@ -1921,7 +2560,9 @@ public class ExifInterface {
             double minutes = coordinate[1].toDouble();
             double seconds = coordinate[2].toDouble();
             double result = degrees + minutes / 60.0 + seconds / 3600.0;
-            if ((reference.equals("S") || reference.equals("W"))) {
+            // The value of a reference tag read as a String keeps its NUL.
+            if (reference.length() > 0
+                    && (reference.charAt(0) == 'S' || reference.charAt(0) == 'W')) {
                 return -result;
             }
             return result;
@@ -1939,26 +2580,58 @@ public class ExifInterface {
      * @see #convertLatOrLongToDouble
      */
     public double[] getLatLongAsDoubles() {
-        com.google.cam2.exif.Rational[] latitude = getTagRationalValues(TAG_GPS_LATITUDE);
-        String latitudeRef = getTagStringValue(TAG_GPS_LATITUDE_REF);
-        com.google.cam2.exif.Rational[] longitude = getTagRationalValues(TAG_GPS_LONGITUDE);
-        String longitudeRef = getTagStringValue(TAG_GPS_LONGITUDE_REF);
-        if (latitude == null || longitude == null || latitudeRef == null || longitudeRef == null
-                || latitude.length < 3 || longitude.length < 3) {
+        double[] latLon = new double[2];
+        if (!getLatLongAsDoubles(latLon)) {
             return null;
         }
-        double[] latLon = new double[2];
-        latLon[0] = convertLatOrLongToDouble(latitude, latitudeRef);
-        latLon[1] = convertLatOrLongToDouble(longitude, longitudeRef);
         return latLon;
     }
 
-    private static final String GPS_DATE_FORMAT_STR = "yyyy:MM:dd";
-    private static final String DATETIME_FORMAT_STR = "yyyy:MM:dd kk:mm:ss";
-    private final DateFormat mDateTimeStampFormat = new SimpleDateFormat(DATETIME_FORMAT_STR);
-    private final DateFormat mGPSDateStampFormat = new SimpleDateFormat(GPS_DATE_FORMAT_STR);
-    private final Calendar mGPSTimeStampCalendar = Calendar
-            .getInstance(TimeZone.getTimeZone("UTC"));
+    /**
+     * Gets the GPS latitude and longitude from this ExifInterface object's
+     * tags into the given array without allocating.
+     *
+     * @param latLon an array of at least 2 doubles to receive the latitude and
+     *            longitude respectively.
+     * @return true if the necessary tags exist, false otherwise, in which case
+     *         latLon is left untouched.
+     * @see #getLatLongAsDoubles()
+     */
+    public boolean getLatLongAsDoubles(double[] latLon) {
+        ExifTag latitude = getTag(TAG_GPS_LATITUDE);
+        ExifTag latitudeRef = getTag(TAG_GPS_LATITUDE_REF);
+        ExifTag longitude = getTag(TAG_GPS_LONGITUDE);
+        ExifTag longitudeRef = getTag(TAG_GPS_LONGITUDE_REF);
+        if (!isLatOrLong(latitude) || !isLatOrLong(longitude) || latitudeRef == null
+                || longitudeRef == null || latitudeRef.getValueAsBytes() == null
+                || longitudeRef.getValueAsBytes() == null) {
+            return false;
+        }
+        latLon[0] = convertLatOrLongToDouble(latitude, latitudeRef.getValueAsBytes());
+        latLon[1] = convertLatOrLongToDouble(longitude, longitudeRef.getValueAsBytes());
+        return true;
+    }
+
+    private static boolean isLatOrLong(ExifTag coordinate) {
+        if (coordinate == null || !coordinate.hasValue() || coordinate.getComponentCount() < 3) {
+            return false;
+        }
+        short type = coordinate.getDataType();
+        return type == ExifTag.TYPE_UNSIGNED_RATIONAL || type == ExifTag.TYPE_RATIONAL;
+    }
+
+    // Reads the rationals in place; the reference is the ASCII value of the
+    // tag, which carries a trailing NUL.
+    private static double convertLatOrLongToDouble(ExifTag coordinate, byte[] reference) {
+        double degrees = coordinate.getRationalAsDouble(0);
+        double minutes = coordinate.getRationalAsDouble(1);
+        double seconds = coordinate.getRationalAsDouble(2);
+        double result = degrees + minutes / 60.0 + seconds / 3600.0;
+        if (reference.length > 0 && (reference[0] == 'S' || reference[0] == 'W')) {
+            return -result;
+        }
+        return result;
+    }
 
     /**
      * Creates, formats, and sets the DateTimeStamp tag for one of:
@@ -1973,9 +2646,8 @@ public class ExifInterface {
     public boolean addDateTimeStampTag(int tagId, long timestamp, TimeZone timezone) {
         if (tagId == TAG_DATE_TIME || tagId == TAG_DATE_TIME_DIGITIZED
                 || tagId == TAG_DATE_TIME_ORIGINAL) {
-            mDateTimeStampFormat.setTimeZone(timezone);
-            com.google.cam2.exif.ExifTag t = buildTag(tagId, mDateTimeStampFormat.format(timestamp));
-            if (t == null) {
+            com.google.cam2.exif.ExifTag t = buildEmptyTag(tagId, getDefinedTagDefaultIfd(tagId));
+            if (t == null || !t.setTimeValue(timestamp, timezone)) {
                 return false;
             }
             setTag(t);
@@ -1985,6 +2657,25 @@ public class ExifInterface {
         return true;
     }
 
+    /**
+     * Parses one of the DateTimeStamp tags: {@link #TAG_DATE_TIME},
+     * {@link #TAG_DATE_TIME_DIGITIZED}, {@link #TAG_DATE_TIME_ORIGINAL}.
+     *
+     * @param tagId one of the DateTimeStamp tags.
+     * @param timezone the time zone the time stamp was recorded in.
+     * @return the time stamp in milliseconds since the epoch, or -1 if the tag
+     *         does not exist or does not hold a valid date and time.
+     */
+    public long getDateTimeStamp(int tagId, TimeZone timezone) {
+        com.google.cam2.exif.ExifTag t = getTag(tagId);
+        byte[] value = t == null ? null : t.getValueAsBytes();
+        if (value == null) {
+            return -1;
+        }
+        long time = ExifDateTime.parseDateTime(value, 0, value.length, timezone);
+        return time == ExifDateTime.INVALID ? -1 : time;
+    }
+
     /**
      * Creates and sets all to the GPS tags for a give latitude and longitude.
      *
@@ -2018,24 +2709,48 @@ public class ExifInterface {
      * @return true if success, false if could not be created or set.
      */
     public boolean addGpsDateTimeStampTag(long timestamp) {
-        com.google.cam2.exif.ExifTag t = buildTag(TAG_GPS_DATE_STAMP, mGPSDateStampFormat.format(timestamp));
-        if (t == null) {
+        byte[] date = new byte[ExifDateTime.DATE_LENGTH + 1];
+        com.google.cam2.exif.ExifTag t = buildEmptyTag(TAG_GPS_DATE_STAMP, IfdId.TYPE_IFD_GPS);
+        if (t == null || !ExifDateTime.formatGpsDate(timestamp, date, 0)
+                || !t.setStringValue(date)) {
             return false;
         }
         setTag(t);
-        mGPSTimeStampCalendar.setTimeInMillis(timestamp);
-        t = buildTag(TAG_GPS_TIME_STAMP, new com.google.cam2.exif.Rational[] {
-                new com.google.cam2.exif.Rational(mGPSTimeStampCalendar.get(Calendar.HOUR_OF_DAY), 1),
-                new com.google.cam2.exif.Rational(mGPSTimeStampCalendar.get(Calendar.MINUTE), 1),
-                new com.google.cam2.exif.Rational(mGPSTimeStampCalendar.get(Calendar.SECOND), 1)
-        });
-        if (t == null) {
+        long[] time = new long[6];
+        ExifDateTime.getGpsTime(timestamp, time);
+        t = buildEmptyTag(TAG_GPS_TIME_STAMP, IfdId.TYPE_IFD_GPS);
+        if (t == null || !t.setRationalValues(time)) {
             return false;
         }
         setTag(t);
         return true;
     }
 
+    /**
+     * Parses the GPS date and time stamp tags, {@link #TAG_GPS_DATE_STAMP} and
+     * {@link #TAG_GPS_TIME_STAMP}, which are in UTC.
+     *
+     * @return the time stamp in milliseconds since the epoch, or -1 if either
+     *         tag does not exist or is not valid.
+     */
+    public long getGpsDateTimeStamp() {
+        com.google.cam2.exif.ExifTag dateTag = getTag(TAG_GPS_DATE_STAMP);
+        com.google.cam2.exif.ExifTag timeTag = getTag(TAG_GPS_TIME_STAMP);
+        byte[] date = dateTag == null ? null : dateTag.getValueAsBytes();
+        if (date == null || timeTag == null
+                || timeTag.getDataType() != com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL
+                || timeTag.getComponentCount() != 3) {
+            return -1;
+        }
+        long time = ExifDateTime.parseGpsDate(date, 0, date.length);
+        double seconds = timeTag.getRationalAsDouble(0) * 3600 + timeTag.getRationalAsDouble(1) * 60
+                + timeTag.getRationalAsDouble(2);
+        if (time == ExifDateTime.INVALID || !(seconds >= 0 && seconds < 24 * 3600)) {
+            return -1;
+        }
+        return time + Math.round(seconds * 1000);
+    }
+
     private static com.google.cam2.exif.Rational[] toExifLatLong(double value) {
         // convert to the format dd/1 mm/1 ssss/100
         value = Math.abs(value);
@@ -2068,17 +2783,33 @@ public class ExifInterface {
         }
     }
 
-    private SparseIntArray mTagInfo = null;
+    // Definitions of the standard tags, built once and shared by every
+    // instance. An instance that changes its definitions gets its own copy,
+    // and a new one after sharing it with an ExifSnapshot.
+    private static final TagInfoTable DEFAULT_TAG_INFO = createDefaultTagInfo();
 
-    protected SparseIntArray getTagInfo() {
-        if (mTagInfo == null) {
-            mTagInfo = new SparseIntArray();
-            initTagInfo();
+    private TagInfoTable mTagInfo = DEFAULT_TAG_INFO;
+
+    // Package-private, as TagInfoTable is; the parsers look definitions up
+    // through it.
+    TagInfoTable getTagInfo() {
+        return mTagInfo;
+    }
+
+    private TagInfoTable getWritableTagInfo() {
+        if (mTagInfo.isFrozen()) {
+            mTagInfo = mTagInfo.copy();
         }
         return mTagInfo;
     }
 
-    private void initTagInfo() {
+    private static TagInfoTable createDefaultTagInfo() {
+        TagInfoTable tagInfo = new TagInfoTable();
+        initTagInfo(tagInfo);
+        return tagInfo.freeze();
+    }
+
+    private static void initTagInfo(TagInfoTable tagInfo) {
         /**
          * We put tag information in a 4-bytes integer. The first byte a bitmask
          * representing the allowed IFDs of the tag, the second byte is the data
@@ -2090,265 +2821,267 @@ public class ExifInterface {
                 com.google.cam2.exif.IfdId.TYPE_IFD_0, com.google.cam2.exif.IfdId.TYPE_IFD_1
         };
         int ifdFlags = getFlagsFromAllowedIfds(ifdAllowedIfds) << 24;
-        mTagInfo.put(ExifInterface.TAG_MAKE,
+        tagInfo.put(ExifInterface.TAG_MAKE,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_IMAGE_WIDTH,
+        tagInfo.put(ExifInterface.TAG_IMAGE_WIDTH,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_IMAGE_LENGTH,
+        tagInfo.put(ExifInterface.TAG_IMAGE_LENGTH,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_BITS_PER_SAMPLE,
+        tagInfo.put(ExifInterface.TAG_BITS_PER_SAMPLE,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 3);
-        mTagInfo.put(ExifInterface.TAG_COMPRESSION,
+        tagInfo.put(ExifInterface.TAG_COMPRESSION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_PHOTOMETRIC_INTERPRETATION,
+        tagInfo.put(ExifInterface.TAG_PHOTOMETRIC_INTERPRETATION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_ORIENTATION, ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16
+        tagInfo.put(ExifInterface.TAG_ORIENTATION, ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16
                 | 1);
-        mTagInfo.put(ExifInterface.TAG_SAMPLES_PER_PIXEL,
+        tagInfo.put(ExifInterface.TAG_SAMPLES_PER_PIXEL,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_PLANAR_CONFIGURATION,
+        tagInfo.put(ExifInterface.TAG_PLANAR_CONFIGURATION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_Y_CB_CR_SUB_SAMPLING,
+        tagInfo.put(ExifInterface.TAG_Y_CB_CR_SUB_SAMPLING,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_Y_CB_CR_POSITIONING,
+        tagInfo.put(ExifInterface.TAG_Y_CB_CR_POSITIONING,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_X_RESOLUTION,
+        tagInfo.put(ExifInterface.TAG_X_RESOLUTION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_Y_RESOLUTION,
+        tagInfo.put(ExifInterface.TAG_Y_RESOLUTION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_RESOLUTION_UNIT,
+        tagInfo.put(ExifInterface.TAG_RESOLUTION_UNIT,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_STRIP_OFFSETS,
+        tagInfo.put(ExifInterface.TAG_STRIP_OFFSETS,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_ROWS_PER_STRIP,
+        tagInfo.put(ExifInterface.TAG_ROWS_PER_STRIP,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_STRIP_BYTE_COUNTS,
+        tagInfo.put(ExifInterface.TAG_STRIP_BYTE_COUNTS,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_TRANSFER_FUNCTION,
+        tagInfo.put(ExifInterface.TAG_TRANSFER_FUNCTION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 3 * 256);
-        mTagInfo.put(ExifInterface.TAG_WHITE_POINT,
+        tagInfo.put(ExifInterface.TAG_WHITE_POINT,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_PRIMARY_CHROMATICITIES,
+        tagInfo.put(ExifInterface.TAG_PRIMARY_CHROMATICITIES,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 6);
-        mTagInfo.put(ExifInterface.TAG_Y_CB_CR_COEFFICIENTS,
+        tagInfo.put(ExifInterface.TAG_Y_CB_CR_COEFFICIENTS,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 3);
-        mTagInfo.put(ExifInterface.TAG_REFERENCE_BLACK_WHITE,
+        tagInfo.put(ExifInterface.TAG_REFERENCE_BLACK_WHITE,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 6);
-        mTagInfo.put(ExifInterface.TAG_DATE_TIME,
+        tagInfo.put(ExifInterface.TAG_DATE_TIME,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 20);
-        mTagInfo.put(ExifInterface.TAG_IMAGE_DESCRIPTION,
+        tagInfo.put(ExifInterface.TAG_IMAGE_DESCRIPTION,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_MAKE,
+        tagInfo.put(ExifInterface.TAG_MAKE,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_MODEL,
+        tagInfo.put(ExifInterface.TAG_MODEL,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_SOFTWARE,
+        tagInfo.put(ExifInterface.TAG_SOFTWARE,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_ARTIST,
+        tagInfo.put(ExifInterface.TAG_ARTIST,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_COPYRIGHT,
+        tagInfo.put(ExifInterface.TAG_COPYRIGHT,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_EXIF_IFD,
+        tagInfo.put(ExifInterface.TAG_EXIF_IFD,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_IFD,
+        tagInfo.put(ExifInterface.TAG_GPS_IFD,
                 ifdFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
+        tagInfo.put(ExifInterface.TAG_PADDING,
+                ifdFlags | ExifTag.TYPE_UNDEFINED << 16 | ExifTag.SIZE_UNDEFINED);
         // IFD1 tags
         int[] ifd1AllowedIfds = {
             com.google.cam2.exif.IfdId.TYPE_IFD_1
         };
         int ifdFlags1 = getFlagsFromAllowedIfds(ifd1AllowedIfds) << 24;
-        mTagInfo.put(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT,
+        tagInfo.put(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT,
                 ifdFlags1 | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH,
+        tagInfo.put(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH,
                 ifdFlags1 | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
         // Exif tags
         int[] exifAllowedIfds = {
             com.google.cam2.exif.IfdId.TYPE_IFD_EXIF
         };
         int exifFlags = getFlagsFromAllowedIfds(exifAllowedIfds) << 24;
-        mTagInfo.put(ExifInterface.TAG_EXIF_VERSION,
+        tagInfo.put(ExifInterface.TAG_EXIF_VERSION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | 4);
-        mTagInfo.put(ExifInterface.TAG_FLASHPIX_VERSION,
+        tagInfo.put(ExifInterface.TAG_FLASHPIX_VERSION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | 4);
-        mTagInfo.put(ExifInterface.TAG_COLOR_SPACE,
+        tagInfo.put(ExifInterface.TAG_COLOR_SPACE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_COMPONENTS_CONFIGURATION,
+        tagInfo.put(ExifInterface.TAG_COMPONENTS_CONFIGURATION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | 4);
-        mTagInfo.put(ExifInterface.TAG_COMPRESSED_BITS_PER_PIXEL,
+        tagInfo.put(ExifInterface.TAG_COMPRESSED_BITS_PER_PIXEL,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_PIXEL_X_DIMENSION,
+        tagInfo.put(ExifInterface.TAG_PIXEL_X_DIMENSION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_PIXEL_Y_DIMENSION,
+        tagInfo.put(ExifInterface.TAG_PIXEL_Y_DIMENSION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_MAKER_NOTE,
+        tagInfo.put(ExifInterface.TAG_MAKER_NOTE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_USER_COMMENT,
+        tagInfo.put(ExifInterface.TAG_USER_COMMENT,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_RELATED_SOUND_FILE,
+        tagInfo.put(ExifInterface.TAG_RELATED_SOUND_FILE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 13);
-        mTagInfo.put(ExifInterface.TAG_DATE_TIME_ORIGINAL,
+        tagInfo.put(ExifInterface.TAG_DATE_TIME_ORIGINAL,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 20);
-        mTagInfo.put(ExifInterface.TAG_DATE_TIME_DIGITIZED,
+        tagInfo.put(ExifInterface.TAG_DATE_TIME_DIGITIZED,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 20);
-        mTagInfo.put(ExifInterface.TAG_SUB_SEC_TIME,
+        tagInfo.put(ExifInterface.TAG_SUB_SEC_TIME,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_SUB_SEC_TIME_ORIGINAL,
+        tagInfo.put(ExifInterface.TAG_SUB_SEC_TIME_ORIGINAL,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_SUB_SEC_TIME_DIGITIZED,
+        tagInfo.put(ExifInterface.TAG_SUB_SEC_TIME_DIGITIZED,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_IMAGE_UNIQUE_ID,
+        tagInfo.put(ExifInterface.TAG_IMAGE_UNIQUE_ID,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 33);
-        mTagInfo.put(ExifInterface.TAG_EXPOSURE_TIME,
+        tagInfo.put(ExifInterface.TAG_EXPOSURE_TIME,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_F_NUMBER,
+        tagInfo.put(ExifInterface.TAG_F_NUMBER,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_EXPOSURE_PROGRAM,
+        tagInfo.put(ExifInterface.TAG_EXPOSURE_PROGRAM,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SPECTRAL_SENSITIVITY,
+        tagInfo.put(ExifInterface.TAG_SPECTRAL_SENSITIVITY,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_ISO_SPEED_RATINGS,
+        tagInfo.put(ExifInterface.TAG_ISO_SPEED_RATINGS,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_OECF,
+        tagInfo.put(ExifInterface.TAG_OECF,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_SHUTTER_SPEED_VALUE,
+        tagInfo.put(ExifInterface.TAG_SHUTTER_SPEED_VALUE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_APERTURE_VALUE,
+        tagInfo.put(ExifInterface.TAG_APERTURE_VALUE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_BRIGHTNESS_VALUE,
+        tagInfo.put(ExifInterface.TAG_BRIGHTNESS_VALUE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_EXPOSURE_BIAS_VALUE,
+        tagInfo.put(ExifInterface.TAG_EXPOSURE_BIAS_VALUE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_MAX_APERTURE_VALUE,
+        tagInfo.put(ExifInterface.TAG_MAX_APERTURE_VALUE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SUBJECT_DISTANCE,
+        tagInfo.put(ExifInterface.TAG_SUBJECT_DISTANCE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_METERING_MODE,
+        tagInfo.put(ExifInterface.TAG_METERING_MODE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_LIGHT_SOURCE,
+        tagInfo.put(ExifInterface.TAG_LIGHT_SOURCE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_FLASH,
+        tagInfo.put(ExifInterface.TAG_FLASH,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_FOCAL_LENGTH,
+        tagInfo.put(ExifInterface.TAG_FOCAL_LENGTH,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SUBJECT_AREA,
+        tagInfo.put(ExifInterface.TAG_SUBJECT_AREA,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_FLASH_ENERGY,
+        tagInfo.put(ExifInterface.TAG_FLASH_ENERGY,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SPATIAL_FREQUENCY_RESPONSE,
+        tagInfo.put(ExifInterface.TAG_SPATIAL_FREQUENCY_RESPONSE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_FOCAL_PLANE_X_RESOLUTION,
+        tagInfo.put(ExifInterface.TAG_FOCAL_PLANE_X_RESOLUTION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_FOCAL_PLANE_Y_RESOLUTION,
+        tagInfo.put(ExifInterface.TAG_FOCAL_PLANE_Y_RESOLUTION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_FOCAL_PLANE_RESOLUTION_UNIT,
+        tagInfo.put(ExifInterface.TAG_FOCAL_PLANE_RESOLUTION_UNIT,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SUBJECT_LOCATION,
+        tagInfo.put(ExifInterface.TAG_SUBJECT_LOCATION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_EXPOSURE_INDEX,
+        tagInfo.put(ExifInterface.TAG_EXPOSURE_INDEX,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SENSING_METHOD,
+        tagInfo.put(ExifInterface.TAG_SENSING_METHOD,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_FILE_SOURCE,
+        tagInfo.put(ExifInterface.TAG_FILE_SOURCE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SCENE_TYPE,
+        tagInfo.put(ExifInterface.TAG_SCENE_TYPE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_CFA_PATTERN,
+        tagInfo.put(ExifInterface.TAG_CFA_PATTERN,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_CUSTOM_RENDERED,
+        tagInfo.put(ExifInterface.TAG_CUSTOM_RENDERED,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_EXPOSURE_MODE,
+        tagInfo.put(ExifInterface.TAG_EXPOSURE_MODE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_WHITE_BALANCE,
+        tagInfo.put(ExifInterface.TAG_WHITE_BALANCE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_DIGITAL_ZOOM_RATIO,
+        tagInfo.put(ExifInterface.TAG_DIGITAL_ZOOM_RATIO,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_FOCAL_LENGTH_IN_35_MM_FILE,
+        tagInfo.put(ExifInterface.TAG_FOCAL_LENGTH_IN_35_MM_FILE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SCENE_CAPTURE_TYPE,
+        tagInfo.put(ExifInterface.TAG_SCENE_CAPTURE_TYPE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GAIN_CONTROL,
+        tagInfo.put(ExifInterface.TAG_GAIN_CONTROL,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_CONTRAST,
+        tagInfo.put(ExifInterface.TAG_CONTRAST,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SATURATION,
+        tagInfo.put(ExifInterface.TAG_SATURATION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_SHARPNESS,
+        tagInfo.put(ExifInterface.TAG_SHARPNESS,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_DEVICE_SETTING_DESCRIPTION,
+        tagInfo.put(ExifInterface.TAG_DEVICE_SETTING_DESCRIPTION,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_SUBJECT_DISTANCE_RANGE,
+        tagInfo.put(ExifInterface.TAG_SUBJECT_DISTANCE_RANGE,
                 exifFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_INTEROPERABILITY_IFD, exifFlags
+        tagInfo.put(ExifInterface.TAG_INTEROPERABILITY_IFD, exifFlags
                 | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG << 16 | 1);
         // GPS tag
         int[] gpsAllowedIfds = {
             com.google.cam2.exif.IfdId.TYPE_IFD_GPS
         };
         int gpsFlags = getFlagsFromAllowedIfds(gpsAllowedIfds) << 24;
-        mTagInfo.put(ExifInterface.TAG_GPS_VERSION_ID,
+        tagInfo.put(ExifInterface.TAG_GPS_VERSION_ID,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_BYTE << 16 | 4);
-        mTagInfo.put(ExifInterface.TAG_GPS_LATITUDE_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_LATITUDE_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_LONGITUDE_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_LONGITUDE_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_LATITUDE,
+        tagInfo.put(ExifInterface.TAG_GPS_LATITUDE,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_RATIONAL << 16 | 3);
-        mTagInfo.put(ExifInterface.TAG_GPS_LONGITUDE,
+        tagInfo.put(ExifInterface.TAG_GPS_LONGITUDE,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_RATIONAL << 16 | 3);
-        mTagInfo.put(ExifInterface.TAG_GPS_ALTITUDE_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_ALTITUDE_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_BYTE << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_ALTITUDE,
+        tagInfo.put(ExifInterface.TAG_GPS_ALTITUDE,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_TIME_STAMP,
+        tagInfo.put(ExifInterface.TAG_GPS_TIME_STAMP,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 3);
-        mTagInfo.put(ExifInterface.TAG_GPS_SATTELLITES,
+        tagInfo.put(ExifInterface.TAG_GPS_SATTELLITES,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_GPS_STATUS,
+        tagInfo.put(ExifInterface.TAG_GPS_STATUS,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_MEASURE_MODE,
+        tagInfo.put(ExifInterface.TAG_GPS_MEASURE_MODE,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_DOP,
+        tagInfo.put(ExifInterface.TAG_GPS_DOP,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_SPEED_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_SPEED_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_SPEED,
+        tagInfo.put(ExifInterface.TAG_GPS_SPEED,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_TRACK_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_TRACK_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_TRACK,
+        tagInfo.put(ExifInterface.TAG_GPS_TRACK,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_IMG_DIRECTION_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_IMG_DIRECTION_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_IMG_DIRECTION,
+        tagInfo.put(ExifInterface.TAG_GPS_IMG_DIRECTION,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_MAP_DATUM,
+        tagInfo.put(ExifInterface.TAG_GPS_MAP_DATUM,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_GPS_DEST_LATITUDE_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_DEST_LATITUDE_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_DEST_LATITUDE,
+        tagInfo.put(ExifInterface.TAG_GPS_DEST_LATITUDE,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_DEST_BEARING_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_DEST_BEARING_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_DEST_BEARING,
+        tagInfo.put(ExifInterface.TAG_GPS_DEST_BEARING,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_DEST_DISTANCE_REF,
+        tagInfo.put(ExifInterface.TAG_GPS_DEST_DISTANCE_REF,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 2);
-        mTagInfo.put(ExifInterface.TAG_GPS_DEST_DISTANCE,
+        tagInfo.put(ExifInterface.TAG_GPS_DEST_DISTANCE,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL << 16 | 1);
-        mTagInfo.put(ExifInterface.TAG_GPS_PROCESSING_METHOD,
+        tagInfo.put(ExifInterface.TAG_GPS_PROCESSING_METHOD,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_GPS_AREA_INFORMATION,
+        tagInfo.put(ExifInterface.TAG_GPS_AREA_INFORMATION,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNDEFINED << 16 | com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        mTagInfo.put(ExifInterface.TAG_GPS_DATE_STAMP,
+        tagInfo.put(ExifInterface.TAG_GPS_DATE_STAMP,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16 | 11);
-        mTagInfo.put(ExifInterface.TAG_GPS_DIFFERENTIAL,
+        tagInfo.put(ExifInterface.TAG_GPS_DIFFERENTIAL,
                 gpsFlags | com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT << 16 | 11);
         // Interoperability tag
         int[] interopAllowedIfds = {
             com.google.cam2.exif.IfdId.TYPE_IFD_INTEROPERABILITY
         };
         int interopFlags = getFlagsFromAllowedIfds(interopAllowedIfds) << 24;
-        mTagInfo.put(TAG_INTEROPERABILITY_INDEX, interopFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16
+        tagInfo.put(TAG_INTEROPERABILITY_INDEX, interopFlags | com.google.cam2.exif.ExifTag.TYPE_ASCII << 16
                 | ExifTag.SIZE_UNDEFINED);
     }
 
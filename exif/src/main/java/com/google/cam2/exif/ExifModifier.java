@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import com.google.cam2.exif.*;
+import com.google.cam2.exif.ExifParser;
+import com.google.cam2.exif.ExifTag;
+import com.google.cam2.exif.IfdData;
+import com.google.cam2.exif.IfdId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ExifModifier {
+    public static final String TAG = "ExifModifier";
+    public static final boolean DEBUG = false;
+    // APP1 marker, length, and the "Exif\0\0" header ahead of the TIFF header.
+    private static final int APP1_HEADER_SIZE = 10;
+    // A padding tag's value needs more than 4 bytes to be stored out of line.
+    private static final int MIN_PADDING_SIZE = 5;
+    private static final short TAG_EXIF_IFD = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
+    private static final short TAG_GPS_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_IFD);
+    private static final short TAG_INTEROPERABILITY_IFD = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_INTEROPERABILITY_IFD);
+    private static final int DEFAULT_CAPACITY = 64;
+    private final ByteBuffer mByteBuffer;
+    private final com.google.cam2.exif.ExifData mTagToModified;
+    private final List<ExifTag> mModifiedTags = new ArrayList<ExifTag>();
+    private final ExifInterface mInterface;
+    private final int mJpegStart;
+    private int mOffsetBase;
+
+    // Where each IFD entry of the image keeps its value, recorded by the
+    // constructor so that commit() does not parse the header again. Keys are
+    // the IFD in the upper and the tag ID in the lower 16 bits; value offsets
+    // are from the TIFF header.
+    private int[] mEntryKeys = new int[DEFAULT_CAPACITY];
+    private short[] mEntryTypes = new short[DEFAULT_CAPACITY];
+    private int[] mEntryCounts = new int[DEFAULT_CAPACITY];
+    private int[] mEntryOffsets = new int[DEFAULT_CAPACITY];
+    private int mEntryCount;
+    private int mVisitedIfds;
+
+    protected ExifModifier(ByteBuffer byteBuffer, ExifInterface iRef) throws IOException,
+            ExifInvalidFormatException {
+        mByteBuffer = byteBuffer;
+        mJpegStart = byteBuffer.position();
+        mOffsetBase = byteBuffer.position();
+        mInterface = iRef;
+        // Only the IFD entries are read, none of the values.
+        ExifBufferParser parser = ExifBufferParser.locate(byteBuffer);
+        if (parser.containsExifData()) {
+            mTagToModified = new com.google.cam2.exif.ExifData(parser.getByteOrder());
+            mOffsetBase += parser.getTiffStartPosition();
+            recordIfd(parser, IfdId.TYPE_IFD_0, parser.getIfd0Offset());
+        } else {
+            mTagToModified = new com.google.cam2.exif.ExifData(ExifInterface.DEFAULT_BYTE_ORDER);
+        }
+    }
+
+    /**
+     * Records the entries of the IFD at the given offset and of the IFDs it
+     * links to.
+     */
+    private void recordIfd(ExifBufferParser parser, int ifdType, long offset) {
+        // Each IFD is read at most once, this also guards against loops.
+        if ((mVisitedIfds & (1 << ifdType)) != 0 || offset <= 0 || offset > Integer.MAX_VALUE) {
+            return;
+        }
+        mVisitedIfds |= 1 << ifdType;
+        int ifdOffset = (int) offset;
+        int tagCount = parser.getTagCountOfIfd(ifdOffset);
+        if (tagCount < 0) {
+            Log.w(TAG, "Invalid size of IFD " + ifdType);
+            return;
+        }
+        for (int i = 0; i < tagCount; i++) {
+            long valueOffset = parser.getEntryValueOffset(ifdOffset, i);
+            long count = parser.getEntryComponentCount(ifdOffset, i);
+            if (valueOffset < 0 || count > Integer.MAX_VALUE) {
+                continue;
+            }
+            if (mEntryCount == mEntryKeys.length) {
+                int capacity = mEntryCount * 2;
+                mEntryKeys = Arrays.copyOf(mEntryKeys, capacity);
+                mEntryTypes = Arrays.copyOf(mEntryTypes, capacity);
+                mEntryCounts = Arrays.copyOf(mEntryCounts, capacity);
+                mEntryOffsets = Arrays.copyOf(mEntryOffsets, capacity);
+            }
+            mEntryKeys[mEntryCount] = entryKey(ifdType, parser.getEntryTagId(ifdOffset, i));
+            mEntryTypes[mEntryCount] = parser.getEntryDataType(ifdOffset, i);
+            mEntryCounts[mEntryCount] = (int) count;
+            mEntryOffsets[mEntryCount] = (int) valueOffset;
+            mEntryCount++;
+        }
+        switch (ifdType) {
+            case IfdId.TYPE_IFD_0:
+                recordIfd(parser, IfdId.TYPE_IFD_EXIF,
+                        parser.findIntTagValue(ifdOffset, tagCount, TAG_EXIF_IFD));
+                recordIfd(parser, IfdId.TYPE_IFD_GPS,
+                        parser.findIntTagValue(ifdOffset, tagCount, TAG_GPS_IFD));
+                // There is a link to ifd1 at the end of ifd0
+                recordIfd(parser, IfdId.TYPE_IFD_1,
+                        parser.getOffsetToNextIfd(ifdOffset, tagCount));
+                break;
+            case IfdId.TYPE_IFD_EXIF:
+                recordIfd(parser, IfdId.TYPE_IFD_INTEROPERABILITY,
+                        parser.findIntTagValue(ifdOffset, tagCount, TAG_INTEROPERABILITY_IFD));
+                break;
+        }
+    }
+
+    private static int entryKey(int ifdType, short tagId) {
+        return ifdType << 16 | (tagId & 0xffff);
+    }
+
+    // Index of the first recorded entry of the given tag, or -1.
+    private int findEntry(int ifdType, short tagId) {
+        int key = entryKey(ifdType, tagId);
+        for (int i = 0; i < mEntryCount; i++) {
+            if (mEntryKeys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected ByteOrder getByteOrder() {
+        return mTagToModified.getByteOrder();
+    }
+
+    /**
+     * Writes the modified tags into the buffer. Tags that exist with the same
+     * type and size are overwritten where they are. Otherwise the Exif header
+     * is rebuilt with the modified tags and written over the old one, taking
+     * the difference in size from its {@link ExifInterface#TAG_PADDING} tag.
+     *
+     * @return false if neither is possible, in which case the buffer is left
+     *         unchanged.
+     */
+    protected boolean commit() throws IOException, ExifInvalidFormatException {
+        return commitInPlace() || commitIntoPadding();
+    }
+
+    private boolean commitInPlace() {
+        List<ExifTag> tags = mTagToModified.getAllTags();
+        if (tags == null) {
+            return true;
+        }
+        int[] entries = new int[tags.size()];
+        for (int i = 0; i < entries.length; i++) {
+            ExifTag tag = tags.get(i);
+            int entry = findEntry(tag.getIfd(), tag.getTagId());
+            if (entry < 0 || mEntryCounts[entry] != tag.getComponentCount()
+                    || mEntryTypes[entry] != tag.getDataType()) {
+                return false;
+            }
+            entries[i] = entry;
+        }
+        mByteBuffer.order(getByteOrder());
+        for (int i = 0; i < entries.length; i++) {
+            writeTagValue(tags.get(i), mEntryOffsets[entries[i]]);
+        }
+        return true;
+    }
+
+    private boolean commitIntoPadding() throws IOException, ExifInvalidFormatException {
+        int app1Start = mOffsetBase - APP1_HEADER_SIZE;
+        if (app1Start < mJpegStart || mByteBuffer.getShort(app1Start) != JpegHeader.APP1) {
+            return false;
+        }
+        // Marker and the segment length, which counts itself.
+        int app1Size = 2 + (mByteBuffer.getShort(app1Start + 2) & 0xffff);
+
+        ByteBuffer jpeg = mByteBuffer.duplicate();
+        jpeg.order(ByteOrder.BIG_ENDIAN);
+        jpeg.position(mJpegStart);
+        ExifData exifData = new ExifReader(mInterface).read(jpeg);
+        short paddingId = ExifInterface.getTrueTagKey(ExifInterface.TAG_PADDING);
+        if (exifData.getTag(paddingId, IfdId.TYPE_IFD_0) == null) {
+            return false;
+        }
+        // Values read lazily would point into the header being overwritten.
+        List<ExifTag> tags = exifData.getAllTags();
+        for (ExifTag t : tags) {
+            t.hasValue();
+        }
+        exifData.removeTag(paddingId, IfdId.TYPE_IFD_0);
+        for (ExifTag t : mModifiedTags) {
+            exifData.addTag(t);
+        }
+
+        int padding = app1Size - writeApp1(exifData, 0).limit() - ExifParser.TAG_SIZE;
+        if (padding < MIN_PADDING_SIZE) {
+            return false;
+        }
+        ByteBuffer app1 = writeApp1(exifData, padding);
+        if (app1.limit() != app1Size) {
+            Log.w(TAG, "Rebuilt exif header size " + app1.limit() + " does not match " + app1Size);
+            return false;
+        }
+        mByteBuffer.position(app1Start);
+        mByteBuffer.put(app1);
+        return true;
+    }
+
+    // Serializes the APP1 segment for the given data with the given padding.
+    private ByteBuffer writeApp1(ExifData exifData, int padding) throws IOException {
+        ExifSerializer serializer = new ExifSerializer(mInterface);
+        serializer.setPadding(padding);
+        return serializer.serialize(exifData, false);
+    }
+
+    private void writeTagValue(com.google.cam2.exif.ExifTag tag, int offset) {
+        if (DEBUG) {
+            Log.v(TAG, "modifying tag to: \n" + tag.toString());
+            Log.v(TAG, "at offset: " + offset);
+        }
+        mByteBuffer.position(offset + mOffsetBase);
+        switch (tag.getDataType()) {
+            case com.google.cam2.exif.ExifTag.TYPE_ASCII:
+                byte buf[] = tag.getStringByte();
+                if (buf.length == tag.getComponentCount()) {
+                    // The value array may be shared, so is not terminated in place.
+                    mByteBuffer.put(buf, 0, buf.length - 1);
+                    mByteBuffer.put((byte) 0);
+                } else {
+                    mByteBuffer.put(buf);
+                    mByteBuffer.put((byte) 0);
+                }
+                break;
+            case com.google.cam2.exif.ExifTag.TYPE_LONG:
+            case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG:
+                for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
+                    mByteBuffer.putInt((int) tag.getValueAt(i));
+                }
+                break;
+            case com.google.cam2.exif.ExifTag.TYPE_RATIONAL:
+            case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL:
+                for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
+                    mByteBuffer.putInt((int) tag.getRationalNumerator(i));
+                    mByteBuffer.putInt((int) tag.getRationalDenominator(i));
+                }
+                break;
+            case com.google.cam2.exif.ExifTag.TYPE_UNDEFINED:
+            case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_BYTE:
+                buf = new byte[tag.getComponentCount()];
+                tag.getBytes(buf);
+                mByteBuffer.put(buf);
+                break;
+            case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT:
+                for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
+                    mByteBuffer.putShort((short) tag.getValueAt(i));
+                }
+                break;
+        }
+    }
+
+    public void modifyTag(ExifTag tag) {
+        mTagToModified.addTag(tag);
+        mModifiedTags.add(tag);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import com.google.cam2.exif.*;
+import com.google.cam2.exif.ExifData;
+import com.google.cam2.exif.ExifInterface;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class provides a way to replace the Exif header of a JPEG image. If the
+ * ExifData has an XMP packet, the XMP APP1 segments of the image are replaced
+ * by it in the same pass; otherwise they are copied as they are.
+ * <p>
+ * Below is an example of writing EXIF data into a file
+ *
+ * <pre>
+ * public static void writeExif(byte[] jpeg, ExifData exif, String path) {
+ *     OutputStream os = null;
+ *     try {
+ *         os = new FileOutputStream(path);
+ *         ExifOutputStream eos = new ExifOutputStream(os);
+ *         // Set the exif header
+ *         eos.setExifData(exif);
+ *         // Write the original jpeg out, the header will be add into the file.
+ *         eos.write(jpeg);
+ *     } catch (FileNotFoundException e) {
+ *         e.printStackTrace();
+ *     } catch (IOException e) {
+ *         e.printStackTrace();
+ *     } finally {
+ *         if (os != null) {
+ *             try {
+ *                 os.close();
+ *             } catch (IOException e) {
+ *                 e.printStackTrace();
+ *             }
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+class ExifOutputStream extends FilterOutputStream {
+    private static final String TAG = "ExifOutputStream";
+    private static final boolean DEBUG = false;
+    private static final int STREAMBUFFER_SIZE = 0x00010000; // 64Kb
+
+    private static final int STATE_SOI = 0;
+    private static final int STATE_FRAME_HEADER = 1;
+    private static final int STATE_JPEG_DATA = 2;
+    private static final int STATE_APP_HEADER = 3;
+
+    // Marker and length of a segment.
+    private static final int SEGMENT_HEADER_SIZE = 4;
+
+    private com.google.cam2.exif.ExifData mExifData;
+    private int mState = STATE_SOI;
+    private int mByteToSkip;
+    private int mByteToCopy;
+    private final byte[] mSingleByteArray = new byte[1];
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(SEGMENT_HEADER_SIZE
+            + ExifParser.XMP_HEADER.length);
+    private short mAppMarker;
+    private int mAppLength;
+    private boolean mApp1Dropped;
+    private final com.google.cam2.exif.ExifInterface mInterface;
+    private int mPadding;
+
+    protected ExifOutputStream(OutputStream ou, com.google.cam2.exif.ExifInterface iRef) {
+        super(new BufferedOutputStream(ou, STREAMBUFFER_SIZE));
+        mInterface = iRef;
+        mPadding = iRef.getExifPadding();
+    }
+
+    /**
+     * Sets the number of bytes to reserve in the Exif header as the value of a
+     * {@link ExifInterface#TAG_PADDING} tag in IFD0, replacing any padding tag
+     * in the ExifData. 0 writes the ExifData as it is. Defaults to
+     * {@link ExifInterface#getExifPadding()}.
+     */
+    protected void setPadding(int padding) {
+        mPadding = padding;
+    }
+
+    /**
+     * Sets the ExifData to be written into the JPEG file. Should be called
+     * before writing image data.
+     */
+    protected void setExifData(com.google.cam2.exif.ExifData exifData) {
+        mExifData = exifData;
+    }
+
+    /**
+     * Gets the Exif header to be written into the JPEF file.
+     */
+    protected com.google.cam2.exif.ExifData getExifData() {
+        return mExifData;
+    }
+
+    private int requestByteToBuffer(int requestByteCount, byte[] buffer
+            , int offset, int length) {
+        int byteNeeded = requestByteCount - mBuffer.position();
+        int byteToRead = length > byteNeeded ? byteNeeded : length;
+        mBuffer.put(buffer, offset, byteToRead);
+        return byteToRead;
+    }
+
+    /**
+     * Writes the image out. The input data should be a valid JPEG format. After
+     * writing, it's Exif header will be replaced by the given header.
+     */
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while ((mByteToSkip > 0 || mByteToCopy > 0 || mState != STATE_JPEG_DATA)
+                && length > 0) {
+            if (mByteToSkip > 0) {
+                int byteToProcess = length > mByteToSkip ? mByteToSkip : length;
+                length -= byteToProcess;
+                mByteToSkip -= byteToProcess;
+                offset += byteToProcess;
+            }
+            if (mByteToCopy > 0) {
+                int byteToProcess = length > mByteToCopy ? mByteToCopy : length;
+                out.write(buffer, offset, byteToProcess);
+                length -= byteToProcess;
+                mByteToCopy -= byteToProcess;
+                offset += byteToProcess;
+            }
+            if (length == 0) {
+                return;
+            }
+            switch (mState) {
+                case STATE_SOI:
+                    int byteRead = requestByteToBuffer(2, buffer, offset, length);
+                    offset += byteRead;
+                    length -= byteRead;
+                    if (mBuffer.position() < 2) {
+                        return;
+                    }
+                    mBuffer.rewind();
+                    if (mBuffer.getShort() != com.google.cam2.exif.JpegHeader.SOI) {
+                        throw new IOException("Not a valid jpeg image, cannot write exif");
+                    }
+                    out.write(mBuffer.array(), 0, 2);
+                    mState = STATE_FRAME_HEADER;
+                    mBuffer.rewind();
+                    writeExifData();
+                    break;
+                case STATE_FRAME_HEADER:
+                    // We ignore the APP1 segment and copy all other segments
+                    // until SOF tag.
+                    byteRead = requestByteToBuffer(4, buffer, offset, length);
+                    offset += byteRead;
+                    length -= byteRead;
+                    // Check if this image data doesn't contain SOF.
+                    if (mBuffer.position() == 2) {
+                        short tag = mBuffer.getShort(0);
+                        if (tag == com.google.cam2.exif.JpegHeader.EOI) {
+                            out.write(mBuffer.array(), 0, 2);
+                            mBuffer.rewind();
+                        }
+                    }
+                    if (mBuffer.position() >= 2 && mBuffer.getShort(0) == JpegHeader.FILL) {
+                        // Copy a fill byte and look for the marker one byte on.
+                        out.write(mBuffer.array(), 0, 1);
+                        int buffered = mBuffer.position() - 1;
+                        System.arraycopy(mBuffer.array(), 1, mBuffer.array(), 0, buffered);
+                        mBuffer.position(buffered);
+                        break;
+                    }
+                    if (mBuffer.position() < 4) {
+                        return;
+                    }
+                    mBuffer.rewind();
+                    short marker = mBuffer.getShort();
+                    if (marker == com.google.cam2.exif.JpegHeader.APP1
+                            || (marker == com.google.cam2.exif.JpegHeader.APP2 && replacesIcc())) {
+                        // Look at its header to tell XMP from Exif, or an ICC
+                        // profile chunk from other APP2 data.
+                        mAppMarker = marker;
+                        mAppLength = mBuffer.getShort() & 0x0000ffff;
+                        mBuffer.position(SEGMENT_HEADER_SIZE);
+                        mState = STATE_APP_HEADER;
+                        break;
+                    } else if (!com.google.cam2.exif.JpegHeader.isSofMarker(marker)) {
+                        out.write(mBuffer.array(), 0, 4);
+                        mByteToCopy = (mBuffer.getShort() & 0x0000ffff) - 2;
+                    } else {
+                        out.write(mBuffer.array(), 0, 4);
+                        mState = STATE_JPEG_DATA;
+                    }
+                    mBuffer.rewind();
+                    break;
+                case STATE_APP_HEADER:
+                    // Drop the first APP1 segment that is not XMP, the XMP ones
+                    // if there is a packet to replace them and the ICC profile
+                    // chunks if there is a profile to replace them.
+                    byte[] header = mAppMarker == com.google.cam2.exif.JpegHeader.APP1
+                            ? ExifParser.XMP_HEADER : ExifParser.ICC_HEADER;
+                    int headerSize = SEGMENT_HEADER_SIZE
+                            + Math.max(0, Math.min(mAppLength - 2, header.length));
+                    byteRead = requestByteToBuffer(headerSize, buffer, offset, length);
+                    offset += byteRead;
+                    length -= byteRead;
+                    if (mBuffer.position() < headerSize) {
+                        return;
+                    }
+                    int rest = mAppLength - 2 - (headerSize - SEGMENT_HEADER_SIZE);
+                    boolean replaceXmp = mExifData != null && mExifData.hasXmpPacket();
+                    mState = STATE_FRAME_HEADER;
+                    if (mAppMarker == com.google.cam2.exif.JpegHeader.APP2) {
+                        if (hasHeader(header, headerSize)) {
+                            mByteToSkip = rest;
+                        } else {
+                            out.write(mBuffer.array(), 0, headerSize);
+                            mByteToCopy = rest;
+                        }
+                    } else if (hasHeader(header, headerSize)) {
+                        if (replaceXmp) {
+                            mByteToSkip = rest;
+                        } else {
+                            out.write(mBuffer.array(), 0, headerSize);
+                            mByteToCopy = rest;
+                        }
+                    } else if (!mApp1Dropped) {
+                        mApp1Dropped = true;
+                        mByteToSkip = rest;
+                        if (!replaceXmp && !replacesIcc()) {
+                            mState = STATE_JPEG_DATA;
+                        }
+                    } else {
+                        out.write(mBuffer.array(), 0, headerSize);
+                        mByteToCopy = rest;
+                    }
+                    mBuffer.rewind();
+            }
+        }
+        if (length > 0) {
+            out.write(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Writes the one bytes out. The input data should be a valid JPEG format.
+     * After writing, it's Exif header will be replaced by the given header.
+     */
+    @Override
+    public void write(int oneByte) throws IOException {
+        mSingleByteArray[0] = (byte) (0xff & oneByte);
+        write(mSingleByteArray);
+    }
+
+    /**
+     * Equivalent to calling write(buffer, 0, buffer.length).
+     */
+    @Override
+    public void write(byte[] buffer) throws IOException {
+        write(buffer, 0, buffer.length);
+    }
+
+    private boolean replacesIcc() {
+        return mExifData != null && mExifData.hasIccProfile();
+    }
+
+    // Whether the segment data peeked into mBuffer starts with the given bytes.
+    private boolean hasHeader(byte[] header, int headerSize) {
+        if (headerSize != SEGMENT_HEADER_SIZE + header.length) {
+            return false;
+        }
+        byte[] buf = mBuffer.array();
+        for (int i = 0; i < header.length; i++) {
+            if (buf[SEGMENT_HEADER_SIZE + i] != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeExifData() throws IOException {
+        if (mExifData == null) {
+            return;
+        }
+        if (DEBUG) {
+            Log.v(TAG, "Writing exif data...");
+        }
+        ExifSerializer serializer = new ExifSerializer(mInterface);
+        serializer.setPadding(mPadding);
+        ByteBuffer app1 = serializer.serialize(mExifData, false);
+        out.write(app1.array(), app1.arrayOffset(), app1.limit());
+        if (mExifData.hasXmpPacket()) {
+            ByteBuffer xmp = ExifSerializer.serializeXmp(mExifData.getXmpPacket(), false);
+            out.write(xmp.array(), xmp.arrayOffset(), xmp.limit());
+        }
+        if (mExifData.hasIccProfile()) {
+            ByteBuffer icc = ExifSerializer.serializeIcc(mExifData.getIccProfile(), false);
+            out.write(icc.array(), icc.arrayOffset(), icc.limit());
+        }
+    }
+}
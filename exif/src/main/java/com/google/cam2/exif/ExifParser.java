@@ -16,18 +16,16 @@
 
 package com.google.cam2.exif;
 
-import android.util.Log;
-
 import com.google.cam2.exif.*;
 import com.google.cam2.exif.ExifTag;
 import com.google.cam2.exif.Rational;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * This class provides a low-level EXIF parsing API. Given a JPEG format
@@ -69,6 +67,9 @@ import java.util.TreeMap;
  *     // process the tag as you like.
  * }
  * </pre>
+ * <p>
+ * To read tag values from a buffer without creating an {@link ExifTag} for
+ * each of them, use {@link ExifCursor} instead.
  */
 public class ExifParser {
     private static final boolean LOGV = false;
@@ -145,6 +146,14 @@ public class ExifParser {
 
     private static final Charset US_ASCII = Charset.forName("US-ASCII");
 
+    // XMP header in APP1, the packet follows it. The header arrays are shared
+    // by the readers and writers of this package and must not be changed.
+    static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0"
+            .getBytes(US_ASCII);
+    private static final int XMP_HEADER_START = 0x68747470; // "http"
+    // ICC profile header in APP2, followed by the chunk number and count.
+    static final byte[] ICC_HEADER = "ICC_PROFILE\0".getBytes(US_ASCII);
+
     protected static final int DEFAULT_IFD0_OFFSET = 8;
 
     private final CountedDataInputStream mTiffStream;
@@ -153,7 +162,8 @@ public class ExifParser {
     private int mNumOfTagInIfd = 0;
     private int mIfdType;
     private com.google.cam2.exif.ExifTag mTag;
-    private ImageEvent mImageEvent;
+    private int mImageType;
+    private int mStripIndex;
     private int mStripCount;
     private com.google.cam2.exif.ExifTag mStripSizeTag;
     private com.google.cam2.exif.ExifTag mJpegSizeTag;
@@ -164,6 +174,10 @@ public class ExifParser {
     private byte[] mDataAboveIfd0;
     private int mIfd0Position;
     private int mTiffStartPosition;
+    private byte[] mXmpPacket;
+    // Chunks of the ICC profile by number, sized by the first chunk found.
+    private byte[][] mIccChunks;
+    private boolean mSegmentsWalked;
     private final ExifInterface mInterface;
 
     private static final short TAG_EXIF_IFD = ExifInterface
@@ -180,7 +194,7 @@ public class ExifParser {
     private static final short TAG_STRIP_BYTE_COUNTS = ExifInterface
             .getTrueTagKey(ExifInterface.TAG_STRIP_BYTE_COUNTS);
 
-    private final TreeMap<Integer, Object> mCorrespondingEvent = new TreeMap<Integer, Object>();
+    private final EventQueue mCorrespondingEvent = new EventQueue();
 
     private boolean isIfdRequested(int ifdType) {
         switch (ifdType) {
@@ -260,6 +274,36 @@ public class ExifParser {
                 | OPTION_THUMBNAIL, iRef);
     }
 
+    /**
+     * Gets the minimal options needed to read the given tags; that is, only
+     * the IFDs the tags are defined in. The thumbnail is not requested.
+     *
+     * @param tags tag constants defined in {@link ExifInterface}.
+     */
+    protected static int getOptionsForTags(int[] tags) {
+        int options = 0;
+        for (int tag : tags) {
+            switch (ExifInterface.getTrueIfd(tag)) {
+                case IfdId.TYPE_IFD_0:
+                    options |= OPTION_IFD_0;
+                    break;
+                case IfdId.TYPE_IFD_1:
+                    options |= OPTION_IFD_1;
+                    break;
+                case IfdId.TYPE_IFD_EXIF:
+                    options |= OPTION_IFD_EXIF;
+                    break;
+                case IfdId.TYPE_IFD_GPS:
+                    options |= OPTION_IFD_GPS;
+                    break;
+                case IfdId.TYPE_IFD_INTEROPERABILITY:
+                    options |= OPTION_IFD_INTEROPERABILITY;
+                    break;
+            }
+        }
+        return options;
+    }
+
     /**
      * Moves the parser forward and returns the next parsing event
      *
@@ -299,8 +343,8 @@ public class ExifParser {
             } else {
                 int offsetSize = 4;
                 // Some camera models use invalid length of the offset
-                if (mCorrespondingEvent.size() > 0) {
-                    offsetSize = mCorrespondingEvent.firstEntry().getKey() -
+                if (!mCorrespondingEvent.isEmpty()) {
+                    offsetSize = mCorrespondingEvent.peekOffset() -
                             mTiffStream.getReadByteCount();
                 }
                 if (offsetSize < 4) {
@@ -313,20 +357,24 @@ public class ExifParser {
                 }
             }
         }
-        while (mCorrespondingEvent.size() != 0) {
-            Entry<Integer, Object> entry = mCorrespondingEvent.pollFirstEntry();
-            Object event = entry.getValue();
+        while (!mCorrespondingEvent.isEmpty()) {
+            int eventOffset = mCorrespondingEvent.peekOffset();
+            int eventType = mCorrespondingEvent.peekType();
+            int eventArg = mCorrespondingEvent.peekArg();
+            boolean isRequested = mCorrespondingEvent.peekRequested();
+            com.google.cam2.exif.ExifTag eventTag = mCorrespondingEvent.peekTag();
+            mCorrespondingEvent.poll();
             try {
-                skipTo(entry.getKey());
+                skipTo(eventOffset);
             } catch (IOException e) {
-                Log.w(TAG, "Failed to skip to data at: " + entry.getKey() +
-                        " for " + event.getClass().getName() + ", the file may be broken.");
+                Log.w(TAG, "Failed to skip to data at: " + eventOffset +
+                        " for " + EventQueue.describe(eventType) + ", the file may be broken.");
                 continue;
             }
-            if (event instanceof IfdEvent) {
-                mIfdType = ((IfdEvent) event).ifd;
+            if (eventType == EventQueue.TYPE_IFD) {
+                mIfdType = eventArg;
                 mNumOfTagInIfd = mTiffStream.readUnsignedShort();
-                mIfdStartOffset = entry.getKey();
+                mIfdStartOffset = eventOffset;
 
                 if (mNumOfTagInIfd * TAG_SIZE + mIfdStartOffset + OFFSET_SIZE > mApp1End) {
                     Log.w(TAG, "Invalid size of IFD " + mIfdType);
@@ -334,24 +382,25 @@ public class ExifParser {
                 }
 
                 mNeedToParseOffsetsInCurrentIfd = needToParseOffsetsInCurrentIfd();
-                if (((IfdEvent) event).isRequested) {
+                if (isRequested) {
                     return EVENT_START_OF_IFD;
                 } else {
                     skipRemainingTagsInCurrentIfd();
                 }
-            } else if (event instanceof ImageEvent) {
-                mImageEvent = (ImageEvent) event;
-                return mImageEvent.type;
-            } else {
-                ExifTagEvent tagEvent = (ExifTagEvent) event;
-                mTag = tagEvent.tag;
+            } else if (eventType == EventQueue.TYPE_TAG) {
+                mTag = eventTag;
                 if (mTag.getDataType() != com.google.cam2.exif.ExifTag.TYPE_UNDEFINED) {
                     readFullTagValue(mTag);
                     checkOffsetOrImageTag(mTag);
                 }
-                if (tagEvent.isRequested) {
+                if (isRequested) {
                     return EVENT_VALUE_OF_REGISTERED_TAG;
                 }
+            } else {
+                mImageType = eventType == EventQueue.TYPE_COMPRESSED_IMAGE
+                        ? EVENT_COMPRESSED_IMAGE : EVENT_UNCOMPRESSED_STRIP;
+                mStripIndex = eventArg;
+                return mImageType;
             }
         }
         return EVENT_END;
@@ -463,7 +512,7 @@ public class ExifParser {
      * @see #getStripCount()
      */
     protected int getStripIndex() {
-        return mImageEvent.stripIndex;
+        return mStripIndex;
     }
 
     /**
@@ -499,8 +548,8 @@ public class ExifParser {
 
     private void skipTo(int offset) throws IOException {
         mTiffStream.skipTo(offset);
-        while (!mCorrespondingEvent.isEmpty() && mCorrespondingEvent.firstKey() < offset) {
-            mCorrespondingEvent.pollFirstEntry();
+        while (!mCorrespondingEvent.isEmpty() && mCorrespondingEvent.peekOffset() < offset) {
+            mCorrespondingEvent.poll();
         }
     }
 
@@ -515,23 +564,22 @@ public class ExifParser {
      */
     protected void registerForTagValue(com.google.cam2.exif.ExifTag tag) {
         if (tag.getOffset() >= mTiffStream.getReadByteCount()) {
-            mCorrespondingEvent.put(tag.getOffset(), new ExifTagEvent(tag, true));
+            mCorrespondingEvent.addTag(tag.getOffset(), tag, true);
         }
     }
 
     private void registerIfd(int ifdType, long offset) {
         // Cast unsigned int to int since the offset is always smaller
         // than the size of APP1 (65536)
-        mCorrespondingEvent.put((int) offset, new IfdEvent(ifdType, isIfdRequested(ifdType)));
+        mCorrespondingEvent.addIfd((int) offset, ifdType, isIfdRequested(ifdType));
     }
 
     private void registerCompressedImage(long offset) {
-        mCorrespondingEvent.put((int) offset, new ImageEvent(EVENT_COMPRESSED_IMAGE));
+        mCorrespondingEvent.addCompressedImage((int) offset);
     }
 
     private void registerUncompressedStrip(int stripIndex, long offset) {
-        mCorrespondingEvent.put((int) offset, new ImageEvent(EVENT_UNCOMPRESSED_STRIP
-                , stripIndex));
+        mCorrespondingEvent.addUncompressedStrip((int) offset, stripIndex);
     }
 
     private com.google.cam2.exif.ExifTag readTag() throws IOException, ExifInvalidFormatException {
@@ -551,7 +599,8 @@ public class ExifParser {
         // TODO: handle numOfComp overflow
         com.google.cam2.exif.ExifTag tag = new com.google.cam2.exif.ExifTag(tagId, dataFormat, (int) numOfComp, mIfdType,
                 ((int) numOfComp) != com.google.cam2.exif.ExifTag.SIZE_UNDEFINED);
-        int dataSize = tag.getDataSize();
+        // A bogus count can overflow an int size.
+        long dataSize = numOfComp * com.google.cam2.exif.ExifTag.getElementSize(dataFormat);
         if (dataSize > 4) {
             long offset = mTiffStream.readUnsignedInt();
             if (offset > Integer.MAX_VALUE) {
@@ -560,7 +609,10 @@ public class ExifParser {
             }
             // Some invalid images put some undefined data before IFD0.
             // Read the data here.
-            if ((offset < mIfd0Position) && (dataFormat == com.google.cam2.exif.ExifTag.TYPE_UNDEFINED)) {
+            if ((offset < mIfd0Position)
+                    && (dataFormat == com.google.cam2.exif.ExifTag.TYPE_UNDEFINED)
+                    && offset >= DEFAULT_IFD0_OFFSET
+                    && offset - DEFAULT_IFD0_OFFSET + numOfComp <= mDataAboveIfd0.length) {
                 byte[] buf = new byte[(int) numOfComp];
                 System.arraycopy(mDataAboveIfd0, (int) offset - DEFAULT_IFD0_OFFSET,
                         buf, 0, (int) numOfComp);
@@ -628,7 +680,7 @@ public class ExifParser {
                         }
                     }
                 } else {
-                    mCorrespondingEvent.put(tag.getOffset(), new ExifTagEvent(tag, false));
+                    mCorrespondingEvent.addTag(tag.getOffset(), tag, false);
                 }
             }
         } else if (tid == TAG_STRIP_BYTE_COUNTS
@@ -652,26 +704,27 @@ public class ExifParser {
         if (type == com.google.cam2.exif.ExifTag.TYPE_ASCII || type == com.google.cam2.exif.ExifTag.TYPE_UNDEFINED ||
                 type == com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_BYTE) {
             int size = tag.getComponentCount();
-            if (mCorrespondingEvent.size() > 0) {
-                if (mCorrespondingEvent.firstEntry().getKey() < mTiffStream.getReadByteCount()
+            if (!mCorrespondingEvent.isEmpty()) {
+                if (mCorrespondingEvent.peekOffset() < mTiffStream.getReadByteCount()
                         + size) {
-                    Object event = mCorrespondingEvent.firstEntry().getValue();
-                    if (event instanceof ImageEvent) {
+                    int eventType = mCorrespondingEvent.peekType();
+                    if (eventType == EventQueue.TYPE_COMPRESSED_IMAGE
+                            || eventType == EventQueue.TYPE_UNCOMPRESSED_STRIP) {
                         // Tag value overlaps thumbnail, ignore thumbnail.
                         Log.w(TAG, "Thumbnail overlaps value for tag: \n" + tag.toString());
-                        Entry<Integer, Object> entry = mCorrespondingEvent.pollFirstEntry();
-                        Log.w(TAG, "Invalid thumbnail offset: " + entry.getKey());
+                        Log.w(TAG, "Invalid thumbnail offset: " + mCorrespondingEvent.peekOffset());
+                        mCorrespondingEvent.poll();
                     } else {
                         // Tag value overlaps another tag, shorten count
-                        if (event instanceof IfdEvent) {
-                            Log.w(TAG, "Ifd " + ((IfdEvent) event).ifd
+                        if (eventType == EventQueue.TYPE_IFD) {
+                            Log.w(TAG, "Ifd " + mCorrespondingEvent.peekArg()
                                     + " overlaps value for tag: \n" + tag.toString());
-                        } else if (event instanceof ExifTagEvent) {
+                        } else {
                             Log.w(TAG, "Tag value for tag: \n"
-                                    + ((ExifTagEvent) event).tag.toString()
+                                    + mCorrespondingEvent.peekTag().toString()
                                     + " overlaps value for tag: \n" + tag.toString());
                         }
-                        size = mCorrespondingEvent.firstEntry().getKey()
+                        size = mCorrespondingEvent.peekOffset()
                                 - mTiffStream.getReadByteCount();
                         Log.w(TAG, "Invalid size of tag: \n" + tag.toString()
                                 + " setting count to: " + size);
@@ -680,6 +733,9 @@ public class ExifParser {
                 }
             }
         }
+        if (!checkTagValueBounds(tag)) {
+            return;
+        }
         switch (tag.getDataType()) {
             case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_BYTE:
             case com.google.cam2.exif.ExifTag.TYPE_UNDEFINED: {
@@ -693,42 +749,32 @@ public class ExifParser {
                 break;
             case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_LONG: {
                 long value[] = new long[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readUnsignedLong();
-                }
+                mTiffStream.readInts(value, false);
                 tag.setValue(value);
             }
                 break;
             case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_RATIONAL: {
-                com.google.cam2.exif.Rational value[] = new com.google.cam2.exif.Rational[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readUnsignedRational();
-                }
-                tag.setValue(value);
+                long value[] = new long[2 * tag.getComponentCount()];
+                mTiffStream.readInts(value, false);
+                tag.setRationalValues(value);
             }
                 break;
             case com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_SHORT: {
                 int value[] = new int[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readUnsignedShort();
-                }
+                mTiffStream.readUnsignedShorts(value);
                 tag.setValue(value);
             }
                 break;
             case com.google.cam2.exif.ExifTag.TYPE_LONG: {
                 int value[] = new int[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readLong();
-                }
+                mTiffStream.readInts(value);
                 tag.setValue(value);
             }
                 break;
             case com.google.cam2.exif.ExifTag.TYPE_RATIONAL: {
-                com.google.cam2.exif.Rational value[] = new com.google.cam2.exif.Rational[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readRational();
-                }
-                tag.setValue(value);
+                long value[] = new long[2 * tag.getComponentCount()];
+                mTiffStream.readInts(value, true);
+                tag.setRationalValues(value);
             }
                 break;
         }
@@ -737,6 +783,36 @@ public class ExifParser {
         }
     }
 
+    /**
+     * Checks that a value of more than 4 bytes, read from the current position,
+     * lies within the APP1 segment, as ExifBufferParser does, so that a bogus
+     * count cannot make the value arrays allocated for it run past the end of
+     * the Exif header. Byte and string values that run past its end are
+     * shortened. Returns false if the value cannot be read at all.
+     */
+    private boolean checkTagValueBounds(com.google.cam2.exif.ExifTag tag) {
+        long dataSize = (long) tag.getComponentCount()
+                * com.google.cam2.exif.ExifTag.getElementSize(tag.getDataType());
+        // mApp1End counts two bytes past the end of the segment.
+        int remaining = mApp1End - 2 - mTiffStream.getReadByteCount();
+        if (dataSize <= 4 || dataSize <= remaining) {
+            return true;
+        }
+        short type = tag.getDataType();
+        if ((type == com.google.cam2.exif.ExifTag.TYPE_ASCII
+                || type == com.google.cam2.exif.ExifTag.TYPE_UNDEFINED
+                || type == com.google.cam2.exif.ExifTag.TYPE_UNSIGNED_BYTE) && remaining >= 0) {
+            // Tag value runs past the end of APP1, shorten count
+            Log.w(TAG, "Invalid size of tag: \n" + tag.toString()
+                    + " setting count to: " + remaining);
+            tag.forceSetComponentCount(remaining);
+            return true;
+        }
+        Log.w(TAG, "Failed to read data at: " + mTiffStream.getReadByteCount()
+                + " for tag: \n" + tag.toString() + ", the file may be broken.");
+        return false;
+    }
+
     private void parseTiffHeader() throws IOException,
             ExifInvalidFormatException {
         short byteOrder = mTiffStream.readShort();
@@ -759,9 +835,30 @@ public class ExifParser {
         if (dataStream.readShort() != JpegHeader.SOI) {
             throw new ExifInvalidFormatException("Invalid JPEG format");
         }
+        return walkSegments(dataStream, true);
+    }
 
+    private static short readMarker(CountedDataInputStream dataStream) throws IOException {
         short marker = dataStream.readShort();
-        while (marker != JpegHeader.EOI
+        while (marker == JpegHeader.FILL) {
+            int next = dataStream.read();
+            if (next < 0) {
+                throw new EOFException();
+            }
+            marker = (short) (0xff00 | next);
+        }
+        return marker;
+    }
+
+    /**
+     * Walks the segments ahead of the frame, keeping the first XMP packet and
+     * the chunks of the ICC profile found. Stops at the APP1 segment with Exif
+     * data and returns true if findExif is set.
+     */
+    private boolean walkSegments(CountedDataInputStream dataStream, boolean findExif)
+            throws IOException {
+        short marker = readMarker(dataStream);
+        while (marker != JpegHeader.EOI && marker != JpegHeader.SOS
                 && !JpegHeader.isSofMarker(marker)) {
             int length = dataStream.readUnsignedShort();
             // Some invalid formatted image contains multiple APP1,
@@ -773,23 +870,157 @@ public class ExifParser {
                     header = dataStream.readInt();
                     headerTail = dataStream.readShort();
                     length -= 6;
-                    if (header == EXIF_HEADER && headerTail == EXIF_HEADER_TAIL) {
+                    if (findExif && header == EXIF_HEADER && headerTail == EXIF_HEADER_TAIL) {
                         mTiffStartPosition = dataStream.getReadByteCount();
                         mApp1End = length;
                         mOffsetToApp1EndFromSOF = mTiffStartPosition + mApp1End;
                         return true;
                     }
+                    if (header == XMP_HEADER_START
+                            && length - 2 >= XMP_HEADER.length - 6) {
+                        try {
+                            length -= readXmpSegment(dataStream, header, headerTail,
+                                    length - 2);
+                        } catch (EOFException e) {
+                            Log.w(TAG, "Invalid JPEG format.");
+                            return false;
+                        }
+                    }
+                }
+            } else if (marker == JpegHeader.APP2 && length - 2 >= ICC_HEADER.length + 2) {
+                try {
+                    length -= readIccSegment(dataStream, length - 2);
+                } catch (EOFException e) {
+                    Log.w(TAG, "Invalid JPEG format.");
+                    return false;
                 }
             }
             if (length < 2 || (length - 2) != dataStream.skip(length - 2)) {
                 Log.w(TAG, "Invalid JPEG format.");
                 return false;
             }
-            marker = dataStream.readShort();
+            marker = readMarker(dataStream);
         }
         return false;
     }
 
+    /**
+     * Reads the rest of an APP1 segment starting with "http:/", and the packet
+     * that follows if it is the first XMP one. Returns the number of bytes
+     * read.
+     */
+    private int readXmpSegment(CountedDataInputStream dataStream, int header, short headerTail,
+            int remaining) throws IOException {
+        byte[] buf = new byte[XMP_HEADER.length];
+        buf[0] = (byte) (header >> 24);
+        buf[1] = (byte) (header >> 16);
+        buf[2] = (byte) (header >> 8);
+        buf[3] = (byte) header;
+        buf[4] = (byte) (headerTail >> 8);
+        buf[5] = (byte) headerTail;
+        dataStream.readOrThrow(buf, 6, buf.length - 6);
+        if (mXmpPacket != null || !Arrays.equals(buf, XMP_HEADER)) {
+            return buf.length - 6;
+        }
+        byte[] packet = new byte[remaining - (buf.length - 6)];
+        dataStream.readOrThrow(packet);
+        mXmpPacket = packet;
+        return remaining;
+    }
+
+    /**
+     * Reads the header of an APP2 segment, and the chunk of ICC profile that
+     * follows if it is an ICC one. Returns the number of bytes read.
+     */
+    private int readIccSegment(CountedDataInputStream dataStream, int remaining)
+            throws IOException {
+        byte[] buf = new byte[ICC_HEADER.length];
+        dataStream.readOrThrow(buf);
+        if (!Arrays.equals(buf, ICC_HEADER)) {
+            return buf.length;
+        }
+        int number = dataStream.read();
+        int count = dataStream.read();
+        if (number < 0 || count < 0) {
+            throw new EOFException();
+        }
+        byte[] chunk = new byte[remaining - buf.length - 2];
+        dataStream.readOrThrow(chunk);
+        if (mIccChunks == null && count > 0) {
+            mIccChunks = new byte[count][];
+        }
+        if (mIccChunks == null || count != mIccChunks.length || number < 1 || number > count
+                || mIccChunks[number - 1] != null) {
+            Log.w(TAG, "Invalid ICC profile chunk " + number + " of " + count);
+        } else {
+            mIccChunks[number - 1] = chunk;
+        }
+        return remaining;
+    }
+
+    /**
+     * Skips the rest of the Exif header and picks up the walk over the
+     * segments ahead of the frame where {@link #seekTiffData} stopped, to find
+     * the XMP packet and ICC profile chunks placed after the Exif header. Must
+     * only be called once {@link #next()} has returned {@link #EVENT_END}.
+     */
+    protected void readSegmentsAfterExif() throws IOException {
+        if (mSegmentsWalked || !mContainExifData) {
+            return;
+        }
+        mSegmentsWalked = true;
+        // mApp1End counts two bytes past the end of the segment.
+        int remaining = mApp1End - 2 - mTiffStream.getReadByteCount();
+        if (remaining < 0) {
+            Log.w(TAG, "Read past the end of the Exif header, skipping other segments");
+            return;
+        }
+        try {
+            mTiffStream.skipOrThrow(remaining);
+            mTiffStream.setByteOrder(ByteOrder.BIG_ENDIAN);
+            walkSegments(mTiffStream, false);
+        } catch (EOFException e) {
+            Log.w(TAG, "Failed to read segments after exif, the file may be broken.");
+        }
+    }
+
+    /**
+     * Returns the XMP packet found by the segment walk, or null if there is
+     * none.
+     *
+     * @see #readSegmentsAfterExif()
+     */
+    protected byte[] getXmpPacket() {
+        return mXmpPacket;
+    }
+
+    /**
+     * Returns the ICC profile reassembled from the chunks found by the segment
+     * walk, or null if there is none or a chunk is missing.
+     *
+     * @see #readSegmentsAfterExif()
+     */
+    protected byte[] getIccProfile() {
+        if (mIccChunks == null) {
+            return null;
+        }
+        int size = 0;
+        for (byte[] chunk : mIccChunks) {
+            if (chunk == null) {
+                Log.w(TAG, "Incomplete ICC profile");
+                return null;
+            }
+            size += chunk.length;
+        }
+        byte[] profile = new byte[size];
+        int offset = 0;
+        for (byte[] chunk : mIccChunks) {
+            System.arraycopy(chunk, 0, profile, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return profile;
+    }
+
     protected int getOffsetToExifEndFromSOF() {
         return mOffsetToApp1EndFromSOF;
     }
@@ -876,38 +1107,157 @@ public class ExifParser {
         return new Rational(nomi, denomi);
     }
 
-    private static class ImageEvent {
-        int stripIndex;
-        int type;
+    /**
+     * A min-heap of the events registered at offsets ahead of the stream,
+     * ordered by offset. Events are kept in parallel primitive arrays so that
+     * registering one does not allocate. As with a sorted map keyed by offset,
+     * an event registered at the offset of a pending one replaces it.
+     */
+    private static class EventQueue {
+        static final int TYPE_IFD = 0;
+        static final int TYPE_TAG = 1;
+        static final int TYPE_COMPRESSED_IMAGE = 2;
+        static final int TYPE_UNCOMPRESSED_STRIP = 3;
+
+        private static final int DEFAULT_CAPACITY = 16;
+
+        // The offset in the high half and the bitwise complement of the
+        // insertion sequence in the low half, so that among events at the same
+        // offset the last registered one is at the top.
+        private long[] mKeys = new long[DEFAULT_CAPACITY];
+        private int[] mTypes = new int[DEFAULT_CAPACITY];
+        // IFD id for TYPE_IFD, strip index for TYPE_UNCOMPRESSED_STRIP.
+        private int[] mArgs = new int[DEFAULT_CAPACITY];
+        private boolean[] mRequested = new boolean[DEFAULT_CAPACITY];
+        private com.google.cam2.exif.ExifTag[] mTags = new com.google.cam2.exif.ExifTag[DEFAULT_CAPACITY];
+        private int mSize = 0;
+        private int mSequence = 0;
+
+        static String describe(int type) {
+            switch (type) {
+                case TYPE_IFD:
+                    return "IFD";
+                case TYPE_TAG:
+                    return "tag value";
+                default:
+                    return "thumbnail";
+            }
+        }
 
-        ImageEvent(int type) {
-            this.stripIndex = 0;
-            this.type = type;
+        void addIfd(int offset, int ifd, boolean requested) {
+            add(offset, TYPE_IFD, ifd, requested, null);
         }
 
-        ImageEvent(int type, int stripIndex) {
-            this.type = type;
-            this.stripIndex = stripIndex;
+        void addTag(int offset, com.google.cam2.exif.ExifTag tag, boolean requested) {
+            add(offset, TYPE_TAG, 0, requested, tag);
+        }
+
+        void addCompressedImage(int offset) {
+            add(offset, TYPE_COMPRESSED_IMAGE, 0, false, null);
         }
-    }
 
-    private static class IfdEvent {
-        int ifd;
-        boolean isRequested;
+        void addUncompressedStrip(int offset, int stripIndex) {
+            add(offset, TYPE_UNCOMPRESSED_STRIP, stripIndex, false, null);
+        }
 
-        IfdEvent(int ifd, boolean isInterestedIfd) {
-            this.ifd = ifd;
-            this.isRequested = isInterestedIfd;
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        int peekOffset() {
+            return (int) (mKeys[0] >>> 32);
+        }
+
+        int peekType() {
+            return mTypes[0];
+        }
+
+        int peekArg() {
+            return mArgs[0];
+        }
+
+        boolean peekRequested() {
+            return mRequested[0];
+        }
+
+        com.google.cam2.exif.ExifTag peekTag() {
+            return mTags[0];
+        }
+
+        /**
+         * Removes the first event together with any it has replaced.
+         */
+        void poll() {
+            int offset = peekOffset();
+            removeFirst();
+            while (mSize > 0 && peekOffset() == offset) {
+                removeFirst();
+            }
+        }
+
+        private void add(int offset, int type, int arg, boolean requested,
+                com.google.cam2.exif.ExifTag tag) {
+            if (mSize == mKeys.length) {
+                int capacity = mSize * 2;
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mTypes = Arrays.copyOf(mTypes, capacity);
+                mArgs = Arrays.copyOf(mArgs, capacity);
+                mRequested = Arrays.copyOf(mRequested, capacity);
+                mTags = Arrays.copyOf(mTags, capacity);
+            }
+            long key = ((long) offset << 32) | (~mSequence++ & 0xffffffffL);
+            int i = mSize++;
+            // Sift up.
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (mKeys[parent] <= key) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+            set(i, key, type, arg, requested, tag);
         }
-    }
 
-    private static class ExifTagEvent {
-        com.google.cam2.exif.ExifTag tag;
-        boolean isRequested;
+        private void removeFirst() {
+            int last = --mSize;
+            long key = mKeys[last];
+            int type = mTypes[last];
+            int arg = mArgs[last];
+            boolean requested = mRequested[last];
+            com.google.cam2.exif.ExifTag tag = mTags[last];
+            mTags[last] = null;
+            if (last == 0) {
+                return;
+            }
+            // Sift the last event down from the root.
+            int i = 0;
+            int half = last >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < last && mKeys[child + 1] < mKeys[child]) {
+                    child++;
+                }
+                if (key <= mKeys[child]) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            set(i, key, type, arg, requested, tag);
+        }
+
+        private void move(int from, int to) {
+            set(to, mKeys[from], mTypes[from], mArgs[from], mRequested[from], mTags[from]);
+        }
 
-        ExifTagEvent(ExifTag tag, boolean isRequireByUser) {
-            this.tag = tag;
-            this.isRequested = isRequireByUser;
+        private void set(int i, long key, int type, int arg, boolean requested,
+                com.google.cam2.exif.ExifTag tag) {
+            mKeys[i] = key;
+            mTypes[i] = type;
+            mArgs[i] = arg;
+            mRequested[i] = requested;
+            mTags[i] = tag;
         }
     }
 
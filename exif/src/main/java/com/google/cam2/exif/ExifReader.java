@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import com.google.cam2.exif.*;
+import com.google.cam2.exif.ExifParser;
+import com.google.cam2.exif.ExifTag;
+import com.google.cam2.exif.IfdData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class reads the EXIF header of a JPEG file and stores it in
+ * {@link com.google.cam2.exif.ExifData}.
+ */
+class ExifReader {
+    private static final String TAG = "ExifReader";
+
+    private static final short TAG_EXIF_IFD = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
+    private static final short TAG_GPS_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_IFD);
+    private static final short TAG_INTEROPERABILITY_IFD = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_INTEROPERABILITY_IFD);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+    private static final short TAG_STRIP_OFFSETS = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_STRIP_OFFSETS);
+    private static final short TAG_STRIP_BYTE_COUNTS = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_STRIP_BYTE_COUNTS);
+
+    private final ExifInterface mInterface;
+
+    // State of the random-access walk in read(ByteBuffer).
+    private int mVisitedIfds;
+    private com.google.cam2.exif.ExifTag mJpegOffsetTag;
+    private com.google.cam2.exif.ExifTag mJpegSizeTag;
+    private com.google.cam2.exif.ExifTag mStripOffsetsTag;
+    private com.google.cam2.exif.ExifTag mStripSizeTag;
+
+    // Objects kept between reads by read(ByteBuffer, ExifData). Tags are
+    // recorded in the order they are read, so that reading a file with the
+    // same layout again hands each one out for the same entry.
+    private boolean mRecycling;
+    private ExifBufferParser mParser;
+    private com.google.cam2.exif.ExifTag[] mReadTags = new com.google.cam2.exif.ExifTag[0];
+    private int mReadTagCount;
+    private com.google.cam2.exif.ExifTag[] mSpareTags = new com.google.cam2.exif.ExifTag[0];
+    private int mSpareTagCount;
+    private int mSpareTagIndex;
+    private byte[] mSpareThumbnail;
+
+    ExifReader(ExifInterface iRef) {
+        mInterface = iRef;
+    }
+
+    /**
+     * Parses the inputStream and and returns the EXIF data in an
+     * {@link com.google.cam2.exif.ExifData}.
+     *
+     * @throws ExifInvalidFormatException
+     * @throws IOException
+     */
+    protected com.google.cam2.exif.ExifData read(InputStream inputStream) throws ExifInvalidFormatException,
+            IOException {
+        com.google.cam2.exif.ExifParser parser = com.google.cam2.exif.ExifParser.parse(inputStream, mInterface);
+        com.google.cam2.exif.ExifData exifData = new com.google.cam2.exif.ExifData(parser.getByteOrder());
+        com.google.cam2.exif.ExifTag tag = null;
+
+        int event = parser.next();
+        while (event != com.google.cam2.exif.ExifParser.EVENT_END) {
+            switch (event) {
+                case com.google.cam2.exif.ExifParser.EVENT_START_OF_IFD:
+                    exifData.addIfdData(new com.google.cam2.exif.IfdData(parser.getCurrentIfd()));
+                    break;
+                case com.google.cam2.exif.ExifParser.EVENT_NEW_TAG:
+                    tag = parser.getTag();
+                    if (!tag.hasValue()) {
+                        parser.registerForTagValue(tag);
+                    } else {
+                        exifData.getIfdData(tag.getIfd()).setTag(tag);
+                    }
+                    break;
+                case com.google.cam2.exif.ExifParser.EVENT_VALUE_OF_REGISTERED_TAG:
+                    tag = parser.getTag();
+                    if (tag.getDataType() == ExifTag.TYPE_UNDEFINED) {
+                        parser.readFullTagValue(tag);
+                    }
+                    exifData.getIfdData(tag.getIfd()).setTag(tag);
+                    break;
+                case com.google.cam2.exif.ExifParser.EVENT_COMPRESSED_IMAGE:
+                    byte buf[] = new byte[parser.getCompressedImageSize()];
+                    if (buf.length == parser.read(buf)) {
+                        exifData.setCompressedThumbnail(buf);
+                    } else {
+                        Log.w(TAG, "Failed to read the compressed thumbnail");
+                    }
+                    break;
+                case ExifParser.EVENT_UNCOMPRESSED_STRIP:
+                    buf = new byte[parser.getStripSize()];
+                    if (buf.length == parser.read(buf)) {
+                        exifData.setStripBytes(parser.getStripIndex(), buf);
+                    } else {
+                        Log.w(TAG, "Failed to read the strip bytes");
+                    }
+                    break;
+            }
+            event = parser.next();
+        }
+        parser.readSegmentsAfterExif();
+        exifData.setXmpPacket(parser.getXmpPacket());
+        exifData.setIccProfile(parser.getIccProfile());
+        return exifData;
+    }
+
+    /**
+     * Parses the inputStream for the given tags only and returns them in an
+     * {@link com.google.cam2.exif.ExifData}. Only the IFDs holding the wanted
+     * tags are walked, the values of other tags and the thumbnail are never
+     * read, and reading stops as soon as every wanted tag has been found.
+     * The inputStream is left wherever parsing stopped.
+     *
+     * @param wantedTags tag constants defined in {@link ExifInterface}.
+     * @throws ExifInvalidFormatException
+     * @throws IOException
+     */
+    protected ExifData read(InputStream inputStream, int[] wantedTags)
+            throws ExifInvalidFormatException, IOException {
+        int[] wanted = wantedTags.clone();
+        Arrays.sort(wanted);
+        int remaining = 0;
+        for (int i = 0; i < wanted.length; i++) {
+            if (remaining == 0 || wanted[i] != wanted[remaining - 1]) {
+                wanted[remaining++] = wanted[i];
+            }
+        }
+        wanted = Arrays.copyOf(wanted, remaining);
+        boolean[] found = new boolean[remaining];
+
+        ExifParser parser = ExifParser.parse(inputStream,
+                ExifParser.getOptionsForTags(wanted), mInterface);
+        ExifData exifData = new ExifData(parser.getByteOrder());
+        ExifTag tag = null;
+
+        int event = parser.next();
+        while (event != ExifParser.EVENT_END && remaining > 0) {
+            switch (event) {
+                case ExifParser.EVENT_START_OF_IFD:
+                    exifData.addIfdData(new IfdData(parser.getCurrentIfd()));
+                    break;
+                case ExifParser.EVENT_NEW_TAG:
+                    tag = parser.getTag();
+                    int index = Arrays.binarySearch(wanted,
+                            ExifInterface.defineTag(tag.getIfd(), tag.getTagId()));
+                    if (index < 0) {
+                        break;
+                    }
+                    if (!tag.hasValue()) {
+                        parser.registerForTagValue(tag);
+                    } else {
+                        exifData.getIfdData(tag.getIfd()).setTag(tag);
+                        if (!found[index]) {
+                            found[index] = true;
+                            remaining--;
+                        }
+                    }
+                    break;
+                case ExifParser.EVENT_VALUE_OF_REGISTERED_TAG:
+                    tag = parser.getTag();
+                    if (tag.getDataType() == ExifTag.TYPE_UNDEFINED) {
+                        parser.readFullTagValue(tag);
+                    }
+                    exifData.getIfdData(tag.getIfd()).setTag(tag);
+                    index = Arrays.binarySearch(wanted,
+                            ExifInterface.defineTag(tag.getIfd(), tag.getTagId()));
+                    if (!found[index]) {
+                        found[index] = true;
+                        remaining--;
+                    }
+                    break;
+            }
+            if (remaining > 0) {
+                event = parser.next();
+            }
+        }
+        return exifData;
+    }
+
+    /**
+     * Parses the JPEG held in the given buffer by absolute offset and returns
+     * the EXIF data in an {@link com.google.cam2.exif.ExifData}. The position of
+     * the buffer is not changed.
+     *
+     * @throws ExifInvalidFormatException
+     */
+    protected com.google.cam2.exif.ExifData read(ByteBuffer jpeg) throws ExifInvalidFormatException {
+        return read(jpeg, null);
+    }
+
+    /**
+     * Like {@link #read(ByteBuffer)}, but fills the given ExifData instead of
+     * a new one. Its IFDs and thumbnail array, the tags returned by earlier
+     * calls to this method and their value arrays are reused where the new
+     * data has the same layout, so none of them may be used by the caller
+     * afterwards.
+     *
+     * @param recycled the ExifData to fill, or null to create a new one and
+     *            recycle nothing.
+     * @throws ExifInvalidFormatException
+     */
+    protected com.google.cam2.exif.ExifData read(ByteBuffer jpeg,
+            com.google.cam2.exif.ExifData recycled) throws ExifInvalidFormatException {
+        mRecycling = recycled != null;
+        ExifBufferParser parser;
+        if (!mRecycling) {
+            parser = ExifBufferParser.parse(jpeg, mInterface);
+        } else if (mParser == null) {
+            parser = mParser = ExifBufferParser.parse(jpeg, mInterface);
+        } else {
+            parser = mParser;
+            parser.reset(jpeg, ExifBufferParser.DEFAULT_OPTIONS);
+        }
+        if (!parser.containsExifData()) {
+            com.google.cam2.exif.ExifData exifData = recycled;
+            if (!mRecycling) {
+                exifData = new com.google.cam2.exif.ExifData(ExifInterface.DEFAULT_BYTE_ORDER);
+            } else {
+                recycled.clear(ExifInterface.DEFAULT_BYTE_ORDER);
+            }
+            readXmp(parser, jpeg, exifData);
+            readIcc(parser, jpeg, exifData);
+            return exifData;
+        }
+        com.google.cam2.exif.ExifData exifData;
+        if (!mRecycling) {
+            exifData = new com.google.cam2.exif.ExifData(parser.getByteOrder());
+        } else {
+            // A copy of the ExifData may hold on to the thumbnail.
+            if (!recycled.isShared()) {
+                mSpareThumbnail = recycled.getCompressedThumbnail();
+            }
+            recycled.clear(parser.getByteOrder());
+            exifData = recycled;
+            com.google.cam2.exif.ExifTag[] tags = mSpareTags;
+            mSpareTags = mReadTags;
+            mSpareTagCount = mReadTagCount;
+            mSpareTagIndex = 0;
+            mReadTags = tags;
+            mReadTagCount = 0;
+        }
+        mVisitedIfds = 0;
+        mJpegOffsetTag = mJpegSizeTag = mStripOffsetsTag = mStripSizeTag = null;
+
+        readIfd(parser, exifData, IfdId.TYPE_IFD_0, parser.getIfd0Offset());
+
+        if (parser.isThumbnailRequested()) {
+            readThumbnail(parser, exifData);
+        }
+        if (mRecycling) {
+            // Tags of the last read that were not reused are dropped.
+            Arrays.fill(mSpareTags, 0, mSpareTagCount, null);
+            mSpareTagCount = 0;
+            mSpareThumbnail = null;
+        }
+        readXmp(parser, jpeg, exifData);
+        readIcc(parser, jpeg, exifData);
+        return exifData;
+    }
+
+    /**
+     * Sets the XMP packet found by the parser, if any, on the ExifData. It is
+     * only located here and copied on first access if lazy decoding is on.
+     */
+    private void readXmp(ExifBufferParser parser, ByteBuffer jpeg,
+            com.google.cam2.exif.ExifData exifData) {
+        int length = parser.getXmpLength();
+        if (length < 0) {
+            return;
+        }
+        int offset = jpeg.position() + parser.getXmpOffset();
+        if (mInterface != null && mInterface.isLazyDecoding()) {
+            exifData.setXmpPacket(jpeg, offset, length);
+        } else {
+            exifData.copyXmpPacket(jpeg, offset, length);
+        }
+    }
+
+    /**
+     * Sets the ICC profile found by the parser, if any, on the ExifData. Its
+     * chunks are only located here and reassembled on first access if lazy
+     * decoding is on.
+     */
+    private void readIcc(ExifBufferParser parser, ByteBuffer jpeg,
+            com.google.cam2.exif.ExifData exifData) {
+        int count = parser.getIccChunkCount();
+        if (count == 0) {
+            return;
+        }
+        if (mInterface != null && mInterface.isLazyDecoding()) {
+            exifData.setIccProfile(jpeg, jpeg.position(), parser.getIccChunkOffsets(),
+                    parser.getIccChunkLengths(), count);
+        } else {
+            exifData.copyIccProfile(jpeg, jpeg.position(), parser.getIccChunkOffsets(),
+                    parser.getIccChunkLengths(), count);
+        }
+    }
+
+    private void readIfd(ExifBufferParser parser, com.google.cam2.exif.ExifData exifData, int ifdType,
+            long offset) throws ExifInvalidFormatException {
+        // Each IFD is read at most once, this also guards against loops.
+        if ((mVisitedIfds & (1 << ifdType)) != 0 || offset <= 0 || offset > Integer.MAX_VALUE) {
+            return;
+        }
+        mVisitedIfds |= 1 << ifdType;
+        int ifdOffset = (int) offset;
+        int tagCount = parser.getTagCountOfIfd(ifdOffset);
+        if (tagCount < 0) {
+            Log.w(TAG, "Invalid size of IFD " + ifdType);
+            return;
+        }
+        com.google.cam2.exif.IfdData ifdData = null;
+        if (parser.isIfdRequested(ifdType)) {
+            ifdData = exifData.getOrCreateIfdData(ifdType);
+        }
+        for (int i = 0; i < tagCount; i++) {
+            com.google.cam2.exif.ExifTag spare = null;
+            if (mRecycling && mSpareTagIndex < mSpareTagCount) {
+                spare = mSpareTags[mSpareTagIndex];
+            }
+            com.google.cam2.exif.ExifTag tag = parser.readTag(ifdOffset, i, ifdType, spare);
+            if (tag == null) {
+                continue;
+            }
+            if (mRecycling) {
+                if (tag == spare) {
+                    mSpareTagIndex++;
+                }
+                recordTag(tag);
+            }
+            if (ifdData != null) {
+                ifdData.setTag(tag);
+            }
+            followOffsetTag(parser, exifData, tag);
+        }
+        // There is a link to ifd1 at the end of ifd0
+        if (ifdType == IfdId.TYPE_IFD_0
+                && (parser.isIfdRequested(IfdId.TYPE_IFD_1) || parser.isThumbnailRequested())) {
+            readIfd(parser, exifData, IfdId.TYPE_IFD_1,
+                    parser.getOffsetToNextIfd(ifdOffset, tagCount));
+        }
+    }
+
+    private void recordTag(com.google.cam2.exif.ExifTag tag) {
+        if (mReadTagCount == mReadTags.length) {
+            mReadTags = Arrays.copyOf(mReadTags, Math.max(16, 2 * mReadTagCount));
+        }
+        mReadTags[mReadTagCount++] = tag;
+    }
+
+    /**
+     * If the tag is one of the offset tags that points to an IFD or image the
+     * caller is interested in, reads the IFD or remembers the image location.
+     */
+    private void followOffsetTag(ExifBufferParser parser, com.google.cam2.exif.ExifData exifData,
+            com.google.cam2.exif.ExifTag tag) throws ExifInvalidFormatException {
+        short tid = tag.getTagId();
+        if (!isOffsetTag(tid)) {
+            return;
+        }
+        // Some invalid formattd image contains tag with 0 size.
+        if (tag.getComponentCount() == 0 || !tag.hasValue()) {
+            return;
+        }
+        int ifd = tag.getIfd();
+        if (tid == TAG_EXIF_IFD && parser.checkAllowed(ifd, ExifInterface.TAG_EXIF_IFD)) {
+            if (parser.isIfdRequested(IfdId.TYPE_IFD_EXIF)
+                    || parser.isIfdRequested(IfdId.TYPE_IFD_INTEROPERABILITY)) {
+                readIfd(parser, exifData, IfdId.TYPE_IFD_EXIF, tag.getValueAt(0));
+            }
+        } else if (tid == TAG_GPS_IFD && parser.checkAllowed(ifd, ExifInterface.TAG_GPS_IFD)) {
+            if (parser.isIfdRequested(IfdId.TYPE_IFD_GPS)) {
+                readIfd(parser, exifData, IfdId.TYPE_IFD_GPS, tag.getValueAt(0));
+            }
+        } else if (tid == TAG_INTEROPERABILITY_IFD
+                && parser.checkAllowed(ifd, ExifInterface.TAG_INTEROPERABILITY_IFD)) {
+            if (parser.isIfdRequested(IfdId.TYPE_IFD_INTEROPERABILITY)) {
+                readIfd(parser, exifData, IfdId.TYPE_IFD_INTEROPERABILITY, tag.getValueAt(0));
+            }
+        } else if (tid == TAG_JPEG_INTERCHANGE_FORMAT
+                && parser.checkAllowed(ifd, ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT)) {
+            mJpegOffsetTag = tag;
+        } else if (tid == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH
+                && parser.checkAllowed(ifd, ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)) {
+            mJpegSizeTag = tag;
+        } else if (tid == TAG_STRIP_OFFSETS && parser.checkAllowed(ifd, ExifInterface.TAG_STRIP_OFFSETS)) {
+            mStripOffsetsTag = tag;
+        } else if (tid == TAG_STRIP_BYTE_COUNTS
+                && parser.checkAllowed(ifd, ExifInterface.TAG_STRIP_BYTE_COUNTS)) {
+            mStripSizeTag = tag;
+        }
+    }
+
+    // Checked before anything else so that the values of other tags are not
+    // decoded when lazy decoding is enabled.
+    private static boolean isOffsetTag(short tid) {
+        return tid == TAG_EXIF_IFD || tid == TAG_GPS_IFD || tid == TAG_INTEROPERABILITY_IFD
+                || tid == TAG_JPEG_INTERCHANGE_FORMAT
+                || tid == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH
+                || tid == TAG_STRIP_OFFSETS || tid == TAG_STRIP_BYTE_COUNTS;
+    }
+
+    private void readThumbnail(ExifBufferParser parser, com.google.cam2.exif.ExifData exifData) {
+        if (mJpegOffsetTag != null) {
+            int size = mJpegSizeTag == null ? 0 : (int) mJpegSizeTag.getValueAt(0);
+            byte buf[] = parser.getBytes((int) mJpegOffsetTag.getValueAt(0), size,
+                    mSpareThumbnail);
+            if (buf != null) {
+                exifData.setCompressedThumbnail(buf);
+            } else {
+                Log.w(TAG, "Failed to read the compressed thumbnail");
+            }
+        } else if (mStripOffsetsTag != null && mStripSizeTag != null) {
+            for (int i = 0, n = mStripOffsetsTag.getComponentCount(); i < n; i++) {
+                int size = (int) mStripSizeTag.getValueAt(
+                        i < mStripSizeTag.getComponentCount() ? i : 0);
+                byte buf[] = parser.getBytes((int) mStripOffsetsTag.getValueAt(i), size);
+                if (buf != null) {
+                    exifData.setStripBytes(i, buf);
+                } else {
+                    Log.w(TAG, "Failed to read the strip bytes");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * This class encodes an {@link ExifData} as a complete APP1 segment. The size
+ * of the segment is computed up front and every field is stored with an
+ * absolute put into a single buffer of exactly that size.
+ * <p>
+ * The IFD and thumbnail offset tags, the thumbnail length tags and the padding
+ * tag are generated for each call and merged with the tags of the ExifData as
+ * the IFDs are written; tags without a value are left out. The ExifData itself
+ * is only read, so the same instance can be serialized any number of times.
+ */
+class ExifSerializer {
+    private static final String TAG = "ExifSerializer";
+    private static final boolean DEBUG = false;
+
+    private static final int EXIF_HEADER = 0x45786966;
+    private static final short TIFF_HEADER = 0x002A;
+    private static final short TIFF_BIG_ENDIAN = 0x4d4d;
+    private static final short TIFF_LITTLE_ENDIAN = 0x4949;
+    private static final int TIFF_HEADER_SIZE = 8;
+    // APP1 marker, length, and the "Exif\0\0" header ahead of the TIFF header.
+    private static final int APP1_HEADER_SIZE = 10;
+    private static final int MAX_EXIF_SIZE = 65535;
+    // Largest ICC profile chunk that fits an APP2 segment after its length,
+    // the "ICC_PROFILE\0" header and the chunk number and count.
+    protected static final int MAX_ICC_CHUNK_SIZE = MAX_EXIF_SIZE - 2 - 14;
+    // Size of the IFD entry count and of the link to the next IFD.
+    private static final int IFD_COUNT_SIZE = 2;
+    private static final int IFD_LINK_SIZE = 4;
+
+    // The order in which IFDs are laid out after the TIFF header.
+    private static final int[] IFD_ORDER = {
+            IfdId.TYPE_IFD_0, IfdId.TYPE_IFD_EXIF, IfdId.TYPE_IFD_INTEROPERABILITY,
+            IfdId.TYPE_IFD_GPS, IfdId.TYPE_IFD_1
+    };
+
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+    private static final short TAG_STRIP_BYTE_COUNTS = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_STRIP_BYTE_COUNTS);
+    private static final short TAG_PADDING = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_PADDING);
+
+    private static final ExifTag[] NO_TAGS = new ExifTag[0];
+
+    private final ExifInterface mInterface;
+    private int mPadding;
+
+    protected ExifSerializer(ExifInterface iRef) {
+        mInterface = iRef;
+        mPadding = iRef.getExifPadding();
+    }
+
+    /**
+     * Sets the number of bytes to reserve in the Exif header as the value of a
+     * {@link ExifInterface#TAG_PADDING} tag in IFD0, replacing any padding tag
+     * in the ExifData. 0 writes the ExifData as it is. Defaults to
+     * {@link ExifInterface#getExifPadding()}.
+     */
+    protected void setPadding(int padding) {
+        mPadding = padding;
+    }
+
+    /**
+     * Encodes the given XMP packet as an APP1 segment, starting with its
+     * marker. The returned buffer holds exactly the segment between position
+     * 0 and its limit.
+     *
+     * @param direct whether to allocate a direct buffer.
+     * @throws IOException if the segment would be larger than 64Kb.
+     */
+    protected static ByteBuffer serializeXmp(byte[] packet, boolean direct) throws IOException {
+        byte[] header = ExifParser.XMP_HEADER;
+        int length = 2 + header.length + packet.length;
+        if (length > MAX_EXIF_SIZE) {
+            throw new IOException("XMP packet is too large (>64Kb)");
+        }
+        int size = 2 + length;
+        ByteBuffer buf = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        buf.putShort(JpegHeader.APP1);
+        buf.putShort((short) length);
+        buf.put(header);
+        buf.put(packet);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Encodes the given ICC profile as APP2 segments, each starting with its
+     * marker and holding a numbered chunk of at most
+     * {@link #MAX_ICC_CHUNK_SIZE} bytes. The returned buffer holds exactly the
+     * segments between position 0 and its limit.
+     *
+     * @param direct whether to allocate a direct buffer.
+     * @throws IOException if the profile would need more than 255 segments.
+     */
+    protected static ByteBuffer serializeIcc(byte[] profile, boolean direct) throws IOException {
+        byte[] header = ExifParser.ICC_HEADER;
+        int count = Math.max(1, (profile.length + MAX_ICC_CHUNK_SIZE - 1) / MAX_ICC_CHUNK_SIZE);
+        if (count > 255) {
+            throw new IOException("ICC profile is too large (>255 segments)");
+        }
+        int size = count * (4 + header.length + 2) + profile.length;
+        ByteBuffer buf = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        for (int i = 0; i < count; i++) {
+            int offset = i * MAX_ICC_CHUNK_SIZE;
+            int chunk = Math.min(MAX_ICC_CHUNK_SIZE, profile.length - offset);
+            buf.putShort(JpegHeader.APP2);
+            buf.putShort((short) (2 + header.length + 2 + chunk));
+            buf.put(header);
+            buf.put((byte) (i + 1));
+            buf.put((byte) count);
+            buf.put(profile, offset, chunk);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Encodes the given ExifData as an APP1 segment, starting with its marker.
+     * The returned buffer holds exactly the segment between position 0 and its
+     * limit.
+     *
+     * @param direct whether to allocate a direct buffer.
+     * @throws IOException if the Exif header would be larger than 64Kb or a
+     *             required tag has no definition.
+     */
+    protected ByteBuffer serialize(ExifData exifData, boolean direct) throws IOException {
+        if (DEBUG) {
+            Log.v(TAG, "Serializing exif data...");
+        }
+        ExifTag[][] generated = new ExifTag[IfdId.TYPE_IFD_COUNT][];
+        Arrays.fill(generated, NO_TAGS);
+        ExifTag exifOffsetTag = buildRequiredTag(ExifInterface.TAG_EXIF_IFD);
+        ExifTag gpsOffsetTag = null;
+        ExifTag interOffsetTag = null;
+        ExifTag paddingTag = null;
+        if (mPadding > 0) {
+            paddingTag = mInterface.buildTag(ExifInterface.TAG_PADDING, new byte[mPadding]);
+            if (paddingTag == null) {
+                throw new IOException("Invalid exif padding size: " + mPadding);
+            }
+        }
+        if (exifData.getIfdData(IfdId.TYPE_IFD_GPS) != null) {
+            gpsOffsetTag = buildRequiredTag(ExifInterface.TAG_GPS_IFD);
+        }
+        generated[IfdId.TYPE_IFD_0] = sortedTags(exifOffsetTag, gpsOffsetTag, paddingTag);
+        if (exifData.getIfdData(IfdId.TYPE_IFD_INTEROPERABILITY) != null) {
+            interOffsetTag = buildRequiredTag(ExifInterface.TAG_INTEROPERABILITY_IFD);
+        }
+        generated[IfdId.TYPE_IFD_EXIF] = sortedTags(interOffsetTag);
+
+        // Thumbnail tags, whose offsets are set once the layout is known.
+        boolean hasIfd1 = exifData.getIfdData(IfdId.TYPE_IFD_1) != null;
+        ExifTag thumbnailOffsetTag = null;
+        long[] stripOffsets = null;
+        if (exifData.hasCompressedThumbnail()) {
+            thumbnailOffsetTag = buildRequiredTag(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT);
+            ExifTag lengthTag = buildRequiredTag(
+                    ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+            lengthTag.setValue(exifData.getCompressedThumbnail().length);
+            generated[IfdId.TYPE_IFD_1] = sortedTags(thumbnailOffsetTag, lengthTag);
+            hasIfd1 = true;
+        } else if (exifData.hasUncompressedStrip()) {
+            int stripCount = exifData.getStripCount();
+            thumbnailOffsetTag = buildRequiredTag(ExifInterface.TAG_STRIP_OFFSETS);
+            ExifTag lengthTag = buildRequiredTag(ExifInterface.TAG_STRIP_BYTE_COUNTS);
+            stripOffsets = new long[stripCount];
+            long[] lengths = new long[stripCount];
+            for (int i = 0; i < stripCount; i++) {
+                lengths[i] = exifData.getStrip(i).length;
+            }
+            thumbnailOffsetTag.setValue(stripOffsets);
+            lengthTag.setValue(lengths);
+            generated[IfdId.TYPE_IFD_1] = sortedTags(thumbnailOffsetTag, lengthTag);
+            hasIfd1 = true;
+        }
+
+        // Lay out the IFDs. IFD0 and the Exif IFD are always written.
+        ExifTag[][] ifds = new ExifTag[IfdId.TYPE_IFD_COUNT][];
+        int[] ifdOffsets = new int[IfdId.TYPE_IFD_COUNT];
+        int offset = TIFF_HEADER_SIZE;
+        for (int ifdId : IFD_ORDER) {
+            IfdData ifd = exifData.getIfdData(ifdId);
+            if (ifd == null && ifdId != IfdId.TYPE_IFD_0 && ifdId != IfdId.TYPE_IFD_EXIF
+                    && !(ifdId == IfdId.TYPE_IFD_1 && hasIfd1)) {
+                continue;
+            }
+            ifds[ifdId] = mergeTags(ifd, ifdId, generated[ifdId]);
+            ifdOffsets[ifdId] = offset;
+            offset += getIfdSize(ifds[ifdId]);
+        }
+        exifOffsetTag.setValue(ifdOffsets[IfdId.TYPE_IFD_EXIF]);
+        if (gpsOffsetTag != null) {
+            gpsOffsetTag.setValue(ifdOffsets[IfdId.TYPE_IFD_GPS]);
+        }
+        if (interOffsetTag != null) {
+            interOffsetTag.setValue(ifdOffsets[IfdId.TYPE_IFD_INTEROPERABILITY]);
+        }
+        int thumbnailOffset = offset;
+        if (stripOffsets != null) {
+            for (int i = 0; i < stripOffsets.length; i++) {
+                stripOffsets[i] = offset;
+                offset += exifData.getStrip(i).length;
+            }
+            thumbnailOffsetTag.setValue(stripOffsets);
+        } else if (thumbnailOffsetTag != null) {
+            thumbnailOffsetTag.setValue(offset);
+            offset += exifData.getCompressedThumbnail().length;
+        }
+        int exifSize = offset;
+        if (exifSize + 8 > MAX_EXIF_SIZE) {
+            throw new IOException("Exif header is too large (>64Kb)");
+        }
+
+        int size = APP1_HEADER_SIZE + exifSize;
+        ByteBuffer buf = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        buf.order(ByteOrder.BIG_ENDIAN);
+        buf.putShort(0, JpegHeader.APP1);
+        buf.putShort(2, (short) (exifSize + 8));
+        buf.putInt(4, EXIF_HEADER);
+        buf.putShort(8, (short) 0x0000);
+        if (exifData.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+            buf.putShort(APP1_HEADER_SIZE, TIFF_BIG_ENDIAN);
+        } else {
+            buf.putShort(APP1_HEADER_SIZE, TIFF_LITTLE_ENDIAN);
+        }
+        buf.order(exifData.getByteOrder());
+        buf.putShort(APP1_HEADER_SIZE + 2, TIFF_HEADER);
+        buf.putInt(APP1_HEADER_SIZE + 4, TIFF_HEADER_SIZE);
+        for (int ifdId : IFD_ORDER) {
+            if (ifds[ifdId] != null) {
+                int next = ifdId == IfdId.TYPE_IFD_0 && ifds[IfdId.TYPE_IFD_1] != null
+                        ? ifdOffsets[IfdId.TYPE_IFD_1] : 0;
+                writeIfd(buf, ifds[ifdId], ifdOffsets[ifdId], next);
+            }
+        }
+        if (exifData.hasCompressedThumbnail()) {
+            putBytes(buf, APP1_HEADER_SIZE + thumbnailOffset,
+                    exifData.getCompressedThumbnail(), exifData.getCompressedThumbnail().length);
+        } else if (stripOffsets != null) {
+            for (int i = 0; i < stripOffsets.length; i++) {
+                byte[] strip = exifData.getStrip(i);
+                putBytes(buf, APP1_HEADER_SIZE + (int) stripOffsets[i], strip, strip.length);
+            }
+        }
+        buf.order(ByteOrder.BIG_ENDIAN);
+        buf.clear();
+        return buf;
+    }
+
+    private ExifTag buildRequiredTag(int tagId) throws IOException {
+        ExifTag tag = mInterface.buildUninitializedTag(tagId);
+        if (tag == null) {
+            throw new IOException("No definition for crucial exif tag: " + tagId);
+        }
+        return tag;
+    }
+
+    // Returns the non-null tags in ascending order of tag ID.
+    private static ExifTag[] sortedTags(ExifTag... candidates) {
+        ExifTag[] tags = new ExifTag[candidates.length];
+        int count = 0;
+        for (ExifTag t : candidates) {
+            if (t == null) {
+                continue;
+            }
+            int i = count++;
+            while (i > 0 && (tags[i - 1].getTagId() & 0xffff) > (t.getTagId() & 0xffff)) {
+                tags[i] = tags[i - 1];
+                i--;
+            }
+            tags[i] = t;
+        }
+        return count == tags.length ? tags : Arrays.copyOf(tags, count);
+    }
+
+    /**
+     * Merges the tags of the IFD that should be written with the generated
+     * ones, keeping ascending order of tag ID. Generated tags win over tags
+     * of the same ID.
+     */
+    private ExifTag[] mergeTags(IfdData ifd, int ifdId, ExifTag[] generated) {
+        int count = ifd == null ? 0 : ifd.getTagCount();
+        ExifTag[] tags = new ExifTag[count + generated.length];
+        int n = 0;
+        int g = 0;
+        for (int i = 0; i < count; i++) {
+            ExifTag tag = ifd.getTagAt(i);
+            if (!isWritten(tag, ifdId)) {
+                continue;
+            }
+            int id = tag.getTagId() & 0xffff;
+            while (g < generated.length && (generated[g].getTagId() & 0xffff) < id) {
+                tags[n++] = generated[g++];
+            }
+            if (g < generated.length && (generated[g].getTagId() & 0xffff) == id) {
+                continue;
+            }
+            tags[n++] = tag;
+        }
+        while (g < generated.length) {
+            tags[n++] = generated[g++];
+        }
+        return n == tags.length ? tags : Arrays.copyOf(tags, n);
+    }
+
+    /**
+     * Returns false for tags that are left out of the output: tags without a
+     * value, and offset, thumbnail length and padding tags that are generated
+     * for each write instead.
+     */
+    private boolean isWritten(ExifTag tag, int ifdId) {
+        short tagId = tag.getTagId();
+        if (ExifInterface.isOffsetTag(tagId)) {
+            return false;
+        }
+        if (ifdId == IfdId.TYPE_IFD_1 && (tagId == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH
+                || tagId == TAG_STRIP_BYTE_COUNTS)) {
+            return false;
+        }
+        if (ifdId == IfdId.TYPE_IFD_0 && tagId == TAG_PADDING && mPadding > 0) {
+            return false;
+        }
+        return tag.hasValue();
+    }
+
+    private static int getIfdSize(ExifTag[] tags) {
+        int size = IFD_COUNT_SIZE + tags.length * ExifParser.TAG_SIZE + IFD_LINK_SIZE;
+        for (ExifTag tag : tags) {
+            int dataSize = tag.getDataSize();
+            if (dataSize > 4) {
+                size += dataSize;
+            }
+        }
+        return size;
+    }
+
+    private static void writeIfd(ByteBuffer buf, ExifTag[] tags, int ifdOffset, int next) {
+        int entry = APP1_HEADER_SIZE + ifdOffset;
+        int dataOffset = ifdOffset + IFD_COUNT_SIZE + tags.length * ExifParser.TAG_SIZE
+                + IFD_LINK_SIZE;
+        buf.putShort(entry, (short) tags.length);
+        entry += IFD_COUNT_SIZE;
+        for (ExifTag tag : tags) {
+            if (DEBUG) {
+                Log.v(TAG, "\n" + tag.toString());
+            }
+            buf.putShort(entry, tag.getTagId());
+            buf.putShort(entry + 2, tag.getDataType());
+            buf.putInt(entry + 4, tag.getComponentCount());
+            int dataSize = tag.getDataSize();
+            if (dataSize > 4) {
+                buf.putInt(entry + 8, dataOffset);
+                writeTagValue(buf, APP1_HEADER_SIZE + dataOffset, tag);
+                dataOffset += dataSize;
+            } else {
+                // The buffer starts zeroed, so short values are already padded.
+                writeTagValue(buf, entry + 8, tag);
+            }
+            entry += ExifParser.TAG_SIZE;
+        }
+        buf.putInt(entry, next);
+    }
+
+    /**
+     * Stores the value of the tag at the given position of the buffer, in the
+     * byte order of the buffer.
+     */
+    static void writeTagValue(ByteBuffer buf, int position, ExifTag tag) {
+        int count = tag.getComponentCount();
+        switch (tag.getDataType()) {
+            case ExifTag.TYPE_ASCII:
+                // The value is terminated by the zero already in the buffer.
+                byte[] str = tag.getStringByte();
+                putBytes(buf, position, str, Math.min(str.length, count - 1));
+                break;
+            case ExifTag.TYPE_LONG:
+            case ExifTag.TYPE_UNSIGNED_LONG:
+                for (int i = 0; i < count; i++) {
+                    buf.putInt(position + 4 * i, (int) tag.getValueAt(i));
+                }
+                break;
+            case ExifTag.TYPE_RATIONAL:
+            case ExifTag.TYPE_UNSIGNED_RATIONAL:
+                for (int i = 0; i < count; i++) {
+                    buf.putInt(position + 8 * i, (int) tag.getRationalNumerator(i));
+                    buf.putInt(position + 8 * i + 4, (int) tag.getRationalDenominator(i));
+                }
+                break;
+            case ExifTag.TYPE_UNDEFINED:
+            case ExifTag.TYPE_UNSIGNED_BYTE:
+                byte[] bytes = tag.getValueAsBytes();
+                putBytes(buf, position, bytes, Math.min(bytes.length, count));
+                break;
+            case ExifTag.TYPE_UNSIGNED_SHORT:
+                for (int i = 0; i < count; i++) {
+                    buf.putShort(position + 2 * i, (short) tag.getValueAt(i));
+                }
+                break;
+        }
+    }
+
+    private static void putBytes(ByteBuffer buf, int position, byte[] src, int length) {
+        if (length <= 0) {
+            return;
+        }
+        buf.position(position);
+        buf.put(src, 0, length);
+    }
+}
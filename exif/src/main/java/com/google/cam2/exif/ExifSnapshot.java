@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.util.List;
+
+/**
+ * An immutable copy of the exif data of an {@link ExifInterface}, created by
+ * {@link ExifInterface#snapshot()}. Its tags are frozen and none of its state
+ * changes after it is created, so a snapshot can be published to and read by
+ * any number of threads without locking.
+ * <p>
+ * The value arrays of the tags, the thumbnail, the XMP packet and the ICC
+ * profile are shared with the ExifInterface the snapshot was taken from and
+ * with those created by {@link #toExifInterface()}; the tags and the getters
+ * of a snapshot hand out copies of them.
+ */
+public final class ExifSnapshot {
+    private final ExifData mData;
+    private final TagInfoTable mTagInfo;
+
+    ExifSnapshot(ExifData data, TagInfoTable tagInfo) {
+        mData = data;
+        mTagInfo = tagInfo;
+    }
+
+    /**
+     * Returns a new ExifInterface holding the data of this snapshot, to be
+     * edited without affecting it. Only the tags are copied: setting a value
+     * replaces the array it is kept in, so the arrays are shared until they
+     * are set.
+     *
+     * @return an ExifInterface with unfrozen copies of the tags.
+     */
+    public ExifInterface toExifInterface() {
+        return new ExifInterface(mData.copy(false), mTagInfo);
+    }
+
+    /**
+     * Returns the frozen ExifTag in that tag's default IFD for a defined tag
+     * constant or null if none exists.
+     *
+     * @param tagId a defined tag constant, e.g.
+     *            {@link ExifInterface#TAG_IMAGE_WIDTH}.
+     * @see ExifInterface#getTag(int)
+     */
+    public ExifTag getTag(int tagId) {
+        if (mTagInfo.get(tagId) == ExifInterface.DEFINITION_NULL) {
+            return null;
+        }
+        return getTag(tagId, ExifInterface.getTrueIfd(tagId));
+    }
+
+    /**
+     * Gets a frozen ExifTag for an IFD other than the tag's default.
+     *
+     * @see ExifInterface#getTag(int, int)
+     */
+    public ExifTag getTag(int tagId, int ifdId) {
+        if (!ExifTag.isValidIfd(ifdId)) {
+            return null;
+        }
+        return mData.getTag(ExifInterface.getTrueTagKey(tagId), ifdId);
+    }
+
+    /**
+     * Gets the frozen tags of this snapshot or null if there are none.
+     *
+     * @see ExifInterface#getAllTags()
+     */
+    public List<ExifTag> getAllTags() {
+        return mData.getAllTags();
+    }
+
+    /**
+     * Returns the frozen tags that share a TID or null if there are none.
+     *
+     * @see ExifInterface#getTagsForTagId(short)
+     */
+    public List<ExifTag> getTagsForTagId(short tagId) {
+        return mData.getAllTagsForTagId(tagId);
+    }
+
+    /**
+     * Returns the frozen tags of an IFD or null if there are none.
+     *
+     * @see ExifInterface#getTagsForIfdId(int)
+     */
+    public List<ExifTag> getTagsForIfdId(int ifdId) {
+        return mData.getAllTagsForIfd(ifdId);
+    }
+
+    /**
+     * Passes the value of every tag of this snapshot to the visitor.
+     *
+     * @see ExifInterface#forEachTag(ExifInterface.TagVisitor)
+     */
+    public void forEachTag(ExifInterface.TagVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException(ExifInterface.NULL_ARGUMENT_STRING);
+        }
+        mData.forEachTag(visitor);
+    }
+
+    /**
+     * Returns a copy of the jpeg compressed thumbnail, or null if none exists.
+     */
+    public byte[] getThumbnail() {
+        return copyOf(mData.getCompressedThumbnail());
+    }
+
+    /**
+     * Returns true if a compressed thumbnail exists.
+     */
+    public boolean hasThumbnail() {
+        return mData.hasCompressedThumbnail();
+    }
+
+    /**
+     * Returns a copy of the XMP packet, or null if there is none.
+     */
+    public byte[] getXmpPacket() {
+        return copyOf(mData.getXmpPacket());
+    }
+
+    /**
+     * Returns a copy of the ICC profile, or null if there is none.
+     */
+    public byte[] getIccProfile() {
+        return copyOf(mData.getIccProfile());
+    }
+
+    private static byte[] copyOf(byte[] array) {
+        return array == null ? null : array.clone();
+    }
+}
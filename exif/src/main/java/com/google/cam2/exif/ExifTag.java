@@ -18,15 +18,20 @@ package com.google.cam2.exif;
 
 import com.google.cam2.exif.*;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.TimeZone;
 
 /**
  * This class stores information of an EXIF tag. For more information about
  * defined EXIF tags, please read the Jeita EXIF 2.2 standard. Tags should be
  * instantiated using {@link ExifInterface#buildTag}.
+ * <p>
+ * Tags of an {@link ExifSnapshot} are frozen, so they can be shared between
+ * threads: every method that would change a frozen tag, its value setters
+ * included, throws an UnsupportedOperationException instead. Its getters
+ * return copies of its arrays.
  *
  * @see ExifInterface
  */
@@ -99,12 +104,20 @@ public class ExifTag {
     private int mComponentCountActual;
     // The ifd that this tag should be put in
     private int mIfd;
-    // The value (array of elements of type Tag Type)
+    // The value (array of elements of type Tag Type). Rationals are packed
+    // into a long[] of numerator, denominator pairs.
     private Object mValue;
     // Value offset in exif header.
     private int mOffset;
-
-    private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("yyyy:MM:dd kk:mm:ss");
+    // TIFF data the value is decoded from on first access, null once decoded.
+    private ByteBuffer mLazyTiff;
+    private int mLazyOffset;
+    private int mLazyCount;
+    private boolean mLazyInEntry;
+    // Value array of a recycled tag that the next decoded value may reuse.
+    private Object mSpareValue;
+    // If the value can no longer be set.
+    private boolean mFrozen;
 
     /**
      * Returns true if the given IFD is a valid IFD.
@@ -136,6 +149,26 @@ public class ExifTag {
         mValue = null;
     }
 
+    /**
+     * Creates a tag with the definition and value of the given one. The value
+     * array is shared, not copied; the setters replace it rather than write
+     * into it, so either tag can be changed without affecting the other.
+     *
+     * @param frozen true to make the setters of the new tag throw and its
+     *            getters return copies of the value.
+     */
+    ExifTag(ExifTag tag, boolean frozen) {
+        tag.decodeLazyValue();
+        mTagId = tag.mTagId;
+        mDataType = tag.mDataType;
+        mHasDefinedDefaultComponentCount = tag.mHasDefinedDefaultComponentCount;
+        mComponentCountActual = tag.mComponentCountActual;
+        mIfd = tag.mIfd;
+        mValue = tag.mValue;
+        mOffset = tag.mOffset;
+        mFrozen = frozen;
+    }
+
     /**
      * Gets the element size of the given data type in bytes.
      *
@@ -166,7 +199,10 @@ public class ExifTag {
     }
 
     protected void setIfd(int ifdId) {
-        mIfd = ifdId;
+        if (ifdId != mIfd) {
+            checkNotFrozen();
+            mIfd = ifdId;
+        }
     }
 
     /**
@@ -213,6 +249,7 @@ public class ExifTag {
      * setValue() if the length of value does not match the component count.
      */
     protected void forceSetComponentCount(int count) {
+        checkNotFrozen();
         mComponentCountActual = count;
     }
 
@@ -221,6 +258,7 @@ public class ExifTag {
      * contain an offset value that is determined when the tag is written.
      */
     public boolean hasValue() {
+        decodeLazyValue();
         return mValue != null;
     }
 
@@ -236,6 +274,7 @@ public class ExifTag {
      * </ul>
      */
     public boolean setValue(int[] value) {
+        checkNotFrozen();
         if (checkBadComponentCount(value.length)) {
             return false;
         }
@@ -254,6 +293,7 @@ public class ExifTag {
             data[i] = value[i];
         }
         mValue = data;
+        mLazyTiff = null;
         mComponentCountActual = value.length;
         return true;
     }
@@ -286,6 +326,7 @@ public class ExifTag {
      * </ul>
      */
     public boolean setValue(long[] value) {
+        checkNotFrozen();
         if (checkBadComponentCount(value.length) || mDataType != TYPE_UNSIGNED_LONG) {
             return false;
         }
@@ -293,6 +334,7 @@ public class ExifTag {
             return false;
         }
         mValue = value;
+        mLazyTiff = null;
         mComponentCountActual = value.length;
         return true;
     }
@@ -327,11 +369,24 @@ public class ExifTag {
      * </ul>
      */
     public boolean setValue(String value) {
+        checkNotFrozen();
         if (mDataType != TYPE_ASCII && mDataType != TYPE_UNDEFINED) {
             return false;
         }
+        return setStringValue(value.getBytes(US_ASCII));
+    }
 
-        byte[] buf = value.getBytes(US_ASCII);
+    /**
+     * Sets the bytes of a string, NUL terminated or not, as the value of this
+     * tag, without copying them if they are NUL terminated.
+     *
+     * @see #setValue(String)
+     */
+    protected boolean setStringValue(byte[] buf) {
+        checkNotFrozen();
+        if (mDataType != TYPE_ASCII && mDataType != TYPE_UNDEFINED) {
+            return false;
+        }
         byte[] finalBuf = buf;
         if (buf.length > 0) {
             finalBuf = (buf[buf.length - 1] == 0 || mDataType == TYPE_UNDEFINED) ? buf : Arrays
@@ -345,6 +400,7 @@ public class ExifTag {
         }
         mComponentCountActual = count;
         mValue = finalBuf;
+        mLazyTiff = null;
         return true;
     }
 
@@ -363,6 +419,7 @@ public class ExifTag {
      * @see Rational
      */
     public boolean setValue(Rational[] value) {
+        checkNotFrozen();
         if (checkBadComponentCount(value.length)) {
             return false;
         }
@@ -375,11 +432,82 @@ public class ExifTag {
             return false;
         }
 
+        long[] packed = new long[value.length * 2];
+        for (int i = 0; i < value.length; i++) {
+            packed[2 * i] = value[i].getNumerator();
+            packed[2 * i + 1] = value[i].getDenominator();
+        }
+        mValue = packed;
+        mLazyTiff = null;
+        mComponentCountActual = value.length;
+        return true;
+    }
+
+    /**
+     * Sets bytes into this tag without copying them. Used by the parsers. Fails
+     * if the component type of this tag is not {@link #TYPE_UNSIGNED_BYTE} or
+     * {@link #TYPE_UNDEFINED}, or the length does not match the component
+     * count in the definition for this tag.
+     */
+    protected boolean setByteValues(byte[] value) {
+        checkNotFrozen();
+        if (checkBadComponentCount(value.length)) {
+            return false;
+        }
+        if (mDataType != TYPE_UNSIGNED_BYTE && mDataType != TYPE_UNDEFINED) {
+            return false;
+        }
+        mValue = value;
+        mLazyTiff = null;
+        mComponentCountActual = value.length;
+        return true;
+    }
+
+    /**
+     * Sets integer values into this tag without copying them. Used by the
+     * parsers, which read values that are always in range for the tag's type.
+     * Fails if the component type of this tag is not
+     * {@link #TYPE_UNSIGNED_SHORT}, {@link #TYPE_LONG} or
+     * {@link #TYPE_UNSIGNED_LONG}, or the length does not match the component
+     * count in the definition for this tag.
+     */
+    protected boolean setLongValues(long[] value) {
+        checkNotFrozen();
+        if (checkBadComponentCount(value.length)) {
+            return false;
+        }
+        if (mDataType != TYPE_UNSIGNED_SHORT && mDataType != TYPE_LONG &&
+                mDataType != TYPE_UNSIGNED_LONG) {
+            return false;
+        }
         mValue = value;
+        mLazyTiff = null;
         mComponentCountActual = value.length;
         return true;
     }
 
+    /**
+     * Sets rational values packed as numerator, denominator pairs into this
+     * tag. Used by the parsers, which read values that are always in range for
+     * the tag's type. Fails if the component type of this tag is not
+     * {@link #TYPE_UNSIGNED_RATIONAL} or {@link #TYPE_RATIONAL}, or the number
+     * of pairs does not match the component count in the definition for this
+     * tag.
+     */
+    protected boolean setRationalValues(long[] packed) {
+        checkNotFrozen();
+        if (checkBadComponentCount(packed.length / 2)) {
+            return false;
+        }
+        if (mDataType != TYPE_UNSIGNED_RATIONAL && mDataType != TYPE_RATIONAL) {
+            return false;
+        }
+        mValue = packed;
+        mLazyTiff = null;
+        mComponentCountActual = packed.length / 2;
+        return true;
+    }
+
     /**
      * Sets a Rational value into this tag. This method should be used for tags
      * of type {@link #TYPE_UNSIGNED_RATIONAL}, or {@link #TYPE_RATIONAL}. This
@@ -411,6 +539,7 @@ public class ExifTag {
      * </ul>
      */
     public boolean setValue(byte[] value, int offset, int length) {
+        checkNotFrozen();
         if (checkBadComponentCount(length)) {
             return false;
         }
@@ -418,6 +547,7 @@ public class ExifTag {
             return false;
         }
         mValue = new byte[length];
+        mLazyTiff = null;
         System.arraycopy(value, offset, mValue, 0, length);
         mComponentCountActual = length;
         return true;
@@ -457,6 +587,7 @@ public class ExifTag {
      * </ul>
      */
     public boolean setValue(Object obj) {
+        checkNotFrozen();
         if (obj == null) {
             return false;
         } else if (obj instanceof Short) {
@@ -517,19 +648,27 @@ public class ExifTag {
     }
 
     /**
-     * Sets a timestamp to this tag. The method converts the timestamp with the
-     * format of "yyyy:MM:dd kk:mm:ss" and calls {@link #setValue(String)}. This
-     * method will fail if the data type is not {@link #TYPE_ASCII} or the
-     * component count of this tag is not 20 or undefined.
+     * Sets a timestamp to this tag. The method formats the timestamp in the
+     * default time zone as "yyyy:MM:dd HH:mm:ss". This method will fail if the
+     * data type is not {@link #TYPE_ASCII} or the component count of this tag
+     * is not 20 or undefined.
      *
      * @param time the number of milliseconds since Jan. 1, 1970 GMT
      * @return true on success
      */
     public boolean setTimeValue(long time) {
-        // synchronized on TIME_FORMAT as SimpleDateFormat is not thread safe
-        synchronized (TIME_FORMAT) {
-            return setValue(TIME_FORMAT.format(new Date(time)));
-        }
+        return setTimeValue(time, TimeZone.getDefault());
+    }
+
+    /**
+     * Sets a timestamp to this tag, formatted in the given time zone.
+     *
+     * @see #setTimeValue(long)
+     */
+    protected boolean setTimeValue(long time, TimeZone timezone) {
+        checkNotFrozen();
+        byte[] buf = new byte[ExifDateTime.DATE_TIME_LENGTH + 1];
+        return ExifDateTime.formatDateTime(time, timezone, buf, 0) && setStringValue(buf);
     }
 
     /**
@@ -540,6 +679,7 @@ public class ExifTag {
      *         or cannot be converted to a String.
      */
     public String getValueAsString() {
+        decodeLazyValue();
         if (mValue == null) {
             return null;
         } else if (mValue instanceof String) {
@@ -568,14 +708,16 @@ public class ExifTag {
 
     /**
      * Gets the value as a byte array. This method should be used for tags of
-     * type {@link #TYPE_UNDEFINED} or {@link #TYPE_UNSIGNED_BYTE}.
+     * type {@link #TYPE_UNDEFINED} or {@link #TYPE_UNSIGNED_BYTE}. A frozen
+     * tag returns a copy of its value.
      *
      * @return the value as a byte array, or null if the tag's value does not
      *         exist or cannot be converted to a byte array.
      */
     public byte[] getValueAsBytes() {
+        decodeLazyValue();
         if (mValue instanceof byte[]) {
-            return (byte[]) mValue;
+            return mFrozen ? ((byte[]) mValue).clone() : (byte[]) mValue;
         }
         return null;
     }
@@ -590,11 +732,11 @@ public class ExifTag {
      * @return the tag's value as a byte, or the defaultValue.
      */
     public byte getValueAsByte(byte defaultValue) {
-        byte[] b = getValueAsBytes();
-        if (b == null || b.length < 1) {
+        decodeLazyValue();
+        if (!(mValue instanceof byte[]) || ((byte[]) mValue).length < 1) {
             return defaultValue;
         }
-        return b[0];
+        return ((byte[]) mValue)[0];
     }
 
     /**
@@ -605,12 +747,70 @@ public class ExifTag {
      *         does not exist or cannot be converted to an array of Rationals.
      */
     public Rational[] getValueAsRationals() {
-        if (mValue instanceof Rational[]) {
-            return (Rational[]) mValue;
+        decodeLazyValue();
+        if (mValue != null && isRationalType()) {
+            long[] packed = (long[]) mValue;
+            Rational[] r = new Rational[packed.length / 2];
+            for (int i = 0; i < r.length; i++) {
+                r[i] = new Rational(packed[2 * i], packed[2 * i + 1]);
+            }
+            return r;
         }
         return null;
     }
 
+    /**
+     * Gets the numerator of the rational at the given index without creating
+     * a {@link Rational}. This method should be used for tags of type
+     * {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
+     *
+     * @exception IllegalArgumentException if the data type is not a rational
+     *                type or the tag has no value.
+     */
+    public long getRationalNumerator(int index) {
+        return getPackedRationals()[2 * index];
+    }
+
+    /**
+     * Gets the denominator of the rational at the given index without creating
+     * a {@link Rational}. This method should be used for tags of type
+     * {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
+     *
+     * @exception IllegalArgumentException if the data type is not a rational
+     *                type or the tag has no value.
+     */
+    public long getRationalDenominator(int index) {
+        return getPackedRationals()[2 * index + 1];
+    }
+
+    /**
+     * Gets the rational at the given index as a double without creating a
+     * {@link Rational}, as {@link Rational#toDouble()} would.
+     *
+     * @exception IllegalArgumentException if the data type is not a rational
+     *                type or the tag has no value.
+     */
+    public double getRationalAsDouble(int index) {
+        long[] packed = getPackedRationals();
+        return packed[2 * index] / (double) packed[2 * index + 1];
+    }
+
+    private long[] getPackedRationals() {
+        decodeLazyValue();
+        if (!isRationalType()) {
+            throw new IllegalArgumentException("Cannot get RATIONAL value from "
+                    + convertTypeToString(mDataType));
+        }
+        if (mValue == null) {
+            throw new IllegalArgumentException("Tag has no value");
+        }
+        return (long[]) mValue;
+    }
+
+    private boolean isRationalType() {
+        return mDataType == TYPE_RATIONAL || mDataType == TYPE_UNSIGNED_RATIONAL;
+    }
+
     /**
      * Gets the value as a Rational. If there are more than 1 Rationals in this
      * value, gets the first one. This method should be used for tags of type
@@ -651,7 +851,8 @@ public class ExifTag {
      *         not exist or cannot be converted to an array of ints.
      */
     public int[] getValueAsInts() {
-        if (mValue == null) {
+        decodeLazyValue();
+        if (mValue == null || isRationalType()) {
             return null;
         } else if (mValue instanceof long[]) {
             long[] val = (long[]) mValue;
@@ -683,14 +884,16 @@ public class ExifTag {
 
     /**
      * Gets the value as an array of longs. This method should be used for tags
-     * of type {@link #TYPE_UNSIGNED_LONG}.
+     * of type {@link #TYPE_UNSIGNED_LONG}. A frozen tag returns a copy of its
+     * value.
      *
      * @return the value as as an array of longs, or null if the tag's value
      *         does not exist or cannot be converted to an array of longs.
      */
     public long[] getValueAsLongs() {
-        if (mValue instanceof long[]) {
-            return (long[]) mValue;
+        decodeLazyValue();
+        if (mValue instanceof long[] && !isRationalType()) {
+            return mFrozen ? ((long[]) mValue).clone() : (long[]) mValue;
         }
         return null;
     }
@@ -705,17 +908,26 @@ public class ExifTag {
      * @return the tag's value as a long, or the defaultValue.
      */
     public long getValueAsLong(long defaultValue) {
-        long[] l = getValueAsLongs();
-        if (l == null || l.length < 1) {
+        decodeLazyValue();
+        if (!(mValue instanceof long[]) || isRationalType() || ((long[]) mValue).length < 1) {
             return defaultValue;
         }
-        return l[0];
+        return ((long[]) mValue)[0];
     }
 
     /**
-     * Gets the tag's value or null if none exists.
+     * Gets the tag's value or null if none exists. A frozen tag returns a
+     * copy of its value.
      */
     public Object getValue() {
+        decodeLazyValue();
+        if (isRationalType()) {
+            return getValueAsRationals();
+        } else if (mValue instanceof byte[]) {
+            return getValueAsBytes();
+        } else if (mValue instanceof long[]) {
+            return getValueAsLongs();
+        }
         return mValue;
     }
 
@@ -728,17 +940,16 @@ public class ExifTag {
      *         exists.
      */
     public long forceGetValueAsLong(long defaultValue) {
-        long[] l = getValueAsLongs();
-        if (l != null && l.length >= 1) {
-            return l[0];
+        decodeLazyValue();
+        if (mValue instanceof long[] && !isRationalType() && ((long[]) mValue).length >= 1) {
+            return ((long[]) mValue)[0];
         }
-        byte[] b = getValueAsBytes();
-        if (b != null && b.length >= 1) {
-            return b[0];
+        if (mValue instanceof byte[] && ((byte[]) mValue).length >= 1) {
+            return ((byte[]) mValue)[0];
         }
-        Rational[] r = getValueAsRationals();
-        if (r != null && r.length >= 1 && r[0].getDenominator() != 0) {
-            return (long) r[0].toDouble();
+        if (isRationalType() && mValue != null && mComponentCountActual >= 1
+                && getRationalDenominator(0) != 0) {
+            return (long) getRationalAsDouble(0);
         }
         return defaultValue;
     }
@@ -747,6 +958,7 @@ public class ExifTag {
      * Gets a string representation of the value.
      */
     public String forceGetValueAsString() {
+        decodeLazyValue();
         if (mValue == null) {
             return "";
         } else if (mValue instanceof byte[]) {
@@ -755,6 +967,19 @@ public class ExifTag {
             } else {
                 return Arrays.toString((byte[]) mValue);
             }
+        } else if (isRationalType()) {
+            long[] packed = (long[]) mValue;
+            if (packed.length == 2) {
+                return packed[0] + "/" + packed[1];
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < packed.length; i += 2) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(packed[i]).append('/').append(packed[i + 1]);
+            }
+            return sb.append(']').toString();
         } else if (mValue instanceof long[]) {
             if (((long[]) mValue).length == 1) {
                 return String.valueOf(((long[]) mValue)[0]);
@@ -788,7 +1013,8 @@ public class ExifTag {
      *                {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
      */
     protected long getValueAt(int index) {
-        if (mValue instanceof long[]) {
+        decodeLazyValue();
+        if (mValue instanceof long[] && !isRationalType()) {
             return ((long[]) mValue)[index];
         } else if (mValue instanceof byte[]) {
             return ((byte[]) mValue)[index];
@@ -804,6 +1030,7 @@ public class ExifTag {
      *                {@link #TYPE_ASCII}.
      */
     protected String getString() {
+        decodeLazyValue();
         if (mDataType != TYPE_ASCII) {
             throw new IllegalArgumentException("Cannot get ASCII value from "
                     + convertTypeToString(mDataType));
@@ -815,6 +1042,7 @@ public class ExifTag {
      * Get the converted ascii byte. Used by ExifOutputStream.
      */
     protected byte[] getStringByte() {
+        decodeLazyValue();
         return (byte[]) mValue;
     }
 
@@ -825,11 +1053,13 @@ public class ExifTag {
      *                {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
      */
     protected Rational getRational(int index) {
+        decodeLazyValue();
         if ((mDataType != TYPE_RATIONAL) && (mDataType != TYPE_UNSIGNED_RATIONAL)) {
             throw new IllegalArgumentException("Cannot get RATIONAL value from "
                     + convertTypeToString(mDataType));
         }
-        return ((Rational[]) mValue)[index];
+        long[] packed = (long[]) mValue;
+        return new Rational(packed[2 * index], packed[2 * index + 1]);
     }
 
     /**
@@ -850,6 +1080,7 @@ public class ExifTag {
      *                {@link #TYPE_UNDEFINED} or {@link #TYPE_UNSIGNED_BYTE}.
      */
     protected void getBytes(byte[] buf, int offset, int length) {
+        decodeLazyValue();
         if ((mDataType != TYPE_UNDEFINED) && (mDataType != TYPE_UNSIGNED_BYTE)) {
             throw new IllegalArgumentException("Cannot get BYTE value from "
                     + convertTypeToString(mDataType));
@@ -858,6 +1089,39 @@ public class ExifTag {
                 (length > mComponentCountActual) ? mComponentCountActual : length);
     }
 
+    /**
+     * Hands the value of this tag to the visitor without copying or boxing
+     * it. Does nothing if the tag has no value.
+     */
+    protected void accept(ExifInterface.TagVisitor visitor) {
+        decodeLazyValue();
+        if (mValue instanceof byte[]) {
+            // The visitor may keep or change the array of a frozen tag.
+            byte[] buf = mFrozen ? ((byte[]) mValue).clone() : (byte[]) mValue;
+            int length = Math.min(buf.length, mComponentCountActual);
+            if (mDataType == TYPE_ASCII) {
+                int end = 0;
+                while (end < length && buf[end] != 0) {
+                    end++;
+                }
+                visitor.onAscii(this, buf, 0, end);
+            } else {
+                visitor.onBytes(this, buf, 0, length);
+            }
+        } else if (mValue instanceof long[]) {
+            long[] val = (long[]) mValue;
+            if (isRationalType()) {
+                for (int i = 0, n = Math.min(val.length / 2, mComponentCountActual); i < n; i++) {
+                    visitor.onRational(this, i, val[2 * i], val[2 * i + 1]);
+                }
+            } else {
+                for (int i = 0, n = Math.min(val.length, mComponentCountActual); i < n; i++) {
+                    visitor.onInt(this, i, val[i]);
+                }
+            }
+        }
+    }
+
     /**
      * Gets the offset of this tag. This is only valid if this data size > 4 and
      * contains an offset to the location of the actual value.
@@ -870,10 +1134,117 @@ public class ExifTag {
      * Sets the offset of this tag.
      */
     protected void setOffset(int offset) {
+        checkNotFrozen();
         mOffset = offset;
     }
 
+    /**
+     * Defers decoding of the value until it is first asked for. Only the
+     * offset of the value in the given TIFF data is kept until then; the
+     * buffer must not be modified while the value is pending.
+     *
+     * @param inEntry true if the value is stored in the IFD entry itself.
+     */
+    protected void setLazyValue(ByteBuffer tiff, int offset, boolean inEntry) {
+        checkNotFrozen();
+        mValue = null;
+        mLazyTiff = tiff;
+        mLazyOffset = offset;
+        mLazyCount = mComponentCountActual;
+        mLazyInEntry = inEntry;
+        // Report the count that decoding will give: a string that is not
+        // terminated gets a \0, unless the defined count forbids it.
+        if (mDataType == TYPE_ASCII && mLazyCount > 0
+                && tiff.get(offset + mLazyCount - 1) != 0
+                && (inEntry || !mHasDefinedDefaultComponentCount)) {
+            mComponentCountActual = mLazyCount + 1;
+        }
+    }
+
+    /**
+     * Prepares a tag read earlier for another entry with the same ID and type.
+     * The value is cleared, but its array is kept so that
+     * {@link #obtainLongs(int)} and {@link #obtainBytes(int)} can hand it out
+     * again when the new value has the same length.
+     */
+    protected void recycle(int componentCount, int ifd, boolean hasDefinedComponentCount) {
+        checkNotFrozen();
+        if (mValue != null) {
+            mSpareValue = mValue;
+        }
+        mValue = null;
+        mLazyTiff = null;
+        mOffset = 0;
+        mComponentCountActual = componentCount;
+        mHasDefinedDefaultComponentCount = hasDefinedComponentCount;
+        mIfd = ifd;
+    }
+
+    /**
+     * Returns an array to decode a value of the given length into, which is
+     * the spare array left by {@link #recycle(int, int, boolean)} if it fits.
+     */
+    protected long[] obtainLongs(int length) {
+        if (mSpareValue instanceof long[] && ((long[]) mSpareValue).length == length) {
+            long[] value = (long[]) mSpareValue;
+            mSpareValue = null;
+            return value;
+        }
+        return new long[length];
+    }
+
+    /**
+     * Returns an array to decode a value of the given length into, which is
+     * the spare array left by {@link #recycle(int, int, boolean)} if it fits.
+     */
+    protected byte[] obtainBytes(int length) {
+        if (mSpareValue instanceof byte[] && ((byte[]) mSpareValue).length == length) {
+            byte[] value = (byte[]) mSpareValue;
+            mSpareValue = null;
+            return value;
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Returns true if the value of this tag has not been decoded yet.
+     */
+    protected boolean isValueLazy() {
+        return mLazyTiff != null;
+    }
+
+    /**
+     * Returns true if the value of this tag cannot be changed.
+     */
+    public boolean isFrozen() {
+        return mFrozen;
+    }
+
+    private void checkNotFrozen() {
+        if (mFrozen) {
+            throw new UnsupportedOperationException("Tag is frozen");
+        }
+    }
+
+    private void decodeLazyValue() {
+        if (mLazyTiff == null) {
+            return;
+        }
+        ByteBuffer tiff = mLazyTiff;
+        mLazyTiff = null;
+        mComponentCountActual = mLazyCount;
+        boolean defCount = mHasDefinedDefaultComponentCount;
+        if (mLazyInEntry) {
+            // Values stored in the entry are read without the count check,
+            // so we can add \0 to non-terminated strings
+            mHasDefinedDefaultComponentCount = false;
+        }
+        ExifBufferParser.decodeTagValue(tiff, this, mLazyOffset);
+        mHasDefinedDefaultComponentCount = defCount;
+    }
+
     protected void setHasDefinedCount(boolean d) {
+        checkNotFrozen();
         mHasDefinedDefaultComponentCount = d;
     }
 
@@ -888,7 +1259,7 @@ public class ExifTag {
         return false;
     }
 
-    private static String convertTypeToString(short type) {
+    static String convertTypeToString(short type) {
         switch (type) {
             case TYPE_UNSIGNED_BYTE:
                 return "UNSIGNED_BYTE";
@@ -967,6 +1338,8 @@ public class ExifTag {
         }
         if (obj instanceof ExifTag) {
             ExifTag tag = (ExifTag) obj;
+            decodeLazyValue();
+            tag.decodeLazyValue();
             if (tag.mTagId != this.mTagId
                     || tag.mComponentCountActual != this.mComponentCountActual
                     || tag.mDataType != this.mDataType) {
@@ -980,11 +1353,6 @@ public class ExifTag {
                         return false;
                     }
                     return Arrays.equals((long[]) mValue, (long[]) tag.mValue);
-                } else if (mValue instanceof Rational[]) {
-                    if (!(tag.mValue instanceof Rational[])) {
-                        return false;
-                    }
-                    return Arrays.equals((Rational[]) mValue, (Rational[]) tag.mValue);
                 } else if (mValue instanceof byte[]) {
                     if (!(tag.mValue instanceof byte[])) {
                         return false;
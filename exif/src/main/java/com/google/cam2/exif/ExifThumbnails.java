@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Extracts the jpeg compressed thumbnail of a JPEG image without parsing its
+ * Exif header. Only the link from IFD0 to IFD1 and the
+ * {@link ExifInterface#TAG_JPEG_INTERCHANGE_FORMAT} and
+ * {@link ExifInterface#TAG_JPEG_INTERCHANGE_FORMAT_LENGTH} entries of IFD1
+ * are read, and the thumbnail is returned as a view of the source buffer
+ * rather than a copy. This is meant for showing many thumbnails at once,
+ * where {@link ExifInterface#readExif(FileChannel)} followed by
+ * {@link ExifInterface#getThumbnail()} does far more work than needed.
+ */
+public class ExifThumbnails {
+    private static final String TAG = "ExifThumbnails";
+
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = ExifInterface
+            .getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+
+    private ExifThumbnails() {
+    }
+
+    /**
+     * Returns the compressed thumbnail of the JPEG image between the position
+     * and the limit of the given buffer, or null if it has none. The returned
+     * buffer shares its content with the given one, so it stays valid only as
+     * long as the source does. The position of the given buffer is not
+     * changed.
+     *
+     * @throws IOException if the buffer does not hold a valid JPEG image or
+     *             its Exif header is broken.
+     */
+    public static ByteBuffer extract(ByteBuffer jpeg) throws IOException {
+        if (jpeg == null) {
+            throw new IllegalArgumentException(ExifInterface.NULL_ARGUMENT_STRING);
+        }
+        ExifBufferParser parser;
+        try {
+            parser = ExifBufferParser.locate(jpeg);
+        } catch (ExifInvalidFormatException e) {
+            throw new IOException("Invalid exif format : " + e);
+        }
+        if (!parser.containsExifData()) {
+            return null;
+        }
+        int ifd0 = parser.getIfd0Offset();
+        int ifd0Count = parser.getTagCountOfIfd(ifd0);
+        if (ifd0Count < 0) {
+            Log.w(TAG, "Invalid IFD0 at: " + ifd0);
+            return null;
+        }
+        long ifd1 = parser.getOffsetToNextIfd(ifd0, ifd0Count);
+        if (ifd1 == 0 || ifd1 > Integer.MAX_VALUE) {
+            return null;
+        }
+        int ifd1Count = parser.getTagCountOfIfd((int) ifd1);
+        if (ifd1Count < 0) {
+            Log.w(TAG, "Invalid IFD1 at: " + ifd1);
+            return null;
+        }
+        long offset = parser.findIntTagValue((int) ifd1, ifd1Count,
+                TAG_JPEG_INTERCHANGE_FORMAT);
+        long length = parser.findIntTagValue((int) ifd1, ifd1Count,
+                TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+        if (offset < 0 || length <= 0) {
+            return null;
+        }
+        ByteBuffer thumbnail = parser.slice(offset, length);
+        if (thumbnail == null) {
+            Log.w(TAG, "Failed to read thumbnail at: " + offset + ", length: " + length);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Returns the compressed thumbnail of the JPEG file open on the given
+     * channel, or null if it has none. The Exif segment of the file is
+     * memory-mapped read-only and the returned buffer is a view of the
+     * mapping, so only the pages holding the Exif header and the thumbnail are
+     * ever read. The channel is not closed.
+     *
+     * @throws IOException if the file is not a valid JPEG image, its Exif
+     *             header is broken, or the file cannot be mapped.
+     */
+    public static ByteBuffer extract(FileChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException(ExifInterface.NULL_ARGUMENT_STRING);
+        }
+        JpegSegmentIndex index = new JpegSegmentIndex();
+        index.scan(channel);
+        if (!index.isJpeg()) {
+            throw new IOException("Invalid exif format : Invalid JPEG format");
+        }
+        int exif = index.getExifIndex();
+        if (exif < 0) {
+            return null;
+        }
+        long size = Math.min(channel.size(), index.getSegmentEnd(exif));
+        return extract(channel.map(MapMode.READ_ONLY, 0, size));
+    }
+}
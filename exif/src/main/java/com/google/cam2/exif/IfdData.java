@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import com.google.cam2.exif.*;
+import com.google.cam2.exif.ExifTag;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class stores all the tags in an IFD. Tags are kept in ascending order
+ * of their tag ID, which is the order TIFF requires them to be written in, in
+ * parallel arrays of IDs and tags, and {@link #getTagAt(int)} iterates without
+ * copying. Lookups go through an open-addressing table from tag ID to index
+ * that does not box the ID.
+ *
+ * @see ExifData
+ * @see com.google.cam2.exif.ExifTag
+ */
+class IfdData {
+
+    private final int mIfdId;
+    private static final int DEFAULT_CAPACITY = 16;
+    private short[] mTagIds = new short[DEFAULT_CAPACITY];
+    private com.google.cam2.exif.ExifTag[] mExifTags = new com.google.cam2.exif.ExifTag[DEFAULT_CAPACITY];
+    private int mTagCount = 0;
+    // Hash slots of the tag IDs, holding index + 1 of the tag or 0 if free.
+    // There are twice as many slots as tags fit into the arrays.
+    private short[] mSlotIds = new short[2 * DEFAULT_CAPACITY];
+    private int[] mSlotIndexes = new int[2 * DEFAULT_CAPACITY];
+    private int mOffsetToNextIfd = 0;
+    private List<com.google.cam2.exif.ExifTag> mTagList;
+    private static final int[] sIfds = {
+            com.google.cam2.exif.IfdId.TYPE_IFD_0, com.google.cam2.exif.IfdId.TYPE_IFD_1, com.google.cam2.exif.IfdId.TYPE_IFD_EXIF,
+            com.google.cam2.exif.IfdId.TYPE_IFD_INTEROPERABILITY, com.google.cam2.exif.IfdId.TYPE_IFD_GPS
+    };
+    /**
+     * Creates an IfdData with given IFD ID.
+     *
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_0
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_1
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_EXIF
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_GPS
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_INTEROPERABILITY
+     */
+    IfdData(int ifdId) {
+        mIfdId = ifdId;
+    }
+
+    static protected int[] getIfds() {
+        return sIfds;
+    }
+
+    /**
+     * Get a list of all {@link com.google.cam2.exif.ExifTag} in this IFD, in
+     * ascending order of tag ID. The list is a read-only view, not a copy: it
+     * follows later changes to this IFD.
+     */
+    protected List<com.google.cam2.exif.ExifTag> getAllTags() {
+        if (mTagList == null) {
+            mTagList = new TagList();
+        }
+        return mTagList;
+    }
+
+    /**
+     * Gets the tag at the given index, where tags are in ascending order of tag
+     * ID and the index is less than {@link #getTagCount()}.
+     */
+    protected com.google.cam2.exif.ExifTag getTagAt(int index) {
+        return mExifTags[index];
+    }
+
+    /**
+     * Gets the ID of this IFD.
+     *
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_0
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_1
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_EXIF
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_GPS
+     * @see com.google.cam2.exif.IfdId#TYPE_IFD_INTEROPERABILITY
+     */
+    protected int getId() {
+        return mIfdId;
+    }
+
+    /**
+     * Gets the {@link com.google.cam2.exif.ExifTag} with given tag id. Return null if there is no
+     * such tag.
+     */
+    protected com.google.cam2.exif.ExifTag getTag(short tagId) {
+        int index = indexOf(tagId);
+        return index < 0 ? null : mExifTags[index];
+    }
+
+    /**
+     * Adds or replaces a {@link com.google.cam2.exif.ExifTag}.
+     */
+    protected com.google.cam2.exif.ExifTag setTag(com.google.cam2.exif.ExifTag tag) {
+        tag.setIfd(mIfdId);
+        short tagId = tag.getTagId();
+        int index = indexOf(tagId);
+        if (index >= 0) {
+            com.google.cam2.exif.ExifTag old = mExifTags[index];
+            mExifTags[index] = tag;
+            return old;
+        }
+        index = insertionPoint(tagId);
+        boolean grown = mTagCount == mTagIds.length;
+        if (grown) {
+            int capacity = mTagCount * 2;
+            mTagIds = Arrays.copyOf(mTagIds, capacity);
+            mExifTags = Arrays.copyOf(mExifTags, capacity);
+            mSlotIds = new short[2 * capacity];
+            mSlotIndexes = new int[2 * capacity];
+        }
+        System.arraycopy(mTagIds, index, mTagIds, index + 1, mTagCount - index);
+        System.arraycopy(mExifTags, index, mExifTags, index + 1, mTagCount - index);
+        mTagIds[index] = tagId;
+        mExifTags[index] = tag;
+        mTagCount++;
+        if (grown) {
+            rebuildSlots();
+        } else {
+            // Tags are mostly added in order, which moves no other index.
+            updateSlots(index + 1);
+            putSlot(tagId, index);
+        }
+        return null;
+    }
+
+    /**
+     * Removes all tags and the link to the next IFD, keeping the arrays.
+     */
+    protected void clear() {
+        Arrays.fill(mExifTags, 0, mTagCount, null);
+        Arrays.fill(mSlotIndexes, 0);
+        mTagCount = 0;
+        mOffsetToNextIfd = 0;
+    }
+
+    protected boolean checkCollision(short tagId) {
+        return indexOf(tagId) >= 0;
+    }
+
+    /**
+     * Removes the tag of the given ID
+     */
+    protected void removeTag(short tagId) {
+        int index = indexOf(tagId);
+        if (index < 0) {
+            return;
+        }
+        removeSlot(slotOf(tagId));
+        mTagCount--;
+        System.arraycopy(mTagIds, index + 1, mTagIds, index, mTagCount - index);
+        System.arraycopy(mExifTags, index + 1, mExifTags, index, mTagCount - index);
+        mExifTags[mTagCount] = null;
+        updateSlots(index);
+    }
+
+    /**
+     * Gets the tags count in the IFD.
+     */
+    protected int getTagCount() {
+        return mTagCount;
+    }
+
+    /**
+     * Returns the index of the tag with the given ID, or -1 if there is none.
+     */
+    private int indexOf(short tagId) {
+        int slot = slotOf(tagId);
+        return slot < 0 ? -1 : mSlotIndexes[slot] - 1;
+    }
+
+    /**
+     * Returns the slot of the tag with the given ID, or -1 if there is none.
+     */
+    private int slotOf(short tagId) {
+        int mask = mSlotIndexes.length - 1;
+        for (int slot = hash(tagId) & mask;; slot = (slot + 1) & mask) {
+            if (mSlotIndexes[slot] == 0) {
+                return -1;
+            }
+            if (mSlotIds[slot] == tagId) {
+                return slot;
+            }
+        }
+    }
+
+    private static int hash(short tagId) {
+        // Tag IDs of an IFD often differ by a fixed step; mixing the high bits
+        // of the product back in keeps them from landing in one run of slots.
+        int h = (tagId & 0xffff) * 0x9e3779b1;
+        return h ^ (h >>> 16);
+    }
+
+    private void putSlot(short tagId, int index) {
+        int mask = mSlotIndexes.length - 1;
+        int slot = hash(tagId) & mask;
+        while (mSlotIndexes[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mSlotIds[slot] = tagId;
+        mSlotIndexes[slot] = index + 1;
+    }
+
+    /**
+     * Points the slots of the tags from the given index on at their indexes,
+     * after the tags were moved up or down by one.
+     */
+    private void updateSlots(int from) {
+        for (int i = from; i < mTagCount; i++) {
+            mSlotIndexes[slotOf(mTagIds[i])] = i + 1;
+        }
+    }
+
+    /**
+     * Frees the given slot, moving back the slots after it in its run of
+     * occupied slots that would no longer be found past the gap.
+     */
+    private void removeSlot(int slot) {
+        int mask = mSlotIndexes.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; mSlotIndexes[next] != 0; next = (next + 1) & mask) {
+            int home = hash(mSlotIds[next]) & mask;
+            // The entry can fill the gap if its home slot is not in (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                mSlotIds[gap] = mSlotIds[next];
+                mSlotIndexes[gap] = mSlotIndexes[next];
+                gap = next;
+            }
+        }
+        mSlotIndexes[gap] = 0;
+    }
+
+    private void rebuildSlots() {
+        Arrays.fill(mSlotIndexes, 0);
+        for (int i = 0; i < mTagCount; i++) {
+            putSlot(mTagIds[i], i);
+        }
+    }
+
+    /**
+     * Returns the index at which a tag with the given ID, which this IFD does
+     * not have, keeps the tags in order. Tag IDs are compared as unsigned
+     * values.
+     */
+    private int insertionPoint(short tagId) {
+        int key = tagId & 0xffff;
+        int low = 0;
+        int high = mTagCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = mTagIds[mid] & 0xffff;
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sets the offset of next IFD.
+     */
+    protected void setOffsetToNextIfd(int offset) {
+        mOffsetToNextIfd = offset;
+    }
+
+    /**
+     * Gets the offset of next IFD.
+     */
+    protected int getOffsetToNextIfd() {
+        return mOffsetToNextIfd;
+    }
+
+    /**
+     * Returns true if all tags in this two IFDs are equal. Note that tags of
+     * IFDs offset or thumbnail offset will be ignored.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (obj instanceof IfdData) {
+            IfdData data = (IfdData) obj;
+            if (data.getId() == mIfdId && data.getTagCount() == getTagCount()) {
+                for (int i = 0; i < data.mTagCount; i++) {
+                    com.google.cam2.exif.ExifTag tag = data.mExifTags[i];
+                    if (ExifInterface.isOffsetTag(tag.getTagId())) {
+                        continue;
+                    }
+                    ExifTag tag2 = getTag(tag.getTagId());
+                    if (!tag.equals(tag2)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class TagList extends AbstractList<com.google.cam2.exif.ExifTag> {
+        @Override
+        public com.google.cam2.exif.ExifTag get(int index) {
+            if (index < 0 || index >= mTagCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mTagCount);
+            }
+            return mExifTags[index];
+        }
+
+        @Override
+        public int size() {
+            return mTagCount;
+        }
+    }
+}
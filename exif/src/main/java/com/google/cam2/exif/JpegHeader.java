@@ -20,7 +20,15 @@ class JpegHeader {
     public static final short SOI =  (short) 0xFFD8;
     public static final short APP1 = (short) 0xFFE1;
     public static final short APP0 = (short) 0xFFE0;
+    public static final short APP2 = (short) 0xFFE2;
     public static final short EOI = (short) 0xFFD9;
+    public static final short SOS = (short) 0xFFDA;
+
+    /**
+     * Two 0xFF fill bytes read as a marker. Any number of fill bytes may come
+     * before a marker; they are skipped one at a time.
+     */
+    public static final short FILL = (short) 0xFFFF;
 
     /**
      *  SOF (start of frame). All value between SOF0 and SOF15 is SOF marker except for DHT, JPG,
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class records where the segments of a JPEG image are. The markers are
+ * walked once from SOI up to SOS (or EOI), reading only the marker and length
+ * of each segment, plus the first bytes of APP1 and APP2 segments to
+ * recognize the Exif, XMP and ICC profile ones. Readers and writers then go
+ * straight to the offsets they need.
+ * <p>
+ * Segments are recorded as they are found, even if they are not valid, so
+ * callers can apply their own rules. The walk stops at the first segment
+ * that runs past the end of the data or whose length is less than 2; that
+ * segment is the last one recorded. An index can be rescanned, which reuses
+ * its arrays.
+ */
+class JpegSegmentIndex {
+    private static final int DEFAULT_CAPACITY = 16;
+    // Marker and length of a segment.
+    private static final int SEGMENT_HEADER_SIZE = 4;
+    private static final int EXIF_HEADER_SIZE = SEGMENT_HEADER_SIZE + 6;
+    private static final int XMP_HEADER_SIZE = SEGMENT_HEADER_SIZE + ExifParser.XMP_HEADER.length;
+    // The ICC header is followed by the chunk number and the chunk count.
+    private static final int ICC_HEADER_SIZE = SEGMENT_HEADER_SIZE
+            + ExifParser.ICC_HEADER.length + 2;
+    // Enough of a segment to recognize any of the above.
+    private static final int HEADER_SIZE = Math.max(XMP_HEADER_SIZE, ICC_HEADER_SIZE);
+
+    private static final byte TYPE_OTHER = 0;
+    private static final byte TYPE_XMP = 1;
+    private static final byte TYPE_ICC = 2;
+
+    private short[] mMarkers = new short[DEFAULT_CAPACITY];
+    private int[] mOffsets = new int[DEFAULT_CAPACITY];
+    private int[] mLengths = new int[DEFAULT_CAPACITY];
+    private byte[] mTypes = new byte[DEFAULT_CAPACITY];
+    // Chunk number and count of ICC segments, one byte each.
+    private short[] mIccChunks = new short[DEFAULT_CAPACITY];
+    private int mCount;
+    private boolean mIsJpeg;
+    private int mFrameIndex;
+    private int mExifIndex;
+    private int mXmpIndex;
+    private int mIccCount;
+
+    // Source of the scan in progress.
+    private final ByteBuffer mHeader = ByteBuffer.allocate(HEADER_SIZE);
+    private ByteBuffer mBuffer;
+    private int mBufferStart;
+    private FileChannel mChannel;
+    private long mSize;
+
+    /**
+     * Indexes the JPEG image between the position and the limit of the given
+     * buffer. Offsets are relative to its position, which is not changed.
+     */
+    protected void scan(ByteBuffer jpeg) {
+        mBuffer = jpeg;
+        mBufferStart = jpeg.position();
+        mSize = jpeg.limit() - mBufferStart;
+        try {
+            scan();
+        } catch (IOException e) {
+            // Not thrown when reading from a buffer.
+        } finally {
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * Indexes the JPEG image in the file open on the given channel, using
+     * positional reads that do not change the position of the channel.
+     *
+     * @throws IOException if the channel fails.
+     */
+    protected void scan(FileChannel in) throws IOException {
+        mChannel = in;
+        mSize = in.size();
+        try {
+            scan();
+        } finally {
+            mChannel = null;
+        }
+    }
+
+    /**
+     * Returns true if the data starts with an SOI marker. Nothing else is
+     * recorded if it does not.
+     */
+    protected boolean isJpeg() {
+        return mIsJpeg;
+    }
+
+    /**
+     * Gets the number of segments recorded, not counting SOI.
+     */
+    protected int getSegmentCount() {
+        return mCount;
+    }
+
+    protected short getMarker(int index) {
+        return mMarkers[index];
+    }
+
+    /**
+     * Gets the offset of the marker of the given segment.
+     */
+    protected int getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    /**
+     * Gets the length field of the given segment, which counts itself but not
+     * the marker, or 0 for EOI.
+     */
+    protected int getLength(int index) {
+        return mLengths[index];
+    }
+
+    /**
+     * Gets the offset right after the given segment.
+     */
+    protected long getSegmentEnd(int index) {
+        return mLengths[index] == 0 ? mOffsets[index] + 2L : mOffsets[index] + 2L
+                + mLengths[index];
+    }
+
+    /**
+     * Gets the offset right after the segments readers look at: the end of
+     * the frame header, or of the last segment recorded if there is no frame.
+     * The Exif, XMP and ICC profile segments are all ahead of it. It may be
+     * past the end of the data.
+     */
+    protected long getHeaderEnd() {
+        if (mFrameIndex >= 0) {
+            return getSegmentEnd(mFrameIndex);
+        }
+        return mCount == 0 ? 2 : getSegmentEnd(mCount - 1);
+    }
+
+    /**
+     * Returns true if the given segment lies entirely within the data.
+     */
+    protected boolean isComplete(int index) {
+        return getSegmentEnd(index) <= mSize;
+    }
+
+    /**
+     * Gets the index of the first SOF segment, or -1 if there is none.
+     */
+    protected int getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    /**
+     * Gets the index of the first APP1 segment ahead of the frame that holds
+     * Exif data, or -1 if there is none. The segment may run past the end of
+     * the data.
+     */
+    protected int getExifIndex() {
+        return mExifIndex;
+    }
+
+    /**
+     * Gets the offset of the TIFF header in the Exif APP1 segment. Only valid
+     * if {@link #getExifIndex()} is not -1.
+     */
+    protected int getTiffOffset() {
+        return mOffsets[mExifIndex] + EXIF_HEADER_SIZE;
+    }
+
+    /**
+     * Returns true if the given segment is an APP1 segment ahead of the frame
+     * that holds an XMP packet.
+     */
+    protected boolean isXmp(int index) {
+        return mTypes[index] == TYPE_XMP;
+    }
+
+    /**
+     * Gets the index of the first APP1 segment ahead of the frame that holds
+     * an XMP packet, or -1 if there is none.
+     */
+    protected int getXmpIndex() {
+        return mXmpIndex;
+    }
+
+    /**
+     * Gets the offset of the packet in the given XMP APP1 segment.
+     */
+    protected int getXmpPacketOffset(int index) {
+        return mOffsets[index] + XMP_HEADER_SIZE;
+    }
+
+    /**
+     * Gets the length of the packet in the given XMP APP1 segment.
+     */
+    protected int getXmpPacketLength(int index) {
+        return mLengths[index] + 2 - XMP_HEADER_SIZE;
+    }
+
+    /**
+     * Returns true if the given segment is an APP2 segment ahead of the frame
+     * that holds a chunk of an ICC profile.
+     */
+    protected boolean isIcc(int index) {
+        return mTypes[index] == TYPE_ICC;
+    }
+
+    /**
+     * Gets the number of APP2 segments ahead of the frame that hold a chunk of
+     * an ICC profile.
+     */
+    protected int getIccSegmentCount() {
+        return mIccCount;
+    }
+
+    /**
+     * Gets the 1-based number of the chunk in the given ICC APP2 segment.
+     */
+    protected int getIccChunkNumber(int index) {
+        return (mIccChunks[index] >> 8) & 0xff;
+    }
+
+    /**
+     * Gets the total number of chunks given in the given ICC APP2 segment.
+     */
+    protected int getIccChunkCount(int index) {
+        return mIccChunks[index] & 0xff;
+    }
+
+    /**
+     * Gets the offset of the profile data in the given ICC APP2 segment.
+     */
+    protected int getIccDataOffset(int index) {
+        return mOffsets[index] + ICC_HEADER_SIZE;
+    }
+
+    /**
+     * Gets the length of the profile data in the given ICC APP2 segment.
+     */
+    protected int getIccDataLength(int index) {
+        return mLengths[index] + 2 - ICC_HEADER_SIZE;
+    }
+
+    private void scan() throws IOException {
+        mCount = 0;
+        mFrameIndex = -1;
+        mExifIndex = -1;
+        mXmpIndex = -1;
+        mIccCount = 0;
+        mIsJpeg = readHeader(0, 2) == 2 && mHeader.getShort(0) == JpegHeader.SOI;
+        if (!mIsJpeg) {
+            return;
+        }
+        long pos = 2;
+        while (pos <= Integer.MAX_VALUE) {
+            int n = readHeader(pos, HEADER_SIZE);
+            if (n < 2) {
+                break;
+            }
+            short marker = mHeader.getShort(0);
+            if (marker == JpegHeader.FILL) {
+                pos++;
+                continue;
+            }
+            if (marker == JpegHeader.EOI) {
+                add(marker, (int) pos, 0);
+                break;
+            }
+            if (n < SEGMENT_HEADER_SIZE) {
+                break;
+            }
+            int length = mHeader.getShort(2) & 0xffff;
+            int index = add(marker, (int) pos, length);
+            if (JpegHeader.isSofMarker(marker)) {
+                if (mFrameIndex < 0) {
+                    mFrameIndex = index;
+                }
+            } else if (marker == JpegHeader.APP1 && mFrameIndex < 0) {
+                if (mExifIndex < 0 && length >= 8 && n >= EXIF_HEADER_SIZE
+                        && mHeader.getInt(4) == ExifParser.EXIF_HEADER
+                        && mHeader.getShort(8) == ExifParser.EXIF_HEADER_TAIL) {
+                    mExifIndex = index;
+                } else if (length + 2 >= XMP_HEADER_SIZE && n >= XMP_HEADER_SIZE
+                        && startsWith(ExifParser.XMP_HEADER)) {
+                    mTypes[index] = TYPE_XMP;
+                    if (mXmpIndex < 0) {
+                        mXmpIndex = index;
+                    }
+                }
+            } else if (marker == JpegHeader.APP2 && mFrameIndex < 0
+                    && length + 2 >= ICC_HEADER_SIZE && n >= ICC_HEADER_SIZE
+                    && startsWith(ExifParser.ICC_HEADER)) {
+                mTypes[index] = TYPE_ICC;
+                mIccChunks[index] = mHeader.getShort(ICC_HEADER_SIZE - 2);
+                mIccCount++;
+            }
+            if (marker == JpegHeader.SOS || length < 2 || pos + 2 + length > mSize) {
+                break;
+            }
+            pos += 2 + length;
+        }
+    }
+
+    private int add(short marker, int offset, int length) {
+        if (mCount == mMarkers.length) {
+            int capacity = mCount * 2;
+            mMarkers = Arrays.copyOf(mMarkers, capacity);
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mLengths = Arrays.copyOf(mLengths, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mIccChunks = Arrays.copyOf(mIccChunks, capacity);
+        }
+        mMarkers[mCount] = marker;
+        mOffsets[mCount] = offset;
+        mLengths[mCount] = length;
+        mTypes[mCount] = TYPE_OTHER;
+        return mCount++;
+    }
+
+    // Whether the segment data read into mHeader starts with the given bytes.
+    private boolean startsWith(byte[] header) {
+        for (int i = 0; i < header.length; i++) {
+            if (mHeader.get(SEGMENT_HEADER_SIZE + i) != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to length bytes at the given offset into mHeader and returns
+     * how many were available.
+     */
+    private int readHeader(long offset, int length) throws IOException {
+        int n = (int) Math.max(0, Math.min(length, mSize - offset));
+        if (mBuffer != null) {
+            for (int i = 0; i < n; i++) {
+                mHeader.put(i, mBuffer.get(mBufferStart + (int) offset + i));
+            }
+            return n;
+        }
+        mHeader.clear();
+        mHeader.limit(n);
+        while (mHeader.hasRemaining()) {
+            if (mChannel.read(mHeader, offset + mHeader.position()) < 0) {
+                break;
+            }
+        }
+        return mHeader.position();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The subset of android.util.Log used by this package, backed by
+ * java.util.logging so that the package does not depend on Android. On
+ * Android the default java.util.logging handler forwards to logcat.
+ */
+
+final class Log {
+
+    private Log() {
+    }
+
+    public static void v(String tag, String msg) {
+        Logger.getLogger(tag).log(Level.FINEST, msg);
+    }
+
+    public static void w(String tag, String msg) {
+        Logger.getLogger(tag).log(Level.WARNING, msg);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+/**
+ * Tag definitions keyed by defined tag constant, in an open addressing hash
+ * table with linear probing. The table is kept at most a quarter full, so a
+ * lookup is a multiply and usually a single probe. A definition of 0
+ * ({@link ExifInterface#DEFINITION_NULL}) marks an empty slot.
+ * <p>
+ * A frozen table cannot be changed and can be shared between threads; use
+ * {@link #copy()} to get a table that can.
+ */
+final class TagInfoTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] mKeys;
+    private int[] mValues;
+    private int mSize;
+    // 32 - log2(capacity), to take the top bits of the hash.
+    private int mShift;
+    private boolean mFrozen;
+
+    TagInfoTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private TagInfoTable(TagInfoTable other) {
+        mKeys = other.mKeys.clone();
+        mValues = other.mValues.clone();
+        mSize = other.mSize;
+        mShift = other.mShift;
+    }
+
+    /**
+     * Returns the definition for the given tag, or 0 if there is none.
+     */
+    int get(int key) {
+        int mask = mKeys.length - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            int value = mValues[i];
+            if (value == 0 || mKeys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    void put(int key, int value) {
+        checkNotFrozen();
+        if (value == 0) {
+            delete(key);
+            return;
+        }
+        if ((mSize + 1) * 4 > mKeys.length) {
+            resize(mKeys.length * 2);
+        }
+        int mask = mKeys.length - 1;
+        int i = slot(key);
+        while (mValues[i] != 0 && mKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (mValues[i] == 0) {
+            mSize++;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+    }
+
+    void delete(int key) {
+        checkNotFrozen();
+        int mask = mKeys.length - 1;
+        int i = slot(key);
+        while (mKeys[i] != key) {
+            if (mValues[i] == 0) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if (mValues[i] == 0) {
+            return;
+        }
+        // Shift later entries of the probe sequence back over the hole, so
+        // lookups never stop early at it.
+        int j = i;
+        while (true) {
+            mValues[i] = 0;
+            int home;
+            do {
+                j = (j + 1) & mask;
+                if (mValues[j] == 0) {
+                    mSize--;
+                    return;
+                }
+                home = slot(mKeys[j]);
+            } while (i <= j ? (i < home && home <= j) : (i < home || home <= j));
+            mKeys[i] = mKeys[j];
+            mValues[i] = mValues[j];
+            i = j;
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Makes this table read-only and returns it.
+     */
+    TagInfoTable freeze() {
+        mFrozen = true;
+        return this;
+    }
+
+    /**
+     * Returns true if this table is read-only.
+     */
+    boolean isFrozen() {
+        return mFrozen;
+    }
+
+    /**
+     * Returns a modifiable copy of this table.
+     */
+    TagInfoTable copy() {
+        return new TagInfoTable(this);
+    }
+
+    private int slot(int key) {
+        return (key * 0x9E3779B9) >>> mShift;
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new int[capacity];
+        mValues = new int[capacity];
+        mShift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    private void resize(int capacity) {
+        int[] keys = mKeys;
+        int[] values = mValues;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int k = 0; k < keys.length; k++) {
+            if (values[k] != 0) {
+                int i = slot(keys[k]);
+                while (mValues[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = keys[k];
+                mValues[i] = values[k];
+            }
+        }
+    }
+
+    private void checkNotFrozen() {
+        if (mFrozen) {
+            throw new UnsupportedOperationException("Tag definitions are shared");
+        }
+    }
+}
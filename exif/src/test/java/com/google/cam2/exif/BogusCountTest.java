@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests reading an image whose IFD entry has a component count far larger
+ * than the Exif header.
+ */
+public class BogusCountTest {
+    // About 2 GB of rationals, which would not fit in the heap of a test.
+    private static final int BOGUS_COUNT = 0x10000000;
+
+    /**
+     * Returns the fixture with the count of its TAG_X_RESOLUTION entry set to
+     * BOGUS_COUNT.
+     */
+    private static byte[] bogusCount() throws Exception {
+        byte[] jpeg = ExifTestFiles.fixture();
+        // Tag 0x011a of type UNSIGNED_RATIONAL (5) with a count of 1, written
+        // big endian.
+        byte[] entry = {0x01, 0x1a, 0x00, 0x05, 0x00, 0x00, 0x00, 0x01};
+        int index = ExifTestFiles.indexOf(jpeg, entry);
+        assertTrue(index > 0);
+        ByteBuffer.wrap(jpeg).putInt(index + 4, BOGUS_COUNT);
+        return jpeg;
+    }
+
+    private static void checkOtherTags(ExifInterface exif) {
+        assertEquals(6, exif.getTagIntValue(ExifInterface.TAG_ORIENTATION).intValue());
+        assertEquals("Model-X 1000\0", exif.getTagStringValue(ExifInterface.TAG_MODEL));
+        assertNotNull(exif.getTag(ExifInterface.TAG_EXPOSURE_TIME));
+    }
+
+    @Test
+    public void testStreamReadSkipsValue() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(new ByteArrayInputStream(bogusCount()));
+        ExifTag tag = exif.getTag(ExifInterface.TAG_X_RESOLUTION);
+        assertTrue(tag == null || !tag.hasValue());
+        checkOtherTags(exif);
+    }
+
+    @Test
+    public void testBufferReadSkipsValue() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ByteBuffer.wrap(bogusCount()));
+        ExifTag tag = exif.getTag(ExifInterface.TAG_X_RESOLUTION);
+        assertTrue(tag == null || !tag.hasValue());
+        checkOtherTags(exif);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that nothing handed out by an {@link ExifSnapshot} or its frozen tags
+ * can change the snapshot.
+ */
+public class ExifSnapshotTest {
+
+    private static ExifSnapshot snapshot() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ExifTestFiles.fixture());
+        return exif.snapshot();
+    }
+
+    @Test
+    public void testValueArraysAreCopies() throws Exception {
+        ExifSnapshot snapshot = snapshot();
+        ExifTag makerNote = snapshot.getTag(ExifInterface.TAG_MAKER_NOTE);
+        byte[] bytes = makerNote.getValueAsBytes();
+        byte first = bytes[0];
+        bytes[0]++;
+        ((byte[]) makerNote.getValue())[0]++;
+        assertEquals(first, makerNote.getValueAsBytes()[0]);
+
+        ExifTag pixelX = snapshot.getTag(ExifInterface.TAG_PIXEL_X_DIMENSION);
+        long[] longs = pixelX.getValueAsLongs();
+        longs[0]++;
+        ((long[]) pixelX.getValue())[0]++;
+        assertEquals(640, pixelX.getValueAsLong(0));
+        assertEquals(640, pixelX.forceGetValueAsLong(0));
+    }
+
+    @Test
+    public void testDataArraysAreCopies() throws Exception {
+        ExifSnapshot snapshot = snapshot();
+        byte[] thumbnail = snapshot.getThumbnail();
+        byte[] expected = thumbnail.clone();
+        thumbnail[0]++;
+        assertTrue(Arrays.equals(expected, snapshot.getThumbnail()));
+        assertNull(snapshot.getXmpPacket());
+        assertNull(snapshot.getIccProfile());
+    }
+
+    @Test
+    public void testFrozenTagCannotBeChanged() throws Exception {
+        ExifTag tag = snapshot().getTag(ExifInterface.TAG_ORIENTATION);
+        assertTrue(tag.isFrozen());
+        try {
+            tag.setValue(3);
+            fail("setValue");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            tag.setIfd(IfdId.TYPE_IFD_1);
+            fail("setIfd");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            tag.forceSetComponentCount(2);
+            fail("forceSetComponentCount");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            tag.setOffset(8);
+            fail("setOffset");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            tag.setHasDefinedCount(false);
+            fail("setHasDefinedCount");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(IfdId.TYPE_IFD_0, tag.getIfd());
+        assertEquals(1, tag.getComponentCount());
+        assertEquals(6, tag.getValueAsInt(0));
+    }
+
+    @Test
+    public void testFrozenTagCanBeSetOnExifInterface() throws Exception {
+        ExifSnapshot snapshot = snapshot();
+        ExifTag tag = snapshot.getTag(ExifInterface.TAG_MAKE);
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(tag);
+        ExifTag copy = exif.getTag(ExifInterface.TAG_MAKE);
+        assertNotSame(tag, copy);
+        assertFalse(copy.isFrozen());
+        assertTrue(copy.setValue("Cam3Make"));
+        assertEquals("Cam2Make\0", snapshot.getTag(ExifInterface.TAG_MAKE).getValueAsString());
+        assertTrue(snapshot.toExifInterface().getTag(ExifInterface.TAG_MAKE).setValue("Cam3Make"));
+    }
+}
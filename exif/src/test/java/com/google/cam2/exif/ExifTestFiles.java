@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Builds the jpeg images the tests read. The images have the segments of a
+ * baseline jpeg, but their scan data is filler that does not decode.
+ */
+final class ExifTestFiles {
+    private ExifTestFiles() {
+    }
+
+    /**
+     * Returns a jpeg image without exif data, with scanLength bytes of scan
+     * data.
+     */
+    static byte[] jpeg(int scanLength) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBytes(out, 0xff, 0xd8);
+        // APP0 JFIF
+        writeBytes(out, 0xff, 0xe0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00, 0x01, 0x01, 0x00,
+                0x00, 0x01, 0x00, 0x01, 0x00, 0x00);
+        // DQT
+        writeBytes(out, 0xff, 0xdb, 0x00, 0x43, 0x00);
+        for (int i = 0; i < 64; i++) {
+            out.write(1 + i);
+        }
+        // SOF0, 16x16, 3 components
+        writeBytes(out, 0xff, 0xc0, 0x00, 0x11, 0x08, 0x00, 0x10, 0x00, 0x10, 0x03,
+                0x01, 0x22, 0x00, 0x02, 0x11, 0x00, 0x03, 0x11, 0x00);
+        // SOS
+        writeBytes(out, 0xff, 0xda, 0x00, 0x0c, 0x03, 0x01, 0x00, 0x02, 0x11, 0x03, 0x11,
+                0x00, 0x3f, 0x00);
+        for (int i = 0; i < scanLength; i++) {
+            out.write(i % 0xfe);
+        }
+        writeBytes(out, 0xff, 0xd9);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a jpeg image with tags of every type in IFD0, the Exif IFD and
+     * the GPS IFD, and a thumbnail.
+     */
+    static byte[] fixture() throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "Cam2Make"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MODEL, "Model-X 1000"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_DESCRIPTION, "a long description"));
+        exif.addDateTimeStampTag(ExifInterface.TAG_DATE_TIME, 1500000000000L,
+                TimeZone.getTimeZone("UTC"));
+        exif.addGpsTags(37.4219999, -122.0840575);
+        exif.addGpsDateTimeStampTag(1500000000000L);
+        exif.setTag(exif.buildTag(ExifInterface.TAG_X_RESOLUTION, new Rational(72, 1)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 120)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_BRIGHTNESS_VALUE, new Rational(-3, 2)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS,
+                new int[] {100, 200, 400}));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_PIXEL_X_DIMENSION, 640L));
+        byte[] makerNote = new byte[300];
+        for (int i = 0; i < makerNote.length; i++) {
+            makerNote[i] = (byte) i;
+        }
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKER_NOTE, makerNote));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXIF_VERSION,
+                new byte[] {'0', '2', '2', '0'}));
+        exif.setCompressedThumbnail(jpeg(100));
+        return write(exif, jpeg(1000));
+    }
+
+    /**
+     * Returns the given jpeg image with the tags of the given ExifInterface.
+     */
+    static byte[] write(ExifInterface exif, byte[] jpeg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(jpeg, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Describes every tag of the ExifInterface, one line each in a fixed
+     * order, followed by its thumbnail.
+     */
+    static String dump(ExifInterface exif) {
+        List<String> lines = new ArrayList<String>();
+        List<ExifTag> tags = exif.getAllTags();
+        if (tags != null) {
+            for (ExifTag tag : tags) {
+                lines.add(tag.getIfd() + ":" + String.format("%04x", tag.getTagId() & 0xffff)
+                        + " type=" + tag.getDataType() + " count=" + tag.getComponentCount()
+                        + " value=" + tag.forceGetValueAsString());
+            }
+        }
+        Collections.sort(lines);
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        byte[] thumbnail = exif.getThumbnail();
+        sb.append("thumbnail=").append(thumbnail == null ? -1
+                : java.util.Arrays.hashCode(thumbnail));
+        return sb.toString();
+    }
+
+    /**
+     * Returns the index of the first occurrence of target in array, or -1 if
+     * there is none.
+     */
+    static int indexOf(byte[] array, byte[] target) {
+        outer:
+        for (int i = 0; i <= array.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (array[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests {@link IfdData} against a map of tag IDs to tags, for IFDs of several
+ * sizes built in and out of order, and the order in which the tags of an
+ * ExifInterface built out of order are written.
+ */
+public class IfdDataTest {
+    private static final int[] SIZES = {6, 12, 24, 40, 64};
+    private static final int ROUNDS = 20000;
+
+    private static int sSink;
+
+    private static ExifTag[] tags(int size) {
+        ExifTag[] tags = new ExifTag[size];
+        for (int i = 0; i < size; i++) {
+            // Spread the IDs over the range real tags use, unsigned included.
+            short tagId = (short) (0x0100 + i * 1021);
+            tags[i] = new ExifTag(tagId, ExifTag.TYPE_UNSIGNED_SHORT, 1, IfdId.TYPE_IFD_0, true);
+            tags[i].setValue(i);
+        }
+        return tags;
+    }
+
+    private static IfdData ifd(ExifTag[] tags) {
+        IfdData ifd = new IfdData(IfdId.TYPE_IFD_0);
+        // Out of order, as a parser may find them.
+        for (int i = tags.length - 1; i >= 0; i--) {
+            ifd.setTag(tags[i]);
+        }
+        return ifd;
+    }
+
+    private static Map<Short, ExifTag> map(ExifTag[] tags) {
+        Map<Short, ExifTag> map = new HashMap<Short, ExifTag>();
+        for (ExifTag tag : tags) {
+            map.put(tag.getTagId(), tag);
+        }
+        return map;
+    }
+
+    /**
+     * Checks that the IFD holds the tags of the map, keyed by unsigned tag
+     * ID, in the same order.
+     */
+    private static void checkSame(TreeMap<Integer, ExifTag> expected, IfdData ifd) {
+        assertEquals(expected.size(), ifd.getTagCount());
+        List<ExifTag> tags = ifd.getAllTags();
+        assertEquals(expected.size(), tags.size());
+        int i = 0;
+        for (Map.Entry<Integer, ExifTag> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), ifd.getTagAt(i));
+            assertSame(entry.getValue(), tags.get(i));
+            assertSame(entry.getValue(), ifd.getTag((short) (int) entry.getKey()));
+            i++;
+        }
+    }
+
+    @Test
+    public void testLookupMatchesMap() {
+        for (int size : SIZES) {
+            ExifTag[] tags = tags(size);
+            IfdData ifd = ifd(tags);
+            Map<Short, ExifTag> map = map(tags);
+            assertEquals(map.size(), ifd.getTagCount());
+            for (int id = 0; id <= 0xffff; id++) {
+                assertSame(map.get((short) id), ifd.getTag((short) id));
+            }
+            for (int i = 1; i < ifd.getTagCount(); i++) {
+                assertTrue((ifd.getTagAt(i - 1).getTagId() & 0xffff)
+                        < (ifd.getTagAt(i).getTagId() & 0xffff));
+            }
+            // Removing and replacing keeps the index in step with the tags.
+            for (int i = 0; i < size; i += 3) {
+                ifd.removeTag(tags[i].getTagId());
+                map.remove(tags[i].getTagId());
+            }
+            ExifTag replacement = new ExifTag(tags[1].getTagId(), ExifTag.TYPE_UNSIGNED_SHORT, 1,
+                    IfdId.TYPE_IFD_0, true);
+            assertSame(tags[1], ifd.setTag(replacement));
+            map.put(replacement.getTagId(), replacement);
+            for (ExifTag tag : tags) {
+                assertSame(map.get(tag.getTagId()), ifd.getTag(tag.getTagId()));
+            }
+            ifd.clear();
+            assertEquals(0, ifd.getTagCount());
+            assertNull(ifd.getTag(tags[1].getTagId()));
+        }
+    }
+
+    @Test
+    public void testRandomInsertsAndRemoves() {
+        Random random = new Random(4);
+        IfdData ifd = new IfdData(IfdId.TYPE_IFD_0);
+        List<ExifTag> view = ifd.getAllTags();
+        TreeMap<Integer, ExifTag> expected = new TreeMap<Integer, ExifTag>();
+        for (int i = 0; i < 5000; i++) {
+            // Few enough IDs that removes often hit, in runs of nearby slots.
+            int id = random.nextBoolean() ? random.nextInt(200) : 0xff00 + random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                ifd.removeTag((short) id);
+                expected.remove(id);
+            } else {
+                ExifTag tag = new ExifTag((short) id, ExifTag.TYPE_UNSIGNED_SHORT, 1,
+                        IfdId.TYPE_IFD_0, true);
+                assertSame(expected.put(id, tag), ifd.setTag(tag));
+            }
+            checkSame(expected, ifd);
+            assertEquals(expected.size(), view.size());
+        }
+        for (int id = 0; id <= 0xffff; id++) {
+            assertSame(expected.get(id), ifd.getTag((short) id));
+        }
+    }
+
+    @Test
+    public void testBuildThenSerialize() throws Exception {
+        ExifInterface source = new ExifInterface();
+        source.readExif(ExifTestFiles.fixture());
+        List<ExifTag> tags = new ArrayList<ExifTag>();
+        for (ExifTag tag : source.getAllTags()) {
+            // The writer makes the pointer and thumbnail tags itself.
+            if (tag.getIfd() != IfdId.TYPE_IFD_1 && !ExifInterface.isOffsetTag(tag.getTagId())) {
+                tags.add(tag);
+            }
+        }
+        // Highest tag IDs first, so that every tag goes in at the front.
+        Collections.reverse(tags);
+        ExifInterface exif = new ExifInterface();
+        for (ExifTag tag : tags) {
+            exif.setTag(tag);
+        }
+        exif.deleteTag(ExifInterface.TAG_MAKE);
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "Cam2Make"));
+        byte[] jpeg = ExifTestFiles.write(exif, ExifTestFiles.jpeg(100));
+
+        // Entries are written in ascending order of tag ID within each IFD.
+        ExifCursor cursor = new ExifCursor();
+        cursor.reset(ByteBuffer.wrap(jpeg));
+        int ifd = -1;
+        int last = -1;
+        int written = 0;
+        while (cursor.next()) {
+            int id = cursor.tagId() & 0xffff;
+            if (cursor.ifd() != ifd) {
+                ifd = cursor.ifd();
+                last = -1;
+            }
+            assertTrue(String.format("%04x after %04x", id, last), id > last);
+            last = id;
+            if (!ExifInterface.isOffsetTag(cursor.tagId())) {
+                written++;
+            }
+        }
+        assertEquals(tags.size(), written);
+
+        ExifInterface read = new ExifInterface();
+        read.readExif(jpeg);
+        assertEquals(withoutIfd1(ExifTestFiles.dump(source)), ExifTestFiles.dump(read));
+    }
+
+    // The dump of an ExifInterface without its thumbnail and IFD1 tags.
+    private static String withoutIfd1(String dump) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : dump.split("\n")) {
+            if (line.startsWith("thumbnail=")) {
+                sb.append("thumbnail=-1");
+            } else if (!line.startsWith(IfdId.TYPE_IFD_1 + ":")) {
+                sb.append(line).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testLookupDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        ExifTag[] tags = tags(40);
+        IfdData ifd = ifd(tags);
+        lookup(ifd, tags);
+        long before = threads.getThreadAllocatedBytes(thread);
+        lookup(ifd, tags);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // A single boxed ID per lookup would be 16 bytes.
+        assertTrue("allocated " + allocated, allocated < (long) ROUNDS * tags.length);
+        assertTrue(sSink != 0);
+    }
+
+    private static void lookup(IfdData ifd, ExifTag[] tags) {
+        for (int r = 0; r < ROUNDS; r++) {
+            for (ExifTag tag : tags) {
+                if (ifd.getTag(tag.getTagId()) == tag) {
+                    sSink++;
+                }
+            }
+        }
+    }
+}
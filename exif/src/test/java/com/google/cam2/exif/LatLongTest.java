@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the conversion of GPS coordinates to doubles.
+ */
+public class LatLongTest {
+    private static final double DELTA = 1e-7;
+
+    private static final Rational[] COORDINATE = {
+            new Rational(122, 1), new Rational(5, 1), new Rational(227, 100)
+    };
+    private static final double VALUE = 122 + 5 / 60.0 + 2.27 / 3600;
+
+    @Test
+    public void testReferenceIsMatchedByFirstCharacter() {
+        assertEquals(VALUE, ExifInterface.convertLatOrLongToDouble(COORDINATE, "N"), DELTA);
+        assertEquals(VALUE, ExifInterface.convertLatOrLongToDouble(COORDINATE, "E\0"), DELTA);
+        assertEquals(-VALUE, ExifInterface.convertLatOrLongToDouble(COORDINATE, "S"), DELTA);
+        assertEquals(-VALUE, ExifInterface.convertLatOrLongToDouble(COORDINATE, "W\0"), DELTA);
+        assertEquals(VALUE, ExifInterface.convertLatOrLongToDouble(COORDINATE, ""), DELTA);
+    }
+
+    @Test
+    public void testTagValuesGiveSameResult() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ExifTestFiles.fixture());
+        double[] latLong = exif.getLatLongAsDoubles();
+        // addGpsTags keeps the seconds to a hundredth.
+        assertEquals(37.4219999, latLong[0], 1e-5);
+        assertEquals(-122.0840575, latLong[1], 1e-5);
+        Rational[] longitude = exif.getTag(ExifInterface.TAG_GPS_LONGITUDE)
+                .getValueAsRationals();
+        String reference = exif.getTag(ExifInterface.TAG_GPS_LONGITUDE_REF).getValueAsString();
+        assertEquals(latLong[1], ExifInterface.convertLatOrLongToDouble(longitude, reference),
+                DELTA);
+    }
+}
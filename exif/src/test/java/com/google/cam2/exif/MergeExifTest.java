@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests merging the GPS tags of one image into another, by stream and by
+ * file, and reading the result back.
+ */
+public class MergeExifTest {
+    private static final int[] GPS = {IfdId.TYPE_IFD_GPS};
+    // Marker and length of the SOF0 segment that ExifTestFiles writes.
+    private static final byte[] SOF = {(byte) 0xff, (byte) 0xc0, 0x00, 0x11};
+    private static final int FILL_LENGTH = 3;
+
+    private static byte[] target() throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "Editor"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_SOFTWARE, "cam2 edit"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 3));
+        return ExifTestFiles.write(exif, ExifTestFiles.jpeg(800));
+    }
+
+    /**
+     * Returns the image with 0xFF fill bytes ahead of the marker after SOI and
+     * ahead of SOF0.
+     */
+    private static byte[] withFill(byte[] jpeg) {
+        int sof = ExifTestFiles.indexOf(jpeg, SOF);
+        assertTrue(sof > 2);
+        byte[] fill = new byte[FILL_LENGTH];
+        Arrays.fill(fill, (byte) 0xff);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(fill, 0, fill.length);
+        out.write(jpeg, 2, sof - 2);
+        out.write(fill, 0, fill.length);
+        out.write(jpeg, sof, jpeg.length - sof);
+        return out.toByteArray();
+    }
+
+    private static ExifInterface read(byte[] jpeg) throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(jpeg);
+        return exif;
+    }
+
+    private static List<String> describe(List<ExifTag> tags) {
+        List<String> lines = new ArrayList<String>();
+        if (tags != null) {
+            for (ExifTag tag : tags) {
+                lines.add(tag.getIfd() + ":" + String.format("%04x", tag.getTagId() & 0xffff)
+                        + "=" + tag.forceGetValueAsString());
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static List<String> gpsTags(ExifInterface exif) {
+        return describe(exif.getTagsForIfdId(IfdId.TYPE_IFD_GPS));
+    }
+
+    private static ExifDiff mergeStreams(byte[] source, byte[] target, ByteArrayOutputStream out)
+            throws IOException {
+        return new ExifInterface().mergeExif(new ByteArrayInputStream(source),
+                new ByteArrayInputStream(target), out, GPS, null);
+    }
+
+    private static byte[] mergeFiles(byte[] source, byte[] target, ExifDiff[] diff)
+            throws IOException {
+        File sourceFile = File.createTempFile("source", ".jpg");
+        File targetFile = File.createTempFile("target", ".jpg");
+        File outFile = File.createTempFile("out", ".jpg");
+        try {
+            writeFile(sourceFile, source);
+            writeFile(targetFile, target);
+            diff[0] = new ExifInterface().mergeExif(sourceFile.getPath(), targetFile.getPath(),
+                    outFile.getPath(), GPS, null);
+            RandomAccessFile in = new RandomAccessFile(outFile, "r");
+            try {
+                byte[] out = new byte[(int) in.length()];
+                in.readFully(out);
+                return out;
+            } finally {
+                in.close();
+            }
+        } finally {
+            sourceFile.delete();
+            targetFile.delete();
+            outFile.delete();
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Checks the output of merging the GPS tags of the fixture into the
+     * target, and the diff the merge returned.
+     */
+    private static void checkMerged(byte[] source, byte[] target, byte[] merged, ExifDiff diff)
+            throws IOException {
+        ExifInterface sourceExif = read(source);
+        List<String> sourceGps = gpsTags(sourceExif);
+        assertFalse(sourceGps.isEmpty());
+
+        // The target had no GPS tags, so all of the source's were added.
+        assertEquals(sourceGps, describe(diff.getAddedTags()));
+        assertTrue(diff.getChangedTags().isEmpty());
+        assertTrue(diff.getReplacedTags().isEmpty());
+        assertFalse(diff.isThumbnailChanged());
+        assertFalse(diff.isEmpty());
+
+        // Read back by buffer and by stream.
+        ExifInterface fromBuffer = read(merged);
+        ExifInterface fromStream = new ExifInterface();
+        fromStream.readExif(new ByteArrayInputStream(merged));
+        for (ExifInterface exif : new ExifInterface[] {fromBuffer, fromStream}) {
+            assertEquals(sourceGps, gpsTags(exif));
+            assertEquals("Editor\0", exif.getTagStringValue(ExifInterface.TAG_MAKE));
+            assertEquals("cam2 edit\0", exif.getTagStringValue(ExifInterface.TAG_SOFTWARE));
+            assertEquals(3, exif.getTagIntValue(ExifInterface.TAG_ORIENTATION).intValue());
+            assertNull(exif.getTag(ExifInterface.TAG_MODEL));
+            assertNull(exif.getThumbnail());
+            assertArrayEquals(sourceExif.getLatLongAsDoubles(), exif.getLatLongAsDoubles(), 0);
+        }
+
+        // The frame and image data of the target are copied as they are.
+        int sof = ExifTestFiles.indexOf(target, SOF);
+        assertTrue(sof > 0);
+        int tail = target.length - sof;
+        assertArrayEquals(Arrays.copyOfRange(target, sof, target.length),
+                Arrays.copyOfRange(merged, merged.length - tail, merged.length));
+
+        // Nothing is left to merge.
+        ExifDiff again = new ExifInterface().diffExif(new ByteArrayInputStream(source),
+                new ByteArrayInputStream(merged), GPS, null);
+        assertTrue(again.toString(), again.isEmpty());
+        assertEquals(sourceGps.size(), again.getUnchangedCount());
+    }
+
+    @Test
+    public void testMergeStreams() throws Exception {
+        byte[] source = ExifTestFiles.fixture();
+        byte[] target = target();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExifDiff diff = mergeStreams(source, target, out);
+        checkMerged(source, target, out.toByteArray(), diff);
+    }
+
+    @Test
+    public void testMergeFiles() throws Exception {
+        byte[] source = ExifTestFiles.fixture();
+        byte[] target = target();
+        ExifDiff[] diff = new ExifDiff[1];
+        byte[] merged = mergeFiles(source, target, diff);
+        checkMerged(source, target, merged, diff[0]);
+    }
+
+    @Test
+    public void testMergeStreamsWithFillBytes() throws Exception {
+        byte[] source = withFill(ExifTestFiles.fixture());
+        byte[] target = withFill(target());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExifDiff diff = mergeStreams(source, target, out);
+        checkMerged(source, target, out.toByteArray(), diff);
+    }
+
+    @Test
+    public void testMergeFilesWithFillBytes() throws Exception {
+        byte[] source = withFill(ExifTestFiles.fixture());
+        byte[] target = withFill(target());
+        ExifDiff[] diff = new ExifDiff[1];
+        byte[] merged = mergeFiles(source, target, diff);
+        checkMerged(source, target, merged, diff[0]);
+    }
+
+    @Test
+    public void testMergeChangesGpsTags() throws Exception {
+        ExifInterface other = new ExifInterface();
+        other.addGpsTags(48.8583701, 2.2944813);
+        byte[] target = ExifTestFiles.write(other, ExifTestFiles.jpeg(800));
+        byte[] source = ExifTestFiles.fixture();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExifDiff diff = mergeStreams(source, target, out);
+
+        // The coordinates and the longitude reference differ, the latitude
+        // reference is the same and the time stamps were not in the target.
+        List<String> changed = describe(diff.getChangedTags());
+        List<String> replaced = describe(diff.getReplacedTags());
+        assertEquals(3, changed.size());
+        assertEquals(changed.size(), replaced.size());
+        assertEquals(2, diff.getAddedTags().size());
+        assertEquals(1, diff.getUnchangedCount());
+        List<String> all = new ArrayList<String>(changed);
+        all.addAll(describe(diff.getAddedTags()));
+        List<String> before = gpsTags(read(target));
+        for (String line : gpsTags(read(source))) {
+            if (!all.contains(line)) {
+                assertTrue(line, before.contains(line));
+            }
+        }
+        for (String line : replaced) {
+            assertTrue(line, before.contains(line));
+            assertFalse(line, all.contains(line));
+        }
+
+        ExifInterface merged = read(out.toByteArray());
+        double[] latLong = merged.getLatLongAsDoubles();
+        assertEquals(37.4219999, latLong[0], 1e-5);
+        assertEquals(-122.0840575, latLong[1], 1e-5);
+    }
+
+    @Test
+    public void testMergeCopiesTags() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        ExifData source = new ExifData(ExifInterface.DEFAULT_BYTE_ORDER);
+        source.addTag(exif.buildTag(ExifInterface.TAG_MAKE, "Cam2Make"));
+        source.addTag(exif.buildTag(ExifInterface.TAG_PADDING, new byte[64]));
+        ExifData target = new ExifData(ExifInterface.DEFAULT_BYTE_ORDER);
+        ExifDiff diff = target.merge(source, null, null);
+        assertEquals(1, diff.getAddedTags().size());
+
+        short make = ExifInterface.getTrueTagKey(ExifInterface.TAG_MAKE);
+        ExifTag sourceTag = source.getTag(make, IfdId.TYPE_IFD_0);
+        ExifTag targetTag = target.getTag(make, IfdId.TYPE_IFD_0);
+        assertNotSame(sourceTag, targetTag);
+        assertTrue(targetTag.setValue("Cam3Make"));
+        assertEquals("Cam2Make\0", sourceTag.getValueAsString());
+        assertNull(target.getTag(ExifInterface.getTrueTagKey(ExifInterface.TAG_PADDING),
+                IfdId.TYPE_IFD_0));
+    }
+
+    @Test
+    public void testMergeSkipsPadding() throws Exception {
+        ExifInterface padded = new ExifInterface();
+        padded.setTag(padded.buildTag(ExifInterface.TAG_MODEL, "Model-X 1000"));
+        padded.setExifPadding(4096);
+        byte[] source = ExifTestFiles.write(padded, ExifTestFiles.jpeg(800));
+        assertNotNull(read(source).getTag(ExifInterface.TAG_PADDING));
+        byte[] target = target();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExifDiff diff = new ExifInterface().mergeExif(new ByteArrayInputStream(source),
+                new ByteArrayInputStream(target), out, null, null);
+        assertEquals(1, diff.getAddedTags().size());
+
+        byte[] merged = out.toByteArray();
+        ExifInterface exif = read(merged);
+        assertEquals("Model-X 1000\0", exif.getTagStringValue(ExifInterface.TAG_MODEL));
+        assertNull(exif.getTag(ExifInterface.TAG_PADDING));
+        assertTrue(merged.length < target.length + 100);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests reading with {@link ExifInterface#setRecycling(boolean)}: reading the
+ * same buffer again and again creates no garbage, and every read gives the
+ * same tags as a fresh ExifInterface.
+ */
+public class RecyclingReadTest {
+    private static final int WARMUP_READS = 20000;
+    private static final int MEASURED_READS = 10000;
+
+    private static byte[][] inputs() throws Exception {
+        byte[] fixture = ExifTestFiles.fixture();
+        ExifInterface other = new ExifInterface();
+        other.readExif(fixture);
+        other.setTag(other.buildTag(ExifInterface.TAG_ARTIST, "someone"));
+        other.deleteTag(ExifInterface.TAG_MAKER_NOTE);
+        other.removeCompressedThumbnail();
+        return new byte[][] {
+                fixture, ExifTestFiles.jpeg(1000), ExifTestFiles.write(other, ExifTestFiles.jpeg(500))
+        };
+    }
+
+    private static void checkRecycledMatchesFresh(boolean lazy) throws Exception {
+        byte[][] inputs = inputs();
+        ExifInterface recycled = new ExifInterface();
+        recycled.setLazyDecoding(lazy);
+        recycled.setRecycling(true);
+        // Alternate between the inputs so that each read recycles the tags
+        // of a different layout.
+        for (int i = 0; i < 4 * inputs.length; i++) {
+            byte[] jpeg = inputs[i % inputs.length];
+            recycled.readExif(ByteBuffer.wrap(jpeg));
+            ExifInterface fresh = new ExifInterface();
+            fresh.readExif(jpeg);
+            assertEquals("read " + i, ExifTestFiles.dump(fresh), ExifTestFiles.dump(recycled));
+        }
+    }
+
+    @Test
+    public void testRecycledReadMatchesFresh() throws Exception {
+        checkRecycledMatchesFresh(false);
+    }
+
+    @Test
+    public void testRecycledLazyReadMatchesFresh() throws Exception {
+        checkRecycledMatchesFresh(true);
+    }
+
+    private static void checkRecycledReadDoesNotAllocate(boolean lazy) throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        ByteBuffer jpeg = ByteBuffer.wrap(ExifTestFiles.fixture());
+        ExifInterface exif = new ExifInterface();
+        exif.setLazyDecoding(lazy);
+        exif.setRecycling(true);
+        for (int i = 0; i < WARMUP_READS; i++) {
+            exif.readExif(jpeg);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_READS; i++) {
+            exif.readExif(jpeg);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // Even a single object per read would be at least 16 bytes.
+        assertTrue("allocated " + allocated + " bytes in " + MEASURED_READS + " reads",
+                allocated < 16L * MEASURED_READS);
+        assertEquals(6, exif.getTagIntValue(ExifInterface.TAG_ORIENTATION).intValue());
+    }
+
+    @Test
+    public void testRecycledReadDoesNotAllocate() throws Exception {
+        checkRecycledReadDoesNotAllocate(false);
+    }
+
+    @Test
+    public void testRecycledLazyReadDoesNotAllocate() throws Exception {
+        checkRecycledReadDoesNotAllocate(true);
+    }
+}
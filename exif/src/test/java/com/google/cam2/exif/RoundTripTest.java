@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cam2.exif;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the buffer, channel and in-place paths of the library produce
+ * the same results as reading and writing by stream.
+ */
+public class RoundTripTest {
+    private static final byte[] ICC_HEADER = "ICC_PROFILE\0".getBytes(Charset.forName("US-ASCII"));
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static ExifInterface readStream(byte[] jpeg) throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(new ByteArrayInputStream(jpeg));
+        return exif;
+    }
+
+    @Test
+    public void testRewriteInPlaceTwice() throws Exception {
+        ExifInterface padded = new ExifInterface();
+        padded.readExif(ExifTestFiles.fixture());
+        padded.setExifPadding(1024);
+        byte[] jpeg = ExifTestFiles.write(padded, ExifTestFiles.jpeg(1000));
+        File file = File.createTempFile("rewrite", ".jpg");
+        try {
+            writeFile(file, jpeg);
+            ExifInterface exif = new ExifInterface();
+
+            // A longer value than the one written does not fit in place.
+            ExifTag make = exif.buildTag(ExifInterface.TAG_MAKE, "A much longer camera make");
+            assertTrue(exif.rewriteExif(file.getPath(), Collections.singleton(make)));
+            assertEquals(jpeg.length, file.length());
+            ExifInterface first = readStream(readFile(file));
+            assertEquals("A much longer camera make\0",
+                    first.getTagStringValue(ExifInterface.TAG_MAKE));
+
+            // The second rewrite adds a tag into what is left of the reserve.
+            ExifTag software = exif.buildTag(ExifInterface.TAG_SOFTWARE, "cam2 rewrite");
+            assertTrue(exif.rewriteExif(file.getPath(), Collections.singleton(software)));
+            byte[] rewritten = readFile(file);
+            assertEquals(jpeg.length, rewritten.length);
+            ExifInterface second = readStream(rewritten);
+            assertEquals("A much longer camera make\0",
+                    second.getTagStringValue(ExifInterface.TAG_MAKE));
+            assertEquals("cam2 rewrite\0", second.getTagStringValue(ExifInterface.TAG_SOFTWARE));
+            assertEquals("Model-X 1000\0", second.getTagStringValue(ExifInterface.TAG_MODEL));
+            assertArrayEquals(first.getThumbnail(), second.getThumbnail());
+
+            // The image data after the exif header is untouched.
+            int sos = ExifTestFiles.indexOf(jpeg, new byte[] {(byte) 0xff, (byte) 0xda});
+            assertTrue(sos > 0);
+            assertArrayEquals(Arrays.copyOfRange(jpeg, sos, jpeg.length),
+                    Arrays.copyOfRange(rewritten, sos, rewritten.length));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testIccProfileInThreeChunks() throws Exception {
+        byte[] profile = new byte[2 * ExifSerializer.MAX_ICC_CHUNK_SIZE + 1000];
+        new Random(18).nextBytes(profile);
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "Cam2Make"));
+        exif.setIccProfile(profile);
+        byte[] jpeg = ExifTestFiles.write(exif, ExifTestFiles.jpeg(1000));
+
+        // Three APP2 segments, numbered 1 to 3 of 3.
+        int from = 0;
+        for (int chunk = 1; chunk <= 3; chunk++) {
+            int header = ExifTestFiles.indexOf(Arrays.copyOfRange(jpeg, from, jpeg.length),
+                    ICC_HEADER);
+            assertTrue("chunk " + chunk, header >= 0);
+            header += from;
+            assertEquals((byte) 0xff, jpeg[header - 4]);
+            assertEquals((byte) 0xe2, jpeg[header - 3]);
+            assertEquals(chunk, jpeg[header + ICC_HEADER.length]);
+            assertEquals(3, jpeg[header + ICC_HEADER.length + 1]);
+            from = header + ICC_HEADER.length;
+        }
+        assertEquals(-1, ExifTestFiles.indexOf(Arrays.copyOfRange(jpeg, from, jpeg.length),
+                ICC_HEADER));
+
+        ExifInterface fromBuffer = new ExifInterface();
+        fromBuffer.readExif(ByteBuffer.wrap(jpeg));
+        assertArrayEquals(profile, fromBuffer.getIccProfile());
+        assertArrayEquals(profile, readStream(jpeg).getIccProfile());
+        assertEquals("Cam2Make\0", fromBuffer.getTagStringValue(ExifInterface.TAG_MAKE));
+    }
+
+    @Test
+    public void testThumbnailSliceMatchesStreamRead() throws Exception {
+        byte[] jpeg = ExifTestFiles.fixture();
+        byte[] expected = readStream(jpeg).getThumbnail();
+        assertNotNull(expected);
+
+        ByteBuffer slice = ExifThumbnails.extract(ByteBuffer.wrap(jpeg));
+        byte[] actual = new byte[slice.remaining()];
+        slice.get(actual);
+        assertArrayEquals(expected, actual);
+
+        File file = File.createTempFile("thumbnail", ".jpg");
+        try {
+            writeFile(file, jpeg);
+            FileInputStream in = new FileInputStream(file);
+            try {
+                slice = ExifThumbnails.extract(in.getChannel());
+                actual = new byte[slice.remaining()];
+                slice.get(actual);
+                assertArrayEquals(expected, actual);
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+
+        assertNull(ExifThumbnails.extract(ByteBuffer.wrap(ExifTestFiles.write(new ExifInterface(),
+                ExifTestFiles.jpeg(100)))));
+    }
+
+    @Test
+    public void testChannelReadMatchesStreamRead() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ExifTestFiles.fixture());
+        exif.setXmpPacket("<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"/>".getBytes("UTF-8"));
+        byte[] profile = new byte[ExifSerializer.MAX_ICC_CHUNK_SIZE + 100];
+        new Random(1).nextBytes(profile);
+        exif.setIccProfile(profile);
+        byte[] jpeg = ExifTestFiles.write(exif, ExifTestFiles.jpeg(200000));
+        ExifInterface expected = readStream(jpeg);
+
+        File file = File.createTempFile("channel", ".jpg");
+        try {
+            writeFile(file, jpeg);
+            FileInputStream in = new FileInputStream(file);
+            try {
+                ExifInterface actual = new ExifInterface();
+                actual.readExif(in.getChannel());
+                assertEquals(ExifTestFiles.dump(expected), ExifTestFiles.dump(actual));
+                assertArrayEquals(expected.getXmpPacket(), actual.getXmpPacket());
+                assertArrayEquals(profile, actual.getIccProfile());
+            } finally {
+                in.close();
+            }
+
+            // A file without exif reads as empty.
+            writeFile(file, ExifTestFiles.jpeg(1000));
+            in = new FileInputStream(file);
+            try {
+                ExifInterface actual = new ExifInterface();
+                actual.readExif(in.getChannel());
+                assertNull(actual.getAllTags());
+                assertNull(ExifThumbnails.extract(in.getChannel()));
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCursorVisitsEveryTag() throws Exception {
+        byte[] jpeg = ExifTestFiles.fixture();
+        ExifCursor cursor = new ExifCursor();
+        cursor.reset(ByteBuffer.wrap(jpeg));
+        int entries = 0;
+        while (cursor.next()) {
+            entries++;
+        }
+        ExifInterface exif = readStream(jpeg);
+        assertEquals(exif.getAllTags().size(), entries);
+    }
+
+    @Test
+    public void testFileWriterMatchesStream() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ExifTestFiles.fixture());
+        exif.setXmpPacket("<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"/>".getBytes("UTF-8"));
+        byte[] profile = new byte[ExifSerializer.MAX_ICC_CHUNK_SIZE + 100];
+        new Random(7).nextBytes(profile);
+        exif.setIccProfile(profile);
+
+        // A target that already has exif, XMP and ICC segments to replace.
+        ExifInterface old = new ExifInterface();
+        old.setTag(old.buildTag(ExifInterface.TAG_MAKE, "Old"));
+        old.setXmpPacket("<old/>".getBytes("UTF-8"));
+        old.setIccProfile(new byte[300]);
+        byte[] target = ExifTestFiles.write(old, ExifTestFiles.jpeg(5000));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        exif.writeExif(new ByteArrayInputStream(target), stream);
+
+        File in = File.createTempFile("target", ".jpg");
+        File out = File.createTempFile("out", ".jpg");
+        try {
+            writeFile(in, target);
+            FileInputStream is = new FileInputStream(in);
+            FileOutputStream os = new FileOutputStream(out);
+            try {
+                // Call the writer directly, so that a fall back to the stream
+                // would fail the test rather than pass it.
+                ExifData data = new ExifReader(exif).read(ByteBuffer.wrap(ExifTestFiles.write(exif,
+                        ExifTestFiles.jpeg(100))));
+                assertTrue(ExifFileWriter.write(data, exif, is.getChannel(), os.getChannel()));
+            } finally {
+                is.close();
+                os.close();
+            }
+            assertArrayEquals(stream.toByteArray(), readFile(out));
+
+            // The public file path gives the same bytes.
+            exif.writeExif(in.getPath(), out.getPath());
+            assertArrayEquals(stream.toByteArray(), readFile(out));
+        } finally {
+            in.delete();
+            out.delete();
+        }
+    }
+}